@@ -8,4 +8,10 @@ public interface QabelContentProviderConstants {
 
     String[] CONTACT_COLUMN_NAMES = new String[]{"name", "owner_id", "id"};
     String[] IDENTITIES_COLUMN_NAMES = new String[]{"name", "id"};
+
+    /**
+     * Optional query parameters of the content uris to read a page of the rows
+     */
+    String PARAM_LIMIT = "limit";
+    String PARAM_OFFSET = "offset";
 }
@@ -8,7 +8,7 @@ import org.json.JSONObject;
 
 import java.util.concurrent.CountDownLatch;
 
-import de.qabel.qabelbox.communication.PrefixServer;
+import de.qabel.qabelbox.QabelBoxApplication;
 import de.qabel.qabelbox.communication.callbacks.JsonRequestCallback;
 import okhttp3.Response;
 
@@ -20,7 +20,7 @@ public class PrefixGetter {
     public String getPrefix(Context context) {
         final CountDownLatch latch = new CountDownLatch(1);
 
-        new PrefixServer(context).getPrefix(context, new JsonRequestCallback() {
+        QabelBoxApplication.getApplicationComponent(context).prefixServer().getPrefix(context, new JsonRequestCallback() {
 
             @Override
             protected void onError(Exception e, @Nullable Response response) {
@@ -9,6 +9,7 @@ import org.json.JSONObject;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 
+import de.qabel.qabelbox.QabelBoxApplication;
 import de.qabel.qabelbox.communication.BoxAccountRegisterServer;
 import de.qabel.qabelbox.communication.callbacks.JsonRequestCallback;
 import de.qabel.qabelbox.config.AppPreference;
@@ -22,7 +23,7 @@ public class RealTokerGetter {
     String token = null;
 
     public String getToken(final Context context) {
-        BoxAccountRegisterServer server = new BoxAccountRegisterServer(context);
+        BoxAccountRegisterServer server = QabelBoxApplication.getApplicationComponent(context).boxAccountRegisterServer();
         String un = UUID.randomUUID().toString().substring(0, 23).replace("-", "a");
         String pw1 = "Password12";
         final String email = un + "@qabel.de";
@@ -58,4 +58,11 @@ public class RepositoryFactoryTest{
                 database.getVersion(), is(version));
     }
 
+    @Test
+    public void testRecordsMigrationDurations() throws Exception {
+        AndroidClientDatabase database = repositoryFactory.getAndroidClientDatabase();
+        assertThat(database.getMigrationDurations().size(),
+                is(database.getMigrations(null).length));
+    }
+
 }
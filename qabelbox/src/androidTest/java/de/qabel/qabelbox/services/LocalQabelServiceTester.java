@@ -4,8 +4,9 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 
-import de.qabel.core.drop.DropURL;
 import de.qabel.core.http.HTTPResult;
+import de.qabel.qabelbox.QabelBoxApplication;
+import de.qabel.qabelbox.dagger.components.ApplicationComponent;
 
 /**
  * LocalQabelServiceTester allows to test sending and receiving DropMessages without a network connection
@@ -23,12 +24,16 @@ public class LocalQabelServiceTester extends LocalQabelService {
     }
 
     @Override
-    HTTPResult<?> dropHTTPsend(DropURL dropURL, byte[] message) {
-        HTTPResult<?> httpResult = new HTTPResult<>();
-        httpResult.setOk(true);
-        httpResult.setResponseCode(200);
-        dropMessages.add(message);
-        return httpResult;
+    protected DropSender createDropSender() {
+        ApplicationComponent component = QabelBoxApplication.getApplicationComponent(getApplicationContext());
+        return new DropSender(component.dropOutboxRepository(),
+                component.httpClient(), component.connectivityManager()) {
+            @Override
+            protected int post(URI drop, byte[] message) {
+                dropMessages.add(message);
+                return 200;
+            }
+        };
     }
 
     @Override
@@ -12,7 +12,10 @@ import org.junit.Test;
 
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.UUID;
 
 import static org.hamcrest.CoreMatchers.*;
@@ -55,6 +58,15 @@ public class DirectoryMetadataTest extends TestCase {
         assertThat(dm.listFiles().size(), is(0));
     }
 
+    @Test
+    public void testFileHash() throws QblStorageException {
+        BoxFile file = new BoxFile("prefix", "block", "name", 0L, 0L, new byte[]{1, 2,});
+        file.hash = new byte[]{5, 6};
+        dm.insertFile(file);
+        assertThat(dm.getFile("name").hash, is(file.hash));
+        assertThat(dm.listFiles().get(0).hash, is(file.hash));
+    }
+
     @Test
     public void testFolderOperations() throws QblStorageException {
         BoxFolder folder = new BoxFolder("block", "name", new byte[]{1, 2,});
@@ -91,6 +103,35 @@ public class DirectoryMetadataTest extends TestCase {
 
     @Test
     public void testSpecVersion() throws QblStorageException {
-        assertThat(dm.getSpecVersion(), is(0));
+        assertThat(dm.getSpecVersion(), is(DirectoryMetadata.SPEC_VERSION_FILE_HASH));
+    }
+
+    @Test
+    public void testOldMetadataIsUpgradedOnce() throws Exception {
+        File path = File.createTempFile("dir", "db", new File(System.getProperty("java.io.tmpdir")));
+        Class.forName("org.sqldroid.SQLDroidDriver");
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path.getAbsolutePath());
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE spec_version (version INTEGER PRIMARY KEY)");
+            statement.executeUpdate("INSERT INTO spec_version (version) VALUES(0)");
+            statement.executeUpdate("CREATE TABLE files (prefix VARCHAR(255) NOT NULL,"
+                    + " block VARCHAR(255) NOT NULL, name VARCHAR(255) NULL PRIMARY KEY,"
+                    + " size LONG NOT NULL, mtime LONG NOT NULL, key BLOB NOT NULL,"
+                    + " meta VARCHAR(255), metakey BLOB)");
+            statement.executeUpdate("INSERT INTO files (prefix, block, name, size, mtime, key)"
+                    + " VALUES ('prefix', 'block', 'old', 0, 0, X'0102')");
+        }
+
+        DirectoryMetadata upgraded = DirectoryMetadata.openDatabase(path, dm.deviceId, "old", dm.getTempDir());
+        assertThat(upgraded.getSpecVersion(), is(DirectoryMetadata.SPEC_VERSION_FILE_HASH));
+        assertThat(upgraded.getFile("old").hash, is(nullValue()));
+        BoxFile file = new BoxFile("prefix", "block", "name", 0L, 0L, new byte[]{1, 2,});
+        file.hash = new byte[]{5, 6};
+        upgraded.insertFile(file);
+
+        DirectoryMetadata reopened = DirectoryMetadata.openDatabase(path, dm.deviceId, "old", dm.getTempDir());
+        assertThat(reopened.getSpecVersion(), is(DirectoryMetadata.SPEC_VERSION_FILE_HASH));
+        assertThat(reopened.getFile("name").hash, is(file.hash));
+        assertThat(reopened.listFiles().size(), is(2));
     }
 }
@@ -22,6 +22,7 @@ import de.qabel.qabelbox.exceptions.QblStorageEntityExistsException;
 import de.qabel.qabelbox.fragments.ContactFragment;
 import de.qabel.qabelbox.helper.Helper;
 import de.qabel.qabelbox.navigation.MainNavigator;
+import de.qabel.qabelbox.persistence.RepositoryFactory;
 import de.qabel.qabelbox.ui.helper.UITestHelper;
 import de.qabel.qabelbox.ui.idling.InjectedIdlingResource;
 import de.qabel.qabelbox.ui.matcher.QabelMatcher;
@@ -70,7 +71,9 @@ public class ChatMessageUITest extends AbstractUITest {
 
         Context context = InstrumentationRegistry.getTargetContext();
         String identityKey = identity.getEcPublicKey().getReadableKeyIdentifier();
-        ChatServer chatServer = new ChatServer(context);
+        RepositoryFactory factory = new RepositoryFactory(context);
+        ChatServer chatServer = new ChatServer(context,
+                factory.getChatMessageRepository(factory.getAndroidClientDatabase()));
         String contact1Alias = contact.getAlias();
 
         String contact1Key = contact.getEcPublicKey().getReadableKeyIdentifier();
@@ -193,7 +193,7 @@ public class CreateBoxAccountUITest {
 
     private void createBoxAccountWithoutUI(String accountName, String accountEMail, String password) {
         final CountDownLatch cl = new CountDownLatch(1);
-        new BoxAccountRegisterServer(mActivity.getApplicationContext()).register(accountName, password, password, accountEMail, new JsonRequestCallback(new int[]{200, 201, 400}) {
+        QabelBoxApplication.getApplicationComponent(mActivity).boxAccountRegisterServer().register(accountName, password, password, accountEMail, new JsonRequestCallback(new int[]{200, 201, 400}) {
 
             @Override
             protected void onError(Exception e, @Nullable Response response) {
@@ -217,7 +217,7 @@ public class CreateBoxAccountUITest {
 
     private void createExistingUser(String duplicateName, String duplicateEMail, String password) {
         final CountDownLatch cl = new CountDownLatch(1);
-        new BoxAccountRegisterServer(mActivity.getApplicationContext()).register(duplicateName, password, password, duplicateEMail, new JsonRequestCallback(new int[]{200, 400}) {
+        QabelBoxApplication.getApplicationComponent(mActivity).boxAccountRegisterServer().register(duplicateName, password, password, duplicateEMail, new JsonRequestCallback(new int[]{200, 400}) {
             @Override
             protected void onError(Exception e, @Nullable Response response) {
                 cl.countDown();
@@ -57,15 +57,10 @@ public class OfflineUITest {
 
         public void setConnected(final boolean connected) {
             this.connected = connected;
-            final ConnectivityListener listener = this.listener;
             context.runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
-                    if (connected) {
-                        listener.handleConnectionEstablished();
-                    } else {
-                        listener.handleConnectionLost();
-                    }
+                    notifyListeners(connected);
                 }
             });
         }
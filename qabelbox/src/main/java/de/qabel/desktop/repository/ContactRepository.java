@@ -6,12 +6,30 @@ import de.qabel.core.config.Identity;
 import de.qabel.desktop.repository.exception.EntityNotFoundExcepion;
 import de.qabel.desktop.repository.exception.PersistenceException;
 
+import java.util.Collection;
+
 public interface ContactRepository {
 
     Contacts find(Identity identity) throws PersistenceException;
 
     void save(Contact contact, Identity identity) throws PersistenceException;
 
+    /**
+     * Saves all contacts for the identity in one transaction.
+     * Contacts are matched by their public key, known contacts are updated.
+     *
+     * @return number of contacts which were not contacts of the identity before
+     */
+    int saveAll(Collection<Contact> contacts, Identity identity) throws PersistenceException;
+
+    /**
+     * Saves the contacts which are not contacts of the identity yet, like an import.
+     * Known contacts keep their alias, email and phone.
+     *
+     * @return number of added contacts
+     */
+    int addAll(Collection<Contact> contacts, Identity identity) throws PersistenceException;
+
     void delete(Contact contact, Identity identity) throws PersistenceException, EntityNotFoundExcepion;
 
     Contact findByKeyId(Identity identity, String keyId) throws EntityNotFoundExcepion;
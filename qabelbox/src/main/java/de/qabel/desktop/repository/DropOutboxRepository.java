@@ -0,0 +1,73 @@
+package de.qabel.desktop.repository;
+
+import java.util.Collection;
+
+import de.qabel.desktop.repository.exception.PersistenceException;
+
+/**
+ * Encrypted drop messages which still have to be sent to a drop.
+ * Every entry belongs to exactly one drop, a message for a contact with several drops
+ * is stored once per drop so each one is delivered and retried on its own.
+ */
+public interface DropOutboxRepository {
+    /**
+     * Queues the message, the new entry is claimed by the caller until the given time
+     */
+    Entry add(String drop, byte[] message, long claimedUntil) throws PersistenceException;
+
+    /**
+     * @return entries with a next attempt at or before the given time, oldest first
+     */
+    Collection<Entry> findDue(long time) throws PersistenceException;
+
+    /**
+     * Claims a due entry for sending by moving its next attempt to the given time.
+     *
+     * @return false if the entry is not due anymore because someone else claimed it
+     */
+    boolean claim(Entry entry, long now, long claimedUntil) throws PersistenceException;
+
+    /**
+     * Stores the attempts of the entry and when to try it again
+     */
+    void reschedule(Entry entry, long nextAttempt) throws PersistenceException;
+
+    void delete(Entry entry) throws PersistenceException;
+
+    class Entry {
+        private final long id;
+        private final String drop;
+        private final byte[] message;
+        private int attempts;
+
+        public Entry(long id, String drop, byte[] message, int attempts) {
+            this.id = id;
+            this.drop = drop;
+            this.message = message;
+            this.attempts = attempts;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getDrop() {
+            return drop;
+        }
+
+        public byte[] getMessage() {
+            return message;
+        }
+
+        /**
+         * @return number of failed attempts to deliver the message
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public void addFailedAttempt() {
+            attempts++;
+        }
+    }
+}
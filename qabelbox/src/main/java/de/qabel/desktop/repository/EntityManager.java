@@ -2,39 +2,121 @@ package de.qabel.desktop.repository;
 
 import de.qabel.core.config.SyncSettingItem;
 
-import java.util.WeakHashMap;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Identity map of the hydrated entities by type and id, so every entity is represented by one instance.
+ * <p>
+ * Entities are only weakly referenced and are forgotten as soon as nobody else uses them.
+ * All methods are thread safe.
+ */
 public class EntityManager {
-    private WeakHashMap<Class, WeakHashMap<Integer, Object>> entities = new WeakHashMap<>();
+    private final ConcurrentMap<Class, Segment> segments = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
 
     public boolean contains(Class entityType, int id) {
-        if (!entities.containsKey(entityType)) {
-            return false;
-        }
-        return entities.get(entityType).containsKey(id);
+        Segment segment = segments.get(entityType);
+        return segment != null && segment.get(id) != null;
     }
 
-    public synchronized <T> void put(Class<T> entityType, SyncSettingItem entity) {
+    public <T> void put(Class<T> entityType, SyncSettingItem entity) {
         put(entityType, entity, entity.getId());
     }
 
-    public synchronized <T> void put(Class<T> entityType, HasId entity) {
+    public <T> void put(Class<T> entityType, HasId entity) {
         put(entityType, entity, entity.getId());
     }
 
     public <T> void put(Class<T> entityType, Object entity, int id) {
-        if (!entities.containsKey(entityType)) {
-            entities.put(entityType, new WeakHashMap<>());
+        Segment segment = segments.get(entityType);
+        if (segment == null) {
+            Segment created = new Segment();
+            segment = segments.putIfAbsent(entityType, created);
+            if (segment == null) {
+                segment = created;
+            }
         }
-        entities.get(entityType).put(id, entity);
+        segment.put(id, entity);
     }
 
+    /**
+     * @return the known instance or null, if the entity was never put or is not used anymore
+     */
     @SuppressWarnings("unchecked")
     public <T> T get(Class<T> entityType, int id) {
-        return (T)entities.get(entityType).get(id);
+        Segment segment = segments.get(entityType);
+        Object entity = segment == null ? null : segment.get(id);
+        if (entity == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return (T) entity;
+    }
+
+    /**
+     * @return number of known entities of the type, including ones which were just collected
+     */
+    public int size(Class entityType) {
+        Segment segment = segments.get(entityType);
+        return segment == null ? 0 : segment.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
     }
 
     public void clear() {
-        entities.clear();
+        segments.clear();
+    }
+
+    private static class Segment {
+        private final ConcurrentMap<Integer, EntityReference> entities = new ConcurrentHashMap<>();
+        private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+        Object get(int id) {
+            EntityReference reference = entities.get(id);
+            return reference == null ? null : reference.get();
+        }
+
+        void put(int id, Object entity) {
+            purge();
+            entities.put(id, new EntityReference(id, entity, collected));
+        }
+
+        int size() {
+            purge();
+            return entities.size();
+        }
+
+        /**
+         * Removes the entries of collected entities, unless they were replaced meanwhile
+         */
+        private void purge() {
+            Reference<?> reference;
+            while ((reference = collected.poll()) != null) {
+                EntityReference entityReference = (EntityReference) reference;
+                entities.remove(entityReference.id, entityReference);
+            }
+        }
+    }
+
+    private static class EntityReference extends WeakReference<Object> {
+        private final int id;
+
+        EntityReference(int id, Object entity, ReferenceQueue<Object> queue) {
+            super(entity, queue);
+            this.id = id;
+        }
     }
 }
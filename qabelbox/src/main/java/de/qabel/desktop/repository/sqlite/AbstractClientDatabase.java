@@ -3,26 +3,60 @@ package de.qabel.desktop.repository.sqlite;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
 
 import de.qabel.desktop.repository.TransactionManager;
 import de.qabel.desktop.repository.exception.PersistenceException;
 import de.qabel.desktop.repository.sqlite.builder.QueryBuilder;
+import de.qabel.desktop.repository.sqlite.migration.AbstractBackfill;
 import de.qabel.desktop.repository.sqlite.migration.AbstractMigration;
 import de.qabel.desktop.repository.sqlite.migration.MigrationFailedException;
 
 public abstract class AbstractClientDatabase implements ClientDatabase {
     private static final Logger logger = LoggerFactory.getLogger(DesktopClientDatabase.class);
+    private static final int STATEMENT_CACHE_SIZE = 64;
+    private static final int BACKFILL_BATCH_SIZE = 500;
     protected final Connection connection;
     protected TransactionManager transactionManager;
+    private final SqliteTransactionManager sqliteTransactionManager;
+    private final PreparedStatementCache statementCache = new PreparedStatementCache(STATEMENT_CACHE_SIZE);
+    private volatile ReaderPool readers;
+    private final List<MigrationListener> migrationListeners = new CopyOnWriteArrayList<>();
+    private final List<AbstractBackfill> addedBackfills = new CopyOnWriteArrayList<>();
+    private final Map<Long, Long> migrationDurations = new LinkedHashMap<>();
+    /**
+     * Version this instance migrated to, so migrateTo returns without locking once it is up to date
+     */
+    private volatile long migratedVersion = -1;
 
     public AbstractClientDatabase(Connection connection) {
         this.connection = connection;
-        transactionManager = new SqliteTransactionManager(connection);
+        sqliteTransactionManager = new SqliteTransactionManager(connection);
+        transactionManager = sqliteTransactionManager;
+    }
+
+    /**
+     * Lets queries prepared by {@link #prepareRead(String)} run on the given reader connections.
+     * Without readers all statements use the main connection.
+     */
+    public void setReaders(ReaderPool readers) {
+        this.readers = readers;
     }
 
     @Override
@@ -36,18 +70,58 @@ public abstract class AbstractClientDatabase implements ClientDatabase {
     }
 
     @Override
-    public synchronized void migrateTo(long toVersion) throws MigrationException {
-        try {
-            migrate(toVersion, getVersion());
-        } catch (SQLException e) {
-            throw new MigrationException("failed to determine current version: " + e.getMessage(), e);
+    public void migrateTo(long toVersion) throws MigrationException {
+        if (migratedVersion >= toVersion) {
+            return;
+        }
+        synchronized (this) {
+            try {
+                migrate(toVersion, getVersion());
+                migratedVersion = getVersion();
+            } catch (SQLException e) {
+                throw new MigrationException("failed to determine current version: " + e.getMessage(), e);
+            }
         }
     }
 
     public abstract AbstractMigration[] getMigrations(Connection connection);
 
+    /**
+     * Data migrations which run after the schema migrations by {@link #runBackfills()}
+     */
+    public AbstractBackfill[] getBackfills(Connection connection) {
+        return new AbstractBackfill[0];
+    }
+
+    /**
+     * Registers a backfill which needs more than the connection, like the repositories or legacy files.
+     * It runs after the backfills of {@link #getBackfills(Connection)}.
+     */
+    public void addBackfill(AbstractBackfill backfill) {
+        addedBackfills.add(backfill);
+    }
+
+    private List<AbstractBackfill> getAllBackfills() {
+        List<AbstractBackfill> backfills = new ArrayList<>(Arrays.asList(getBackfills(connection)));
+        backfills.addAll(addedBackfills);
+        return backfills;
+    }
+
+    public void addMigrationListener(MigrationListener listener) {
+        migrationListeners.add(listener);
+    }
+
+    public void removeMigrationListener(MigrationListener listener) {
+        migrationListeners.remove(listener);
+    }
+
+    /**
+     * Schema migrations have to finish before the database is used, so they run one after another
+     * on the calling thread, each in its own transaction.
+     */
     @Override
     public void migrate(long toVersion, long fromVersion) throws MigrationException {
+        List<AbstractMigration> pending = new ArrayList<>();
         for (AbstractMigration migration : getMigrations(connection)) {
             if (migration.getVersion() <= fromVersion) {
                 continue;
@@ -55,8 +129,21 @@ public abstract class AbstractClientDatabase implements ClientDatabase {
             if (migration.getVersion() > toVersion) {
                 break;
             }
+            pending.add(migration);
+        }
 
+        for (int i = 0; i < pending.size(); i++) {
+            AbstractMigration migration = pending.get(i);
+            long start = System.nanoTime();
             migrate(migration);
+            long durationMillis = (System.nanoTime() - start) / 1000000L;
+            synchronized (migrationDurations) {
+                migrationDurations.put(migration.getVersion(), durationMillis);
+            }
+            logger.info("Migrated " + migration.getClass().getSimpleName() + " in " + durationMillis + "ms");
+            for (MigrationListener listener : migrationListeners) {
+                listener.onMigrated(migration, durationMillis, i + 1, pending.size());
+            }
         }
     }
 
@@ -73,6 +160,64 @@ public abstract class AbstractClientDatabase implements ClientDatabase {
         }
     }
 
+    /**
+     * @return durations in milliseconds of the migrations run by this instance, by version
+     */
+    public Map<Long, Long> getMigrationDurations() {
+        synchronized (migrationDurations) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(migrationDurations));
+        }
+    }
+
+    public boolean hasBackfills() {
+        return !getAllBackfills().isEmpty();
+    }
+
+    /**
+     * Runs the backfills whose schema version is reached in batches of {@link #BACKFILL_BATCH_SIZE},
+     * each batch in its own transaction so other writers are only blocked shortly.
+     * Meant to be called on a background thread after the schema migrations.
+     *
+     * @return number of processed rows
+     */
+    public int runBackfills() throws MigrationException {
+        long version;
+        try {
+            version = getVersion();
+        } catch (SQLException e) {
+            throw new MigrationException("failed to determine current version: " + e.getMessage(), e);
+        }
+        int total = 0;
+        for (AbstractBackfill backfill : getAllBackfills()) {
+            if (backfill.getVersion() > version) {
+                continue;
+            }
+            long start = System.nanoTime();
+            int rows = 0;
+            int batch;
+            do {
+                try {
+                    batch = backfill.isTransactional()
+                            ? getTransactionManager().transactional(() -> backfill.backfill(BACKFILL_BATCH_SIZE))
+                            : backfill.backfill(BACKFILL_BATCH_SIZE);
+                } catch (PersistenceException | SQLException e) {
+                    throw new MigrationException(
+                            "backfill " + backfill.getClass().getSimpleName() + " failed: " + e.getMessage(), e);
+                }
+                rows += batch;
+                for (MigrationListener listener : migrationListeners) {
+                    listener.onBackfilled(backfill, rows, batch == 0);
+                }
+            } while (batch > 0);
+            if (rows > 0) {
+                logger.info("Backfilled " + rows + " rows by " + backfill.getClass().getSimpleName()
+                        + " in " + (System.nanoTime() - start) / 1000000L + "ms");
+            }
+            total += rows;
+        }
+        return total;
+    }
+
     public synchronized void setVersion(long version) throws SQLException {
         try (Statement statement = connection.createStatement()) {
             statement.execute("PRAGMA USER_VERSION = " + version);
@@ -98,12 +243,83 @@ public abstract class AbstractClientDatabase implements ClientDatabase {
         migrateTo(migrations[migrations.length - 1].getVersion());
     }
 
+    /**
+     * Returns a cached statement for the sql if there is an idle one.
+     * Closing the statement puts it back into the cache.
+     * Outside of a transaction the statement holds the lock of the connection until it is closed,
+     * otherwise its changes would silently become part of a transaction of another thread.
+     */
     @Override
     public PreparedStatement prepare(String sql) throws SQLException {
         logger.trace(sql);
+        if (sqliteTransactionManager.isInTransaction()) {
+            return statementCache.prepare(sql, this::prepareStatement);
+        }
+        Lock lock = sqliteTransactionManager.getLock();
+        lock.lock();
+        try {
+            return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new LockedStatementHandler(statementCache.prepare(sql, this::prepareStatement), lock)
+            );
+        } catch (SQLException | RuntimeException e) {
+            lock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Uses a reader connection unless the current thread is inside a transaction, whose changes
+     * are only visible on the main connection, or all readers are busy.
+     */
+    @Override
+    public PreparedStatement prepareRead(String sql) throws SQLException {
+        ReaderPool readers = this.readers;
+        if (readers != null && !sqliteTransactionManager.isInTransaction()) {
+            logger.trace(sql);
+            PreparedStatement statement = readers.prepare(sql);
+            if (statement != null) {
+                return statement;
+            }
+        }
+        return prepare(sql);
+    }
+
+    /**
+     * Compiles a new statement, bypassing the statement cache
+     */
+    protected PreparedStatement prepareStatement(String sql) throws SQLException {
         return connection.prepareStatement(sql);
     }
 
+    /**
+     * Closes all idle cached statements, e.g. before closing the connection
+     */
+    public void clearStatementCache() {
+        statementCache.clear();
+    }
+
+    /**
+     * Closes the reader connections and all idle cached statements, before closing the connection
+     */
+    public void close() {
+        if (readers != null) {
+            readers.close();
+            readers = null;
+        }
+        clearStatementCache();
+    }
+
+    public long getStatementCacheHits() {
+        return statementCache.getHits();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCache.getMisses();
+    }
+
+    @Override
     public TransactionManager getTransactionManager() {
         return transactionManager;
     }
@@ -117,4 +333,38 @@ public abstract class AbstractClientDatabase implements ClientDatabase {
     public QueryBuilder update(String table) {
         return new QueryBuilder(this, QueryBuilder.TYPE.UPDATE).update(table);
     }
+
+    /**
+     * Releases the lock of the connection when the statement is closed
+     */
+    private static class LockedStatementHandler implements InvocationHandler {
+        private final PreparedStatement statement;
+        private final Lock lock;
+        private boolean closed;
+
+        LockedStatementHandler(PreparedStatement statement, Lock lock) {
+            this.statement = statement;
+            this.lock = lock;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("close") && method.getParameterTypes().length == 0) {
+                if (!closed) {
+                    closed = true;
+                    try {
+                        statement.close();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                return null;
+            }
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
 }
@@ -7,9 +7,20 @@ import de.qabel.desktop.repository.exception.PersistenceException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
 public abstract class AbstractSqliteRepository<T> {
+    /**
+     * SQLite allows 999 host parameters per statement
+     */
+    protected static final int MAX_PARAMETERS = 500;
+
     protected ClientDatabase database;
     protected Hydrator<T> hydrator;
     protected String tableName;
@@ -33,7 +44,7 @@ public abstract class AbstractSqliteRepository<T> {
     }
 
     protected T findByQuery(String query, Object[] params) throws EntityNotFoundExcepion, PersistenceException {
-        try (PreparedStatement statement = database.prepare(query)) {
+        try (PreparedStatement statement = database.prepareRead(query)) {
             for (int i = 0; i < params.length; i++) {
                 statement.setObject(i+1, params[i]);
             }
@@ -53,7 +64,7 @@ public abstract class AbstractSqliteRepository<T> {
 
     protected Collection<T> findAll(String condition, Object... params) throws PersistenceException {
         String query = getQueryPrefix() + (condition.isEmpty() ? "" : " WHERE " + condition);
-        try (PreparedStatement statement = database.prepare(query)) {
+        try (PreparedStatement statement = database.prepareRead(query)) {
             for (int i = 0; i < params.length; i++) {
                 statement.setObject(i+1, params[i]);
             }
@@ -67,4 +78,79 @@ public abstract class AbstractSqliteRepository<T> {
             );
         }
     }
+
+    /**
+     * Loads the entries of many owners at once, the ids are queried in chunks to stay below the parameter limit.
+     *
+     * @param column column which references the owner
+     * @return entries by owner id, owners without entries are missing
+     */
+    protected Map<Integer, List<T>> findAllByOwners(String column, Collection<Integer> ownerIds)
+        throws PersistenceException {
+        Map<Integer, List<T>> result = new HashMap<>();
+        List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(ownerIds));
+        int ownerColumn = hydrator.getFields("t").length + 1;
+        for (int offset = 0; offset < ids.size(); offset += MAX_PARAMETERS) {
+            List<Integer> chunk = ids.subList(offset, Math.min(offset + MAX_PARAMETERS, ids.size()));
+            String query = "SELECT " + StringUtils.join(", ", hydrator.getFields("t")) + ", t." + column
+                + " FROM " + tableName + " t WHERE t." + column + " IN (" + placeholders(chunk.size()) + ")";
+
+            try (PreparedStatement statement = database.prepareRead(query)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    statement.setInt(i+1, chunk.get(i));
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        T entry = hydrator.hydrateOne(resultSet);
+                        int ownerId = resultSet.getInt(ownerColumn);
+                        List<T> entries = result.get(ownerId);
+                        if (entries == null) {
+                            entries = new LinkedList<>();
+                            result.put(ownerId, entries);
+                        }
+                        entries.add(entry);
+                    }
+                }
+            } catch (SQLException e) {
+                throw new PersistenceException(
+                    "query failed: '" + query + "' (" + e.getMessage() + ")",
+                    e
+                );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return count comma separated parameter placeholders for an IN (...) clause
+     */
+    protected static String placeholders(int count) {
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+        return placeholders.toString();
+    }
+
+    /**
+     * Reads the number of changes to identities and contacts, see {@link #increaseEntityRevision()}.
+     */
+    protected long readEntityRevision() throws SQLException {
+        try (PreparedStatement statement = database.prepareRead("SELECT revision FROM entity_revision");
+             ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next() ? resultSet.getLong(1) : 0L;
+        }
+    }
+
+    /**
+     * Invalidates cached identities and contacts of all repository instances, called once per write
+     * of identities, contacts or their drop urls and prefixes instead of once per changed row.
+     */
+    protected void increaseEntityRevision() throws SQLException {
+        try (PreparedStatement statement = database.prepare(
+            "UPDATE entity_revision SET revision = revision + 1"
+        )) {
+            statement.execute();
+        }
+    }
 }
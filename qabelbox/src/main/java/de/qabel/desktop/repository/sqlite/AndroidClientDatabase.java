@@ -6,7 +6,9 @@ import org.sqldroid.SQLDroidConnection;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 import de.qabel.desktop.repository.sqlite.migration.AbstractMigration;
 import de.qabel.desktop.repository.sqlite.migration.Migration1460367000CreateIdentitiy;
@@ -15,6 +17,11 @@ import de.qabel.desktop.repository.sqlite.migration.Migration1460367010CreateAcc
 import de.qabel.desktop.repository.sqlite.migration.Migration1460367020DropState;
 import de.qabel.desktop.repository.sqlite.migration.Migration1460367035Entity;
 import de.qabel.desktop.repository.sqlite.migration.Migration1460987825PreventDuplicateContacts;
+import de.qabel.desktop.repository.sqlite.migration.Migration1463059200DropOutbox;
+import de.qabel.desktop.repository.sqlite.migration.Migration1463400000ChatMessage;
+import de.qabel.desktop.repository.sqlite.migration.Migration1463500000ChatMessageSearch;
+import de.qabel.desktop.repository.sqlite.migration.Migration1463600000EntityRevision;
+import de.qabel.desktop.repository.sqlite.migration.Migration1463700000LegacyMigration;
 
 public class AndroidClientDatabase extends AbstractClientDatabase implements ClientDatabase {
 
@@ -46,6 +53,21 @@ public class AndroidClientDatabase extends AbstractClientDatabase implements Cli
         }
     }
 
+    /**
+     * Switches the database file to write ahead logging, so readers don't wait for the writer.
+     *
+     * @return true if the database is in WAL mode now
+     */
+    public boolean enableWriteAheadLogging() throws SQLException {
+        if (connection instanceof SQLDroidConnection) {
+            return ((SQLDroidConnection) connection).getDb().getSqliteDatabase().enableWriteAheadLogging();
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("PRAGMA journal_mode=WAL")) {
+            return resultSet.next() && "wal".equalsIgnoreCase(resultSet.getString(1));
+        }
+    }
+
     public AbstractMigration[] getMigrations(Connection connection) {
         return new AbstractMigration[]{
                 new Migration1460367000CreateIdentitiy(connection),
@@ -53,17 +75,21 @@ public class AndroidClientDatabase extends AbstractClientDatabase implements Cli
                 new Migration1460367010CreateAccount(connection),
                 new Migration1460367020DropState(connection),
                 new Migration1460367035Entity(connection),
-                new Migration1460987825PreventDuplicateContacts(connection)
+                new Migration1460987825PreventDuplicateContacts(connection),
+                new Migration1463059200DropOutbox(connection),
+                new Migration1463400000ChatMessage(connection),
+                new Migration1463500000ChatMessageSearch(connection),
+                new Migration1463600000EntityRevision(connection),
+                new Migration1463700000LegacyMigration(connection)
         };
     }
 
     @Override
-    public PreparedStatement prepare(String sql) throws SQLException {
-        logger.trace(sql);
+    protected PreparedStatement prepareStatement(String sql) throws SQLException {
         if (connection instanceof SQLDroidConnection) {
             return new GeneratedKeysPreparedStatement(sql, (SQLDroidConnection) connection);
         } else {
-            return super.prepare(sql);
+            return super.prepareStatement(sql);
         }
     }
 
@@ -1,5 +1,6 @@
 package de.qabel.desktop.repository.sqlite;
 
+import de.qabel.desktop.repository.TransactionManager;
 import de.qabel.desktop.repository.sqlite.builder.QueryBuilder;
 
 import java.sql.PreparedStatement;
@@ -35,6 +36,15 @@ public interface ClientDatabase {
      */
     PreparedStatement prepare(String sql) throws SQLException;
 
+    /**
+     * Prepares a statement which only reads. Outside of a transaction of the current thread it may run
+     * on a separate reader connection, which sees the last committed state.
+     * Don't forget to close the statement finally
+     */
+    PreparedStatement prepareRead(String sql) throws SQLException;
+
+    TransactionManager getTransactionManager();
+
     QueryBuilder selectFrom(String fromTable, String tableAlias);
 
     QueryBuilder update(String table);
@@ -0,0 +1,22 @@
+package de.qabel.desktop.repository.sqlite;
+
+import de.qabel.desktop.repository.sqlite.migration.AbstractBackfill;
+import de.qabel.desktop.repository.sqlite.migration.AbstractMigration;
+
+/**
+ * Progress of the migrations of a client database, called on the migrating thread
+ */
+public interface MigrationListener {
+
+    /**
+     * @param done   number of finished migrations of this run, including this one
+     * @param total  number of migrations of this run
+     */
+    void onMigrated(AbstractMigration migration, long durationMillis, int done, int total);
+
+    /**
+     * @param rows     number of rows processed by the backfill so far
+     * @param finished true if the backfill has nothing left to do
+     */
+    void onBackfilled(AbstractBackfill backfill, int rows, boolean finished);
+}
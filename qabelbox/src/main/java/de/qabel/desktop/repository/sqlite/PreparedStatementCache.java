@@ -0,0 +1,182 @@
+package de.qabel.desktop.repository.sqlite;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of idle prepared statements by sql.
+ * <p>
+ * A statement is taken out of the cache while it is in use, so two users never share one statement.
+ * Closing the handed out statement clears its parameters and batch and puts it back instead of closing it,
+ * the least recently used statements are closed when the cache is full.
+ */
+class PreparedStatementCache {
+    private static final Logger logger = LoggerFactory.getLogger(PreparedStatementCache.class);
+
+    interface StatementFactory {
+        PreparedStatement prepare(String sql) throws SQLException;
+    }
+
+    private final int capacity;
+    private final Map<String, PreparedStatement> idle;
+    /**
+     * Incremented by clear(), statements handed out before are closed instead of being cached again
+     */
+    private int generation;
+    private long hits;
+    private long misses;
+
+    PreparedStatementCache(int capacity) {
+        this.capacity = capacity;
+        idle = new LinkedHashMap<String, PreparedStatement>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= PreparedStatementCache.this.capacity) {
+                    return false;
+                }
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    PreparedStatement prepare(String sql, StatementFactory factory) throws SQLException {
+        PreparedStatement statement;
+        int statementGeneration;
+        synchronized (this) {
+            statementGeneration = generation;
+            statement = idle.remove(sql);
+            if (statement != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        if (statement == null) {
+            statement = factory.prepare(sql);
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(
+            PreparedStatement.class.getClassLoader(),
+            new Class<?>[]{PreparedStatement.class},
+            new CachedStatementHandler(sql, statement, statementGeneration)
+        );
+    }
+
+    private void release(String sql, PreparedStatement statement, int statementGeneration) {
+        try {
+            ResultSet resultSet = statement.getResultSet();
+            if (resultSet != null) {
+                resultSet.close();
+            }
+            statement.clearParameters();
+            statement.clearBatch();
+        } catch (SQLException | RuntimeException e) {
+            logger.debug("statement is not reusable: " + e.getMessage());
+            closeQuietly(statement);
+            return;
+        }
+        PreparedStatement replaced;
+        synchronized (this) {
+            if (statementGeneration != generation) {
+                replaced = statement;
+            } else {
+                replaced = idle.put(sql, statement);
+            }
+        }
+        if (replaced != null) {
+            closeQuietly(replaced);
+        }
+    }
+
+    /**
+     * Closes all idle statements, statements in use are closed when they are released.
+     */
+    void clear() {
+        List<PreparedStatement> statements;
+        synchronized (this) {
+            statements = new ArrayList<>(idle.values());
+            idle.clear();
+            generation++;
+        }
+        for (PreparedStatement statement : statements) {
+            closeQuietly(statement);
+        }
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized int size() {
+        return idle.size();
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            logger.warn("failed to close cached statement: " + e.getMessage(), e);
+        }
+    }
+
+    private class CachedStatementHandler implements InvocationHandler {
+        private final String sql;
+        private final int generation;
+        private PreparedStatement statement;
+
+        CachedStatementHandler(String sql, PreparedStatement statement, int generation) {
+            this.sql = sql;
+            this.statement = statement;
+            this.generation = generation;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close") && method.getParameterTypes().length == 0) {
+                if (statement != null) {
+                    PreparedStatement released = statement;
+                    statement = null;
+                    release(sql, released, generation);
+                }
+                return null;
+            }
+            if (name.equals("isClosed") && method.getParameterTypes().length == 0) {
+                return statement == null;
+            }
+            if (name.equals("equals") && method.getParameterTypes().length == 1) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode") && method.getParameterTypes().length == 0) {
+                return System.identityHashCode(proxy);
+            }
+            if (name.equals("toString") && method.getParameterTypes().length == 0) {
+                return "cached statement: " + sql;
+            }
+            if (statement == null) {
+                throw new SQLException("statement is closed");
+            }
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
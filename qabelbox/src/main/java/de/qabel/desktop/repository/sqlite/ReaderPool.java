@@ -0,0 +1,171 @@
+package de.qabel.desktop.repository.sqlite;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Small pool of additional connections to the client database which are only used for queries.
+ * With the database in WAL mode, queries on these connections read the last committed state
+ * and are neither blocked by nor blocking the writer connection.
+ * <p>
+ * A connection is borrowed for the lifetime of one statement and given back when the statement is closed.
+ */
+public class ReaderPool {
+    private static final Logger logger = LoggerFactory.getLogger(ReaderPool.class);
+
+    public interface ConnectionFactory {
+        Connection connect() throws SQLException;
+    }
+
+    private final int size;
+    private final ConnectionFactory factory;
+    private final LinkedList<Connection> idle = new LinkedList<>();
+    private final List<Connection> connections = new ArrayList<>();
+    private boolean closed;
+
+    public ReaderPool(int size, ConnectionFactory factory) {
+        this.size = size;
+        this.factory = factory;
+    }
+
+    /**
+     * Prepares the query on an idle reader, connections are opened lazily up to the size of the pool.
+     *
+     * @return null if all readers are busy
+     * @throws SQLException if the sql is not a query, writes belong on the main connection
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        if (!isQuery(sql)) {
+            throw new SQLException("reader connections only run queries: " + sql);
+        }
+        Connection connection = borrow();
+        if (connection == null) {
+            return null;
+        }
+        PreparedStatement statement;
+        try {
+            statement = connection.prepareStatement(sql);
+        } catch (SQLException | RuntimeException e) {
+            giveBack(connection);
+            throw e;
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(
+            PreparedStatement.class.getClassLoader(),
+            new Class<?>[]{PreparedStatement.class},
+            new ReaderStatementHandler(connection, statement)
+        );
+    }
+
+    static boolean isQuery(String sql) {
+        return sql.trim().regionMatches(true, 0, "SELECT", 0, 6);
+    }
+
+    private Connection borrow() throws SQLException {
+        synchronized (this) {
+            if (closed) {
+                return null;
+            }
+            if (!idle.isEmpty()) {
+                return idle.removeFirst();
+            }
+            if (connections.size() >= size) {
+                return null;
+            }
+            Connection connection = factory.connect();
+            connections.add(connection);
+            return connection;
+        }
+    }
+
+    private void giveBack(Connection connection) {
+        synchronized (this) {
+            if (!closed) {
+                idle.addFirst(connection);
+                return;
+            }
+        }
+        closeQuietly(connection);
+    }
+
+    /**
+     * Closes the idle connections, borrowed ones are closed as soon as their statement is closed
+     */
+    public void close() {
+        List<Connection> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+        }
+        for (Connection connection : toClose) {
+            closeQuietly(connection);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.warn("failed to close reader connection: " + e.getMessage(), e);
+        }
+    }
+
+    private class ReaderStatementHandler implements InvocationHandler {
+        private final Connection connection;
+        private PreparedStatement statement;
+
+        ReaderStatementHandler(Connection connection, PreparedStatement statement) {
+            this.connection = connection;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            boolean noArgs = method.getParameterTypes().length == 0;
+            if (name.equals("close") && noArgs) {
+                if (statement != null) {
+                    PreparedStatement closing = statement;
+                    statement = null;
+                    try {
+                        closing.close();
+                    } finally {
+                        giveBack(connection);
+                    }
+                }
+                return null;
+            }
+            if (name.equals("isClosed") && noArgs) {
+                return statement == null;
+            }
+            if (name.equals("equals") && method.getParameterTypes().length == 1) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode") && noArgs) {
+                return System.identityHashCode(proxy);
+            }
+            if (name.equals("toString") && noArgs) {
+                return "reader statement: " + statement;
+            }
+            if (statement == null) {
+                throw new SQLException("statement is closed");
+            }
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
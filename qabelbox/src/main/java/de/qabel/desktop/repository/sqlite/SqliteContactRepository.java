@@ -15,10 +15,22 @@ import de.qabel.desktop.repository.sqlite.hydrator.DropURLHydrator;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class SqliteContactRepository extends AbstractSqliteRepository<Contact> implements ContactRepository {
     public static final String TABLE_NAME = "contact";
     private final SqliteDropUrlRepository dropUrlRepository;
+    /**
+     * contacts by identity key identifier
+     */
+    private final Map<String, CachedContacts> cache = new HashMap<>();
 
     public SqliteContactRepository(ClientDatabase database, EntityManager em) {
         this(
@@ -44,8 +56,36 @@ public class SqliteContactRepository extends AbstractSqliteRepository<Contact> i
     @Override
     public synchronized Contacts find(Identity identity) throws PersistenceException {
         Contacts contacts = new Contacts(identity);
+        for (Contact contact : findCached(identity).values()) {
+            contacts.put(contact);
+        }
+        return contacts;
+    }
 
-        try (PreparedStatement statement = database.prepare(
+    /**
+     * Returns the contacts of the identity by key identifier, they are loaded again if any contact
+     * or identity was changed since they were cached.
+     */
+    private Map<String, Contact> findCached(Identity identity) throws PersistenceException {
+        try {
+            long revision = readEntityRevision();
+            CachedContacts cached = cache.get(identity.getKeyIdentifier());
+            if (cached != null && cached.revision == revision) {
+                return cached.byKeyId;
+            }
+            Map<String, Contact> byKeyId = new LinkedHashMap<>();
+            for (Contact contact : load(identity)) {
+                byKeyId.put(contact.getKeyIdentifier(), contact);
+            }
+            cache.put(identity.getKeyIdentifier(), new CachedContacts(revision, byKeyId));
+            return byKeyId;
+        } catch (SQLException e) {
+            throw new PersistenceException("failed to load contacts for " + identity, e);
+        }
+    }
+
+    private Collection<Contact> load(Identity identity) throws SQLException {
+        try (PreparedStatement statement = database.prepareRead(
             "SELECT " + StringUtils.join(",", hydrator.getFields("c")) + " " +
             "FROM contact c " +
             "JOIN identity_contacts ic ON (c.id = ic.contact_id) " +
@@ -55,15 +95,9 @@ public class SqliteContactRepository extends AbstractSqliteRepository<Contact> i
         )) {
             statement.setString(1, identity.getKeyIdentifier());
             try (ResultSet resultSet = statement.executeQuery()) {
-                for (Contact c : hydrator.hydrateAll(resultSet)) {
-                    contacts.put(c);
-                }
+                return hydrator.hydrateAll(resultSet);
             }
-        } catch (SQLException e) {
-            throw new PersistenceException("failed to load contacts for " + identity, e);
         }
-
-        return contacts;
     }
 
     @Override
@@ -76,12 +110,131 @@ public class SqliteContactRepository extends AbstractSqliteRepository<Contact> i
             }
             dropUrlRepository.delete(contact);
             dropUrlRepository.store(contact);
+            increaseEntityRevision();
             hydrator.recognize(contact);
+            cache.remove(identity.getKeyIdentifier());
         } catch (SQLException e) {
             throw new PersistenceException("failed to save contact: " + e.getMessage(), e);
         }
     }
 
+    @Override
+    public synchronized int addAll(Collection<Contact> contacts, Identity identity) throws PersistenceException {
+        Set<String> known = new HashSet<>();
+        for (Contact contact : find(identity).getContacts()) {
+            known.add(contact.getKeyIdentifier());
+        }
+        List<Contact> unknown = new ArrayList<>();
+        for (Contact contact : contacts) {
+            if (known.add(contact.getKeyIdentifier())) {
+                unknown.add(contact);
+            }
+        }
+        return saveAll(unknown, identity);
+    }
+
+    @Override
+    public synchronized int saveAll(Collection<Contact> contacts, Identity identity) throws PersistenceException {
+        Map<String, Contact> byKey = new LinkedHashMap<>();
+        for (Contact contact : contacts) {
+            byKey.put(contact.getKeyIdentifier(), contact);
+        }
+        if (byKey.isEmpty()) {
+            return 0;
+        }
+        cache.remove(identity.getKeyIdentifier());
+        return database.getTransactionManager().transactional(() -> {
+            upsertAll(byKey.values());
+            loadIds(byKey);
+            Set<Integer> connected = findConnectedIds(identity);
+
+            int added = 0;
+            try (PreparedStatement statement = database.prepare(
+                "INSERT OR IGNORE INTO identity_contacts (identity_id, contact_id) VALUES (?, ?)"
+            )) {
+                for (Contact contact : byKey.values()) {
+                    if (connected.contains(contact.getId())) {
+                        continue;
+                    }
+                    statement.setInt(1, identity.getId());
+                    statement.setInt(2, contact.getId());
+                    statement.addBatch();
+                    added++;
+                }
+                if (added > 0) {
+                    statement.executeBatch();
+                }
+            }
+
+            dropUrlRepository.deleteAll(byKey.values());
+            dropUrlRepository.storeAll(byKey.values());
+            increaseEntityRevision();
+            for (Contact contact : byKey.values()) {
+                hydrator.recognize(contact);
+            }
+            return added;
+        });
+    }
+
+    private void upsertAll(Collection<Contact> contacts) throws SQLException {
+        try (PreparedStatement insert = database.prepare(
+                "INSERT OR IGNORE INTO contact (publicKey, alias, phone, email) VALUES (?, ?, ?, ?)");
+             PreparedStatement update = database.prepare(
+                "UPDATE contact SET alias=?, phone=?, email=? WHERE publicKey=?")) {
+            for (Contact contact : contacts) {
+                int i = 1;
+                insert.setString(i++, contact.getKeyIdentifier());
+                insert.setString(i++, contact.getAlias());
+                insert.setString(i++, contact.getPhone());
+                insert.setString(i++, contact.getEmail());
+                insert.addBatch();
+
+                i = 1;
+                update.setString(i++, contact.getAlias());
+                update.setString(i++, contact.getPhone());
+                update.setString(i++, contact.getEmail());
+                update.setString(i++, contact.getKeyIdentifier());
+                update.addBatch();
+            }
+            insert.executeBatch();
+            update.executeBatch();
+        }
+    }
+
+    private void loadIds(Map<String, Contact> byKey) throws SQLException {
+        List<String> keys = new ArrayList<>(byKey.keySet());
+        for (int offset = 0; offset < keys.size(); offset += MAX_PARAMETERS) {
+            List<String> chunk = keys.subList(offset, Math.min(offset + MAX_PARAMETERS, keys.size()));
+            try (PreparedStatement statement = database.prepare(
+                "SELECT id, publicKey FROM contact WHERE publicKey IN (" + placeholders(chunk.size()) + ")"
+            )) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    statement.setString(i + 1, chunk.get(i));
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        byKey.get(resultSet.getString(2)).setId(resultSet.getInt(1));
+                    }
+                }
+            }
+        }
+    }
+
+    private Set<Integer> findConnectedIds(Identity identity) throws SQLException {
+        Set<Integer> ids = new HashSet<>();
+        try (PreparedStatement statement = database.prepare(
+            "SELECT contact_id FROM identity_contacts WHERE identity_id = ?"
+        )) {
+            statement.setInt(1, identity.getId());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    ids.add(resultSet.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
     private boolean exists(Contact contact) throws SQLException {
         try (PreparedStatement statement = database.prepare("SELECT id FROM contact WHERE id = ?")) {
             statement.setInt(1, contact.getId());
@@ -142,6 +295,7 @@ public class SqliteContactRepository extends AbstractSqliteRepository<Contact> i
 
     @Override
     public synchronized void delete(Contact contact, Identity identity) throws PersistenceException, EntityNotFoundExcepion {
+        cache.remove(identity.getKeyIdentifier());
         try {
             try (PreparedStatement statement = database.prepare(
                 "DELETE FROM identity_contacts WHERE contact_id = ? AND identity_id = ?"
@@ -165,6 +319,7 @@ public class SqliteContactRepository extends AbstractSqliteRepository<Contact> i
                 statement.setInt(2, contact.getId());
                 statement.execute();
             }
+            increaseEntityRevision();
         } catch (SQLException e) {
             throw new PersistenceException("failed to delete contact", e);
         }
@@ -172,27 +327,26 @@ public class SqliteContactRepository extends AbstractSqliteRepository<Contact> i
 
     @Override
     public synchronized Contact findByKeyId(Identity identity, String keyId) throws EntityNotFoundExcepion {
+        Contact contact;
         try {
-            try (PreparedStatement statement = database.prepare(
-                "SELECT " + StringUtils.join(",", hydrator.getFields("c")) + " FROM " + TABLE_NAME + " c " +
-                    "JOIN identity_contacts ic ON (c.id = ic.contact_id) " +
-                    "JOIN identity i ON (i.id = ic.identity_id) " +
-                    "JOIN contact c2 ON (c2.id = i.contact_id) " +
-                    "WHERE c2.publicKey = ? AND c.publicKey = ? " +
-                    "LIMIT 1"
-            )) {
-                statement.setString(1, identity.getKeyIdentifier());
-                statement.setString(2, keyId);
-                try (ResultSet results = statement.executeQuery()) {
-                    if (!results.next()) {
-                        throw new EntityNotFoundExcepion(
-                            "no contact found for identity '" + identity.getAlias() + "' and key '" + keyId + "'");
-                    }
-                    return hydrator.hydrateOne(results);
-                }
-            }
-        } catch (SQLException e) {
+            contact = findCached(identity).get(keyId);
+        } catch (PersistenceException e) {
             throw new EntityNotFoundExcepion("exception while searching contact: " + e.getMessage(), e);
         }
+        if (contact == null) {
+            throw new EntityNotFoundExcepion(
+                "no contact found for identity '" + identity.getAlias() + "' and key '" + keyId + "'");
+        }
+        return contact;
+    }
+
+    private static class CachedContacts {
+        private final long revision;
+        private final Map<String, Contact> byKeyId;
+
+        CachedContacts(long revision, Map<String, Contact> byKeyId) {
+            this.revision = revision;
+            this.byKeyId = byKeyId;
+        }
     }
 }
@@ -0,0 +1,105 @@
+package de.qabel.desktop.repository.sqlite;
+
+import de.qabel.desktop.repository.DropOutboxRepository;
+import de.qabel.desktop.repository.exception.PersistenceException;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+public class SqliteDropOutboxRepository implements DropOutboxRepository {
+    public static final String TABLE_NAME = "drop_outbox";
+    private ClientDatabase database;
+
+    public SqliteDropOutboxRepository(ClientDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public synchronized Entry add(String drop, byte[] message, long claimedUntil) throws PersistenceException {
+        long now = System.currentTimeMillis();
+        try (PreparedStatement statement = database.prepare(
+            "INSERT INTO " + TABLE_NAME + " (`drop`, message, attempts, next_attempt, created) VALUES (?, ?, 0, ?, ?)"
+        )) {
+            int i = 1;
+            statement.setString(i++, drop);
+            statement.setBytes(i++, message);
+            statement.setLong(i++, claimedUntil);
+            statement.setLong(i++, now);
+            statement.execute();
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                keys.next();
+                return new Entry(keys.getLong(1), drop, message, 0);
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException("failed to queue message for drop " + drop + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Collection<Entry> findDue(long time) throws PersistenceException {
+        try (PreparedStatement statement = database.prepare(
+            "SELECT id, `drop`, message, attempts FROM " + TABLE_NAME + " WHERE next_attempt <= ? ORDER BY id"
+        )) {
+            statement.setLong(1, time);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                Collection<Entry> entries = new ArrayList<>();
+                while (resultSet.next()) {
+                    entries.add(new Entry(
+                        resultSet.getLong(1),
+                        resultSet.getString(2),
+                        resultSet.getBytes(3),
+                        resultSet.getInt(4)
+                    ));
+                }
+                return entries;
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException("failed to load drop outbox: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean claim(Entry entry, long now, long claimedUntil) throws PersistenceException {
+        try (PreparedStatement statement = database.prepare(
+            "UPDATE " + TABLE_NAME + " SET next_attempt = ? WHERE id = ? AND next_attempt <= ?"
+        )) {
+            int i = 1;
+            statement.setLong(i++, claimedUntil);
+            statement.setLong(i++, entry.getId());
+            statement.setLong(i++, now);
+            return statement.executeUpdate() > 0;
+        } catch (SQLException e) {
+            throw new PersistenceException("failed to claim outbox entry " + entry.getId() + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void reschedule(Entry entry, long nextAttempt) throws PersistenceException {
+        try (PreparedStatement statement = database.prepare(
+            "UPDATE " + TABLE_NAME + " SET attempts = ?, next_attempt = ? WHERE id = ?"
+        )) {
+            int i = 1;
+            statement.setInt(i++, entry.getAttempts());
+            statement.setLong(i++, nextAttempt);
+            statement.setLong(i++, entry.getId());
+            statement.execute();
+        } catch (SQLException e) {
+            throw new PersistenceException("failed to reschedule outbox entry " + entry.getId() + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void delete(Entry entry) throws PersistenceException {
+        try (PreparedStatement statement = database.prepare(
+            "DELETE FROM " + TABLE_NAME + " WHERE id = ?"
+        )) {
+            statement.setLong(1, entry.getId());
+            statement.execute();
+        } catch (SQLException e) {
+            throw new PersistenceException("failed to delete outbox entry " + entry.getId() + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -9,6 +9,8 @@ import de.qabel.desktop.repository.exception.PersistenceException;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 public class SqliteDropUrlRepository extends AbstractSqliteRepository<DropURL> {
     public static final String TABLE_NAME = "drop_url";
@@ -29,6 +31,15 @@ public class SqliteDropUrlRepository extends AbstractSqliteRepository<DropURL> {
         return findAll(contact.getId());
     }
 
+    /**
+     * Loads the drop urls of many contacts with one query per chunk of ids
+     *
+     * @return drop urls by contact id, contacts without drop urls are missing
+     */
+    public Map<Integer, List<DropURL>> findAll(Collection<Integer> contactIds) throws PersistenceException {
+        return findAllByOwners("contact_id", contactIds);
+    }
+
     public void delete(Contact contact) throws SQLException {
         int contactId = contact.getId();
         delete(contactId);
@@ -47,6 +58,46 @@ public class SqliteDropUrlRepository extends AbstractSqliteRepository<DropURL> {
         }
     }
 
+    /**
+     * Deletes the drop urls of all contacts with one batch
+     */
+    public void deleteAll(Collection<Contact> contacts) throws SQLException {
+        if (contacts.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement dropDrops = database.prepare(
+            "DELETE FROM " + TABLE_NAME + " WHERE contact_id = ?"
+        )) {
+            for (Contact contact : contacts) {
+                dropDrops.setInt(1, contact.getId());
+                dropDrops.addBatch();
+            }
+            dropDrops.executeBatch();
+        }
+    }
+
+    /**
+     * Stores the drop urls of all contacts with one batch
+     */
+    public void storeAll(Collection<Contact> contacts) throws SQLException {
+        try (PreparedStatement dropStatement = database.prepare(
+            "INSERT INTO " + TABLE_NAME + " (contact_id, url) VALUES (?, ?)"
+        )) {
+            int batched = 0;
+            for (Contact contact : contacts) {
+                for (DropURL url : contact.getDropUrls()) {
+                    dropStatement.setInt(1, contact.getId());
+                    dropStatement.setString(2, url.toString());
+                    dropStatement.addBatch();
+                    batched++;
+                }
+            }
+            if (batched > 0) {
+                dropStatement.executeBatch();
+            }
+        }
+    }
+
     public void store(Contact contact) throws SQLException {
         int contactId = contact.getId();
         store(contact, contactId);
@@ -16,12 +16,18 @@ import org.spongycastle.util.encoders.Hex;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class SqliteIdentityRepository extends AbstractSqliteRepository<Identity> implements IdentityRepository {
     private static final String TABLE_NAME = "identity";
     private final SqliteDropUrlRepository dropUrlRepository;
     private final SqlitePrefixRepository prefixRepository;
+    /**
+     * all identities by key identifier, valid as long as the entity revision is cacheRevision
+     */
+    private Map<String, Identity> cache;
+    private long cacheRevision;
 
     public SqliteIdentityRepository(
         ClientDatabase database,
@@ -56,8 +62,12 @@ public class SqliteIdentityRepository extends AbstractSqliteRepository<Identity>
     }
 
     @Override
-    public Identity find(String keyId) throws EntityNotFoundExcepion, PersistenceException {
-        return findBy("c.publicKey=?", keyId);
+    public synchronized Identity find(String keyId) throws EntityNotFoundExcepion, PersistenceException {
+        Identity identity = findCached().get(keyId);
+        if (identity == null) {
+            throw new EntityNotFoundExcepion("no identity found for key '" + keyId + "'");
+        }
+        return identity;
     }
 
     @Override
@@ -66,30 +76,55 @@ public class SqliteIdentityRepository extends AbstractSqliteRepository<Identity>
     }
 
     @Override
-    public Identities findAll() throws PersistenceException {
-        Collection<Identity> all = super.findAll("");
+    public synchronized Identities findAll() throws PersistenceException {
         Identities identities = new Identities();
-        for (Identity identity : all) {
+        for (Identity identity : findCached().values()) {
             identities.put(identity);
         }
         return identities;
     }
 
+    /**
+     * Returns all identities by key identifier, they are loaded again if any contact
+     * or identity was changed since they were cached.
+     */
+    private Map<String, Identity> findCached() throws PersistenceException {
+        long revision;
+        try {
+            revision = readEntityRevision();
+        } catch (SQLException e) {
+            throw new PersistenceException("failed to load identities: " + e.getMessage(), e);
+        }
+        if (cache != null && cacheRevision == revision) {
+            return cache;
+        }
+        Map<String, Identity> byKeyId = new LinkedHashMap<>();
+        for (Identity identity : super.findAll("")) {
+            byKeyId.put(identity.getKeyIdentifier(), identity);
+        }
+        cache = byKeyId;
+        cacheRevision = revision;
+        return byKeyId;
+    }
+
     @Override
-    public void save(Identity identity) throws PersistenceException {
+    public synchronized void save(Identity identity) throws PersistenceException {
+        cache = null;
         try {
             if (identity.getId() == 0) {
                 insert(identity);
             } else {
                 update(identity);
             }
+            increaseEntityRevision();
         } catch (SQLException e) {
             throw new PersistenceException("failed to save identity: " + e.getMessage(), e);
         }
     }
 
     @Override
-    public void delete(Identity identity) throws PersistenceException {
+    public synchronized void delete(Identity identity) throws PersistenceException {
+        cache = null;
 		try {
 			try (PreparedStatement statement = database.prepare(
 					"DELETE FROM identity WHERE id = ?"
@@ -97,6 +132,7 @@ public class SqliteIdentityRepository extends AbstractSqliteRepository<Identity>
 				statement.setInt(1, identity.getId());
 				statement.execute();
 			}
+			increaseEntityRevision();
 		} catch (SQLException e) {
 			throw new PersistenceException("failed to delete identity", e);
 		}
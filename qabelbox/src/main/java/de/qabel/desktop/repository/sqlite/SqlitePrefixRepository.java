@@ -7,6 +7,8 @@ import de.qabel.desktop.repository.sqlite.hydrator.PrefixHydrator;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 public class SqlitePrefixRepository extends AbstractSqliteRepository<String> {
     private static final String TABLE_NAME = "prefix";
@@ -19,6 +21,13 @@ public class SqlitePrefixRepository extends AbstractSqliteRepository<String> {
         return findAll("identity_id=?", identity.getId());
     }
 
+    /**
+     * @return prefixes by identity id, identities without prefixes are missing
+     */
+    public Map<Integer, List<String>> findAll(Collection<Integer> identityIds) throws PersistenceException {
+        return findAllByOwners("identity_id", identityIds);
+    }
+
     public void delete(Identity identity) throws SQLException {
         try (PreparedStatement dropPrefixes = database.prepare("DELETE FROM " + TABLE_NAME + " WHERE identity_id = ?")) {
             dropPrefixes.setInt(1, identity.getId());
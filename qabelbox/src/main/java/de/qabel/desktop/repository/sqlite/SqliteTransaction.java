@@ -6,14 +6,18 @@ import de.qabel.desktop.repository.exception.TransactionException;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.locks.Lock;
 
 public class SqliteTransaction implements Transaction {
     private final Connection connection;
     private final Boolean autocommitState;
+    private final Lock lock;
+    private boolean finished;
 
-    public SqliteTransaction(Connection connection, boolean autocommitState) {
+    public SqliteTransaction(Connection connection, boolean autocommitState, Lock lock) {
         this.connection = connection;
         this.autocommitState = autocommitState;
+        this.lock = lock;
     }
 
     @Override
@@ -43,6 +47,10 @@ public class SqliteTransaction implements Transaction {
             connection.setAutoCommit(autocommitState);
         } catch (SQLException ignored) {
         }
+        if (!finished) {
+            finished = true;
+            lock.unlock();
+        }
     }
 
     @Override
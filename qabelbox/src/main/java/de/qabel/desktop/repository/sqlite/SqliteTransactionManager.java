@@ -14,7 +14,11 @@ import java.util.concurrent.locks.ReentrantLock;
 
 
 public class SqliteTransactionManager implements TransactionManager {
-    private final Lock lock = new ReentrantLock(true);
+    /**
+     * Held by the thread which runs a transaction on the connection, until it is committed or rolled back.
+     * Autocommit statements take it as well, so they never join the transaction of another thread.
+     */
+    private final ReentrantLock lock = new ReentrantLock(true);
     private final Connection connection;
 
     public SqliteTransactionManager(Connection connection) {
@@ -23,20 +27,36 @@ public class SqliteTransactionManager implements TransactionManager {
 
     @Override
     public Transaction beginTransaction() throws TransactionException {
+        lock.lock();
         boolean oldAutocommit = false;
         try {
             oldAutocommit = connection.getAutoCommit();
             connection.setAutoCommit(false);
-            return new SqliteTransaction(connection, oldAutocommit);
+            return new SqliteTransaction(connection, oldAutocommit, lock);
         } catch (SQLException e) {
             try {
                 connection.setAutoCommit(oldAutocommit);
             } catch (SQLException ignored) {
             }
+            lock.unlock();
             throw new TransactionException("failed to start transaction", e);
         }
     }
 
+    /**
+     * @return true if the current thread runs a transaction or holds a statement of the connection
+     */
+    public boolean isInTransaction() {
+        return lock.isHeldByCurrentThread();
+    }
+
+    /**
+     * Lock of the connection, statements outside of a transaction hold it until they are closed
+     */
+    Lock getLock() {
+        return lock;
+    }
+
     @Override
     public <T> T transactional(Callable<T> transactionBasedCallback) throws PersistenceException {
         Transaction transaction = beginTransaction();
@@ -20,12 +20,34 @@ public abstract class AbstractHydrator<T> implements Hydrator<T> {
 
     protected abstract String[] getFields();
 
+    /**
+     * Hydrates the rows in two phases: first the columns of every row via {@link #hydrateRow(ResultSet, Collection)},
+     * then the relations of all new instances at once via {@link #loadRelations(Collection)}.
+     */
     @Override
     public Collection<T> hydrateAll(ResultSet resultSet) throws SQLException {
-        List<T> prefixes = new LinkedList<>();
+        List<T> instances = new LinkedList<>();
+        List<T> created = new LinkedList<>();
         while (resultSet.next()) {
-            prefixes.add(hydrateOne(resultSet));
+            instances.add(hydrateRow(resultSet, created));
         }
-        return prefixes;
+        if (!created.isEmpty()) {
+            loadRelations(created);
+        }
+        return instances;
+    }
+
+    /**
+     * Hydrates the columns of the current row. Instances whose relations still have to be loaded are added
+     * to created. By default the row is completely hydrated by {@link #hydrateOne(ResultSet)}.
+     */
+    protected T hydrateRow(ResultSet resultSet, Collection<T> created) throws SQLException {
+        return hydrateOne(resultSet);
+    }
+
+    /**
+     * Loads the relations of all instances created by {@link #hydrateRow(ResultSet, Collection)} and recognizes them.
+     */
+    protected void loadRelations(Collection<T> created) throws SQLException {
     }
 }
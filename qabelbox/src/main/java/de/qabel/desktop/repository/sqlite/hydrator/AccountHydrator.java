@@ -26,8 +26,9 @@ public class AccountHydrator extends AbstractHydrator<Account> {
         int i = 1;
         int id = resultSet.getInt(i++);
 
-        if (em.contains(Account.class, id)) {
-            return em.get(Account.class, id);
+        Account known = em.get(Account.class, id);
+        if (known != null) {
+            return known;
         }
 
         String provider = resultSet.getString(i++);
@@ -11,7 +11,11 @@ import org.spongycastle.util.encoders.Hex;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
 public class ContactHydrator extends AbstractHydrator<Contact> {
     private EntityManager em;
@@ -31,10 +35,21 @@ public class ContactHydrator extends AbstractHydrator<Contact> {
 
     @Override
     public Contact hydrateOne(ResultSet resultSet) throws SQLException {
+        List<Contact> created = new LinkedList<>();
+        Contact contact = hydrateRow(resultSet, created);
+        if (!created.isEmpty()) {
+            loadRelations(created);
+        }
+        return contact;
+    }
+
+    @Override
+    protected Contact hydrateRow(ResultSet resultSet, Collection<Contact> created) throws SQLException {
         int column = 1;
         int id = resultSet.getInt(column++);
-        if (em.contains(Contact.class, id)) {
-            return em.get(Contact.class, id);
+        Contact known = em.get(Contact.class, id);
+        if (known != null) {
+            return known;
         }
 
         String publicKeyAsHex = resultSet.getString(column++);
@@ -48,17 +63,32 @@ public class ContactHydrator extends AbstractHydrator<Contact> {
         contact.setId(id);
         contact.setPhone(phone);
         contact.setEmail(email);
+        created.add(contact);
+        return contact;
+    }
 
+    @Override
+    protected void loadRelations(Collection<Contact> created) throws SQLException {
+        List<Integer> ids = new ArrayList<>(created.size());
+        for (Contact contact : created) {
+            ids.add(contact.getId());
+        }
+        Map<Integer, List<DropURL>> dropUrls;
         try {
-            for (DropURL url : dropUrlRepository.findAll(contact)) {
-                contact.addDrop(url);
-            }
+            dropUrls = dropUrlRepository.findAll(ids);
         } catch (PersistenceException e) {
-            throw new SQLException("Failed to load DropUrls for contact: " + e.getMessage(), e);
+            throw new SQLException("Failed to load DropUrls for contacts: " + e.getMessage(), e);
         }
 
-        recognize(contact);
-        return contact;
+        for (Contact contact : created) {
+            List<DropURL> urls = dropUrls.get(contact.getId());
+            if (urls != null) {
+                for (DropURL url : urls) {
+                    contact.addDrop(url);
+                }
+            }
+            recognize(contact);
+        }
     }
 
     @Override
@@ -13,14 +13,23 @@ import org.spongycastle.util.encoders.Hex;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
 public class IdentityHydrator extends AbstractHydrator<Identity> implements Hydrator<Identity> {
     private final SqliteDropUrlRepository dropUrlRepository;
     private final IdentityFactory identityFactory;
     private final EntityManager entityManager;
     private final SqlitePrefixRepository prefixRepository;
+    /**
+     * contact ids of the identities which were hydrated but whose relations are not loaded yet
+     */
+    private final Map<Integer, Integer> contactIds = new HashMap<>();
 
     public IdentityHydrator(
         IdentityFactory identityFactory,
@@ -48,11 +57,22 @@ public class IdentityHydrator extends AbstractHydrator<Identity> implements Hydr
 
     @Override
     public Identity hydrateOne(ResultSet resultSet) throws SQLException {
+        List<Identity> created = new LinkedList<>();
+        Identity identity = hydrateRow(resultSet, created);
+        if (!created.isEmpty()) {
+            loadRelations(created);
+        }
+        return identity;
+    }
+
+    @Override
+    protected Identity hydrateRow(ResultSet resultSet, Collection<Identity> created) throws SQLException {
         Collection<DropURL> dropUrls = new HashSet<>();
         int i = 1;
         int id = resultSet.getInt(i++);
-        if (entityManager.contains(Identity.class, id)) {
-            return entityManager.get(Identity.class, id);
+        Identity known = entityManager.get(Identity.class, id);
+        if (known != null) {
+            return known;
         }
         byte[] privateKey = Hex.decode(resultSet.getString(i++));
         int contactId = resultSet.getInt(i++);
@@ -64,18 +84,41 @@ public class IdentityHydrator extends AbstractHydrator<Identity> implements Hydr
         identity.setId(id);
         identity.setEmail(email);
         identity.setPhone(phone);
+        contactIds.put(id, contactId);
+        created.add(identity);
+        return identity;
+    }
+
+    @Override
+    protected void loadRelations(Collection<Identity> created) throws SQLException {
+        List<Integer> identityIds = new ArrayList<>(created.size());
+        for (Identity identity : created) {
+            identityIds.add(identity.getId());
+        }
+        Map<Integer, List<DropURL>> dropUrls;
+        Map<Integer, List<String>> prefixes;
         try {
-            for (DropURL url : dropUrlRepository.findAll(contactId)) {
-                identity.addDrop(url);
-            }
-            for (String prefix : prefixRepository.findAll(identity)) {
-                identity.getPrefixes().add(prefix);
-            }
+            dropUrls = dropUrlRepository.findAll(contactIds.values());
+            prefixes = prefixRepository.findAll(identityIds);
         } catch (PersistenceException e) {
+            contactIds.clear();
             throw new SQLException("failed to load drop urls for identity", e);
         }
-        entityManager.put(Identity.class, identity);
-        return identity;
+
+        for (Identity identity : created) {
+            List<DropURL> urls = dropUrls.get(contactIds.remove(identity.getId()));
+            if (urls != null) {
+                for (DropURL url : urls) {
+                    identity.addDrop(url);
+                }
+            }
+            List<String> identityPrefixes = prefixes.get(identity.getId());
+            if (identityPrefixes != null) {
+                identity.getPrefixes().addAll(identityPrefixes);
+            }
+            entityManager.put(Identity.class, identity);
+        }
+        contactIds.clear();
     }
 
     @Override
@@ -0,0 +1,52 @@
+package de.qabel.desktop.repository.sqlite.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Moves or derives data after the schema migrations, in small batches in the background.
+ * <p>
+ * A batch has to select only rows which are not processed yet, so an interrupted backfill
+ * simply continues with the next batch on the next start.
+ */
+public abstract class AbstractBackfill {
+    private Connection connection;
+
+    public AbstractBackfill(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * For backfills which write through the repositories instead of the connection
+     */
+    protected AbstractBackfill() {
+        this(null);
+    }
+
+    protected Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * @return the schema version which is required by this backfill
+     */
+    public abstract long getVersion();
+
+    /**
+     * Repositories run their own transactions, a backfill using them has to return false,
+     * as the transactions of the client database can't be nested.
+     *
+     * @return true if every batch should be wrapped in a transaction
+     */
+    public boolean isTransactional() {
+        return true;
+    }
+
+    /**
+     * Processes the next batch, the caller wraps every batch in its own transaction
+     * if the backfill {@link #isTransactional() is transactional}
+     *
+     * @return number of processed rows, 0 if nothing is left to do
+     */
+    public abstract int backfill(int batchSize) throws SQLException;
+}
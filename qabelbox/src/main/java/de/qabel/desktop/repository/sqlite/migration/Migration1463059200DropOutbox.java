@@ -0,0 +1,35 @@
+package de.qabel.desktop.repository.sqlite.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+public class Migration1463059200DropOutbox extends AbstractMigration {
+    public Migration1463059200DropOutbox(Connection connection) {
+        super(connection);
+    }
+
+    @Override
+    public long getVersion() {
+        return 1463059200L;
+    }
+
+    @Override
+    public void up() throws SQLException {
+        execute(
+            "CREATE TABLE drop_outbox (" +
+                "id INTEGER PRIMARY KEY," +
+                "`drop` VARCHAR(255) NOT NULL," +
+                "message BLOB NOT NULL," +
+                "attempts INTEGER NOT NULL DEFAULT 0," +
+                "next_attempt TIMESTAMP NOT NULL," +
+                "created TIMESTAMP NOT NULL" +
+            ")"
+        );
+        execute("CREATE INDEX drop_outbox_next_attempt ON drop_outbox (next_attempt)");
+    }
+
+    @Override
+    public void down() throws SQLException {
+        execute("DROP TABLE drop_outbox");
+    }
+}
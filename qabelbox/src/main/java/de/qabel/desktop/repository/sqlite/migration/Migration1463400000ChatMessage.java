@@ -0,0 +1,47 @@
+package de.qabel.desktop.repository.sqlite.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Creates the drop_message table for the chat history which was stored in one database per identity before.
+ * Chat partners are referenced by their key identifier because messages from unknown senders are kept as well.
+ */
+public class Migration1463400000ChatMessage extends AbstractMigration {
+    public Migration1463400000ChatMessage(Connection connection) {
+        super(connection);
+    }
+
+    @Override
+    public long getVersion() {
+        return 1463400000L;
+    }
+
+    @Override
+    public void up() throws SQLException {
+        execute(
+            "CREATE TABLE drop_message (" +
+                "id INTEGER PRIMARY KEY," +
+                "identity_id INTEGER NOT NULL," +
+                "sender VARCHAR(64) NOT NULL," +
+                "receiver VARCHAR(64) NOT NULL," +
+                "seen BOOLEAN NOT NULL DEFAULT 0," +
+                "created TIMESTAMP NOT NULL," +
+                "acknowledge_id VARCHAR(255) NULL," +
+                "payload_type VARCHAR(255) NOT NULL," +
+                "payload TEXT NULL," +
+                "fingerprint VARCHAR(64) NOT NULL," +
+                "FOREIGN KEY (identity_id) REFERENCES identity (id) ON DELETE CASCADE" +
+            ")"
+        );
+        execute("CREATE UNIQUE INDEX drop_message_fingerprint ON drop_message (identity_id, fingerprint)");
+        execute("CREATE INDEX drop_message_sender ON drop_message (identity_id, sender, created)");
+        execute("CREATE INDEX drop_message_receiver ON drop_message (identity_id, receiver, created)");
+        execute("CREATE INDEX drop_message_unseen ON drop_message (identity_id, seen, sender)");
+    }
+
+    @Override
+    public void down() throws SQLException {
+        execute("DROP TABLE drop_message");
+    }
+}
@@ -0,0 +1,36 @@
+package de.qabel.desktop.repository.sqlite.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Full text index over the text of chat messages and the file names of share notifications.
+ * The docid of an entry is the id of its drop_message, existing messages are indexed in the background.
+ */
+public class Migration1463500000ChatMessageSearch extends AbstractMigration {
+    public Migration1463500000ChatMessageSearch(Connection connection) {
+        super(connection);
+    }
+
+    @Override
+    public long getVersion() {
+        return 1463500000L;
+    }
+
+    @Override
+    public void up() throws SQLException {
+        execute("CREATE VIRTUAL TABLE drop_message_search USING fts4(message, file_name)");
+        execute(
+            "CREATE TRIGGER drop_message_search_delete AFTER DELETE ON drop_message " +
+            "BEGIN " +
+                "DELETE FROM drop_message_search WHERE docid = old.id; " +
+            "END"
+        );
+    }
+
+    @Override
+    public void down() throws SQLException {
+        execute("DROP TRIGGER drop_message_search_delete");
+        execute("DROP TABLE drop_message_search");
+    }
+}
@@ -0,0 +1,32 @@
+package de.qabel.desktop.repository.sqlite.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Counts changes of identities, contacts and their drop urls and prefixes, so cached entities
+ * can be validated cheaply, even if they were changed by another process.
+ * The repositories increase the revision once per write.
+ */
+public class Migration1463600000EntityRevision extends AbstractMigration {
+
+    public Migration1463600000EntityRevision(Connection connection) {
+        super(connection);
+    }
+
+    @Override
+    public long getVersion() {
+        return 1463600000L;
+    }
+
+    @Override
+    public void up() throws SQLException {
+        execute("CREATE TABLE entity_revision (revision INTEGER NOT NULL)");
+        execute("INSERT INTO entity_revision (revision) VALUES (0)");
+    }
+
+    @Override
+    public void down() throws SQLException {
+        execute("DROP TABLE entity_revision");
+    }
+}
@@ -0,0 +1,29 @@
+package de.qabel.desktop.repository.sqlite.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Records the finished steps of the migration from the legacy AndroidPersistence,
+ * so it is resumed after an interruption and skipped once it is complete.
+ */
+public class Migration1463700000LegacyMigration extends AbstractMigration {
+    public Migration1463700000LegacyMigration(Connection connection) {
+        super(connection);
+    }
+
+    @Override
+    public long getVersion() {
+        return 1463700000L;
+    }
+
+    @Override
+    public void up() throws SQLException {
+        execute("CREATE TABLE legacy_migration (step VARCHAR(255) PRIMARY KEY NOT NULL)");
+    }
+
+    @Override
+    public void down() throws SQLException {
+        execute("DROP TABLE legacy_migration");
+    }
+}
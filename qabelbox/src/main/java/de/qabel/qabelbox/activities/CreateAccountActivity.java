@@ -55,7 +55,7 @@ public class CreateAccountActivity extends BaseWizardActivity {
         mBoxAccountName = appPreference.getAccountName();
         mBoxAccountEMail = appPreference.getAccountEMail();
         super.onCreate(savedInstanceState);
-        mBoxAccountServer = new BoxAccountRegisterServer(getApplicationContext());
+        mBoxAccountServer = QabelBoxApplication.getApplicationComponent(this).boxAccountRegisterServer();
     }
 
     private boolean skipRegister() {
@@ -216,7 +216,7 @@ public class CreateIdentityActivity extends BaseWizardActivity {
         }
 
         if (tryCount < 3) {
-            PrefixServer prefixServer = new PrefixServer(getApplicationContext());
+            PrefixServer prefixServer = QabelBoxApplication.getApplicationComponent(this).prefixServer();
             prefixServer.getPrefix(this, new JsonRequestCallback(new int[]{201}) {
 
                 @Override
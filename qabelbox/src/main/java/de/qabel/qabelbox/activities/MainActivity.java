@@ -60,6 +60,7 @@ import de.qabel.qabelbox.R;
 import de.qabel.qabelbox.account.AccountManager;
 import de.qabel.qabelbox.account.AccountStatusCodes;
 import de.qabel.qabelbox.adapter.FilesAdapter;
+import de.qabel.qabelbox.chat.ChatLongPoller;
 import de.qabel.qabelbox.chat.ChatServer;
 import de.qabel.qabelbox.chat.ShareHelper;
 import de.qabel.qabelbox.communication.VolumeFileTransferHelper;
@@ -184,6 +185,9 @@ public class MainActivity extends CrashReportingActivity
 
     @Inject
     BoxVolume boxVolume;
+
+    @Inject
+    ChatLongPoller chatLongPoller;
     private MainActivityComponent component;
 
     private BroadcastReceiver accountBroadCastReceiver = new BroadcastReceiver() {
@@ -332,7 +336,7 @@ public class MainActivity extends CrashReportingActivity
     }
 
     public void installConnectivityManager() {
-        connectivityManager.setListener(new ConnectivityManager.ConnectivityListener() {
+        connectivityManager.addListener(new ConnectivityManager.ConnectivityListener() {
 
             private AlertDialog offlineIndicator;
 
@@ -985,6 +989,20 @@ public class MainActivity extends CrashReportingActivity
         startActivityForResult(intent, REQUEST_CODE_CHOOSE_EXPORT);
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (activeIdentity != null) {
+            chatLongPoller.start(activeIdentity);
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        chatLongPoller.stop();
+        super.onPause();
+    }
+
     @Override
     protected void onDestroy() {
 
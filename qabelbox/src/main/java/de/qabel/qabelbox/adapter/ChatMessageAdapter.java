@@ -11,9 +11,11 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import de.qabel.core.config.Contact;
 import de.qabel.qabelbox.R;
@@ -25,30 +27,46 @@ public class ChatMessageAdapter extends BaseAdapter {
     private final String TAG = getClass().getSimpleName();
     private String contactPublicKey;
     private List<ChatMessageItem> mMessages = null;
+    private final Set<Integer> messageIds = new HashSet<>();
     private OnItemClickListener onItemClickListener;
     private View emptyView;
 
-    public ChatMessageAdapter(ArrayList<ChatMessageItem> allMessages, Contact contact) {
+    public ChatMessageAdapter(Contact contact) {
 
         mMessages = new ArrayList<>();
+        contactPublicKey = contact.getEcPublicKey().getReadableKeyIdentifier();
         registerDataSetObserver(observer);
-        setMessages(allMessages, contact);
     }
 
-    public void setMessages(ArrayList<ChatMessageItem> messages, Contact contact) {
-        contactPublicKey = contact.getEcPublicKey().getReadableKeyIdentifier();
-        mMessages.clear();
-
+    /**
+     * Adds a page of older messages or newly received ones, messages which are
+     * already shown are skipped.
+     *
+     * @return number of added messages
+     */
+    public int addMessages(Collection<ChatMessageItem> messages) {
+        int added = 0;
         for (ChatMessageItem message : messages) {
-            if (contactPublicKey.equals(message.getSenderKey()) || contactPublicKey.equals(message.getReceiverKey())) {
+            if (messageIds.add(message.id)) {
                 mMessages.add(message);
+                added++;
             }
         }
-        Collections.sort(mMessages, (o1, o2) ->
-                (o1.getTime() > o2.getTime() ? 1 : (o1.getTime() == o2.getTime() ? 0 : -1)));
-
+        if (added > 0) {
+            Collections.sort(mMessages, (o1, o2) -> o1.getTime() != o2.getTime()
+                    ? (o1.getTime() > o2.getTime() ? 1 : -1)
+                    : (o1.id > o2.id ? 1 : (o1.id == o2.id ? 0 : -1)));
+        }
+        return added;
     }
 
+    /**
+     * @return oldest loaded message to continue paging from, null if nothing is loaded
+     */
+    @Nullable
+    public ChatMessageItem getOldestMessage() {
+        return mMessages.isEmpty() ? null : mMessages.get(0);
+    }
 
     public ChatMessageItem getMessage(int position) {
 
@@ -20,6 +20,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 
@@ -41,6 +45,8 @@ import de.qabel.qabelbox.chat.SyncAdapterChatNotificationManager;
 import de.qabel.qabelbox.helper.Helper;
 import de.qabel.qabelbox.persistence.RepositoryFactory;
 import de.qabel.qabelbox.services.DropConnector;
+import de.qabel.qabelbox.services.DropMessageDecryptor;
+import de.qabel.qabelbox.services.RetrievedDropMessages;
 import de.qabel.qabelbox.services.HttpDropConnector;
 
 public class QabelSyncAdapter extends AbstractThreadedSyncAdapter {
@@ -54,6 +60,11 @@ public class QabelSyncAdapter extends AbstractThreadedSyncAdapter {
     @Inject ChatServer chatServer;
     DropConnector dropConnector;
     private List<ChatMessageInfo> currentMessages = new ArrayList<>();
+    /**
+     * Identities are synced in parallel, the number of open connections is limited by the
+     * {@link DropConnector}
+     */
+    private final ExecutorService syncExecutor = Executors.newCachedThreadPool();
 
     public QabelSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
@@ -109,13 +120,34 @@ public class QabelSyncAdapter extends AbstractThreadedSyncAdapter {
             Log.e(TAG, "Sync failed", e);
             return;
         }
-        List<ChatMessageItem> retrievedMessages = new ArrayList<>();
+        DropMessageDecryptor decryptor;
+        try {
+            decryptor = dropConnector.createDecryptor();
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Sync failed", e);
+            return;
+        }
+        Map<Identity, Future<RetrievedDropMessages>> fetches = new HashMap<>();
         for (Identity identity: identities) {
             Log.i(TAG, "Loading messages for identity "+ identity.getAlias());
-            retrievedMessages.addAll(
-                    chatServer.refreshList(dropConnector, identity));
+            fetches.put(identity, syncExecutor.submit(() -> dropConnector.retrieveDropMessages(
+                    identity, chatServer.getLastRetrievedTime(identity), decryptor)));
+        }
+        Map<Identity, RetrievedDropMessages> results = new HashMap<>();
+        for (Map.Entry<Identity, Future<RetrievedDropMessages>> fetch : fetches.entrySet()) {
+            try {
+                results.put(fetch.getKey(), fetch.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                Log.w(TAG, "Sync interrupted", e);
+                return;
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Sync failed for an identity", e.getCause());
+                syncResult.stats.numIoExceptions++;
+            }
         }
-        notifyForNewMessages(retrievedMessages);
+        // one transaction for the messages of all identities and the new drop states
+        notifyForNewMessages(new ArrayList<>(chatServer.storeMessages(results)));
     }
 
     void notifyForNewMessages(List<ChatMessageItem> retrievedMessages) {
@@ -0,0 +1,172 @@
+package de.qabel.qabelbox.chat;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import de.qabel.core.config.Identity;
+import de.qabel.core.drop.DropURL;
+import de.qabel.desktop.repository.IdentityRepository;
+import de.qabel.desktop.repository.exception.EntityNotFoundExcepion;
+import de.qabel.desktop.repository.exception.PersistenceException;
+import de.qabel.qabelbox.config.AppPreference;
+import de.qabel.qabelbox.helper.Helper;
+import de.qabel.qabelbox.services.HttpDropConnector;
+import de.qabel.qabelbox.services.RetrievedDropMessages;
+
+/**
+ * Long-polls the drops of the active identity while the app is in the foreground,
+ * in the background messages are still received by the QabelSyncAdapter.
+ */
+@Singleton
+public class ChatLongPoller {
+
+    private static final String TAG = "ChatLongPoller";
+    static final int POLL_TIMEOUT_SECONDS = 60;
+    /**
+     * Pause after errors or if the server answers without waiting, to avoid a tight loop
+     */
+    static final long FALLBACK_INTERVAL_MILLIS = 30 * 1000;
+    /**
+     * A poll which returned faster than this did not wait on the server
+     */
+    private static final long MIN_POLL_DURATION_MILLIS = 1000;
+    /**
+     * Minimum time between two polls of a drop, even if the last one returned new messages
+     */
+    static final long MIN_POLL_INTERVAL_MILLIS = 2000;
+
+    private final Context context;
+    private final ChatServer chatServer;
+    private final HttpDropConnector dropConnector;
+    private final IdentityRepository identityRepository;
+    // only weakly referenced by the preferences
+    private final SharedPreferences.OnSharedPreferenceChangeListener activeIdentityRegistration;
+    private final List<Thread> pollers = new ArrayList<>();
+    private final Set<HttpDropConnector.LongPoll> runningPolls =
+            Collections.newSetFromMap(new ConcurrentHashMap<HttpDropConnector.LongPoll, Boolean>());
+    private Identity identity;
+
+    @Inject
+    public ChatLongPoller(Context context, ChatServer chatServer, HttpDropConnector dropConnector,
+                          AppPreference preference, IdentityRepository identityRepository) {
+        this.context = context;
+        this.chatServer = chatServer;
+        this.dropConnector = dropConnector;
+        this.identityRepository = identityRepository;
+        activeIdentityRegistration = preference.addActiveIdentityListener(this::onActiveIdentityChanged);
+    }
+
+    /**
+     * Moves a running poller over to the new active identity
+     */
+    private synchronized void onActiveIdentityChanged(String identityKey) {
+        if (identity == null || identity.getKeyIdentifier().equals(identityKey)) {
+            return;
+        }
+        try {
+            start(identityRepository.find(identityKey));
+        } catch (EntityNotFoundExcepion | PersistenceException e) {
+            Log.w(TAG, "Could not load the active identity " + identityKey, e);
+            stop();
+        }
+    }
+
+    /**
+     * Polls the drops of the identity, polling for another identity is stopped.
+     * Nothing changes if the drops of the identity are already polled.
+     */
+    public synchronized void start(Identity identity) {
+        if (isPolling(identity)) {
+            return;
+        }
+        stop();
+        this.identity = identity;
+        for (DropURL dropURL : identity.getDropUrls()) {
+            Thread poller = new Thread(() -> poll(identity, dropURL.getUri()), TAG);
+            poller.setDaemon(true);
+            pollers.add(poller);
+            poller.start();
+        }
+    }
+
+    private boolean isPolling(Identity identity) {
+        return this.identity != null && !pollers.isEmpty()
+                && this.identity.getKeyIdentifier().equals(identity.getKeyIdentifier())
+                && this.identity.getDropUrls().equals(identity.getDropUrls());
+    }
+
+    /**
+     * Stops polling and cancels the running requests.
+     */
+    public synchronized void stop() {
+        for (Thread poller : pollers) {
+            poller.interrupt();
+        }
+        for (HttpDropConnector.LongPoll poll : runningPolls) {
+            poll.cancel();
+        }
+        pollers.clear();
+        identity = null;
+    }
+
+    private void poll(Identity identity, URI uri) {
+        Log.d(TAG, "Start polling " + uri);
+        while (!Thread.currentThread().isInterrupted()) {
+            long started = System.currentTimeMillis();
+            try {
+                HttpDropConnector.LongPoll poll = dropConnector.newLongPoll(uri,
+                        chatServer.getLastRetrievedTime(identity), POLL_TIMEOUT_SECONDS);
+                RetrievedDropMessages messages;
+                runningPolls.add(poll);
+                try {
+                    if (Thread.currentThread().isInterrupted()) {
+                        // stopped before the poll could be cancelled
+                        break;
+                    }
+                    messages = poll.execute();
+                } finally {
+                    runningPolls.remove(poll);
+                }
+                Collection<ChatMessageItem> stored = chatServer.storeMessages(identity, messages);
+                if (!stored.isEmpty()) {
+                    context.sendBroadcast(new Intent(Helper.INTENT_REFRESH_CONTACTLIST));
+                }
+                long duration = System.currentTimeMillis() - started;
+                if (stored.isEmpty() && duration < MIN_POLL_DURATION_MILLIS) {
+                    // the server did not wait, it does not support long-polling
+                    Thread.sleep(FALLBACK_INTERVAL_MILLIS);
+                } else if (duration < MIN_POLL_INTERVAL_MILLIS) {
+                    Thread.sleep(MIN_POLL_INTERVAL_MILLIS - duration);
+                }
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    // the request was cancelled by stop()
+                    break;
+                }
+                Log.w(TAG, "Polling " + uri + " failed", e);
+                try {
+                    Thread.sleep(FALLBACK_INTERVAL_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        Log.d(TAG, "Stop polling " + uri);
+    }
+}
@@ -0,0 +1,118 @@
+package de.qabel.qabelbox.chat;
+
+import android.support.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import de.qabel.core.config.Identity;
+import de.qabel.desktop.repository.exception.PersistenceException;
+
+/**
+ * Chat history of all identities. Chat partners are addressed by their key identifier.
+ */
+public interface ChatMessageRepository {
+
+    /**
+     * @return true if the message was stored, false if it was already known
+     */
+    boolean save(Identity identity, ChatMessageItem item) throws PersistenceException;
+
+    /**
+     * Stores all messages in one transaction, messages which are already known are skipped.
+     *
+     * @return the messages which were not stored before
+     */
+    List<ChatMessageItem> saveAll(Identity identity, Collection<ChatMessageItem> items) throws PersistenceException;
+
+    /**
+     * Stores the messages of several identities in one transaction, messages which are already known are skipped.
+     *
+     * @return the messages which were not stored before
+     */
+    List<ChatMessageItem> saveAll(Map<Identity, ? extends Collection<ChatMessageItem>> items)
+            throws PersistenceException;
+
+    /**
+     * Stores the messages and the states of the drops they were retrieved from in one transaction,
+     * so a drop is never advanced past messages which could not be stored.
+     *
+     * @param dropStates new state by drop url
+     * @return the messages which were not stored before
+     */
+    List<ChatMessageItem> saveAll(Map<Identity, ? extends Collection<ChatMessageItem>> items,
+                                  Map<String, String> dropStates) throws PersistenceException;
+
+    ChatMessageItem[] findAll(Identity identity) throws PersistenceException;
+
+    ChatMessageItem[] findByContact(Identity identity, String contactKey) throws PersistenceException;
+
+    /**
+     * Loads a page of the conversation with the given contact, the newest messages first.
+     *
+     * @param before last (oldest) message of the previous page, null for the newest page
+     * @return up to limit messages older than before, ordered from oldest to newest
+     */
+    ChatMessageItem[] findPage(Identity identity, String contactKey, @Nullable ChatMessageItem before, int limit)
+            throws PersistenceException;
+
+    /**
+     * @return number of new messages by sender key, senders without new messages are missing
+     */
+    Map<String, Integer> countNewBySender(Identity identity) throws PersistenceException;
+
+    /**
+     * @return number of messages which were marked as read
+     */
+    int markAsRead(Identity identity, String senderKey) throws PersistenceException;
+
+    /**
+     * @return creation time of the latest received message or 0 if there is none
+     */
+    long findLastReceivedTime(Identity identity) throws PersistenceException;
+
+    /**
+     * Searches the message texts and shared file names of all conversations of the identity.
+     * Every word of the query has to match the beginning of a word in the message.
+     *
+     * @return up to limit results, best match first
+     */
+    List<SearchResult> search(Identity identity, String query, int limit) throws PersistenceException;
+
+    /**
+     * Adds up to limit stored messages which are not searchable yet to the search index.
+     * New messages are indexed when they are saved, this is only needed for existing ones.
+     *
+     * @return number of messages added to the index, 0 if all messages are searchable
+     */
+    int updateSearchIndex(int limit) throws PersistenceException;
+
+    class SearchResult {
+        private final ChatMessageItem message;
+        private final String snippet;
+        private final double score;
+
+        public SearchResult(ChatMessageItem message, String snippet, double score) {
+            this.message = message;
+            this.snippet = snippet;
+            this.score = score;
+        }
+
+        public ChatMessageItem getMessage() {
+            return message;
+        }
+
+        /**
+         * Part of the text around the matches, which are wrapped in &lt;b&gt; tags.
+         * The text itself is not escaped.
+         */
+        public String getSnippet() {
+            return snippet;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package de.qabel.qabelbox.chat;
+
+import java.sql.SQLException;
+
+import de.qabel.desktop.repository.exception.PersistenceException;
+import de.qabel.desktop.repository.sqlite.migration.AbstractBackfill;
+
+/**
+ * Adds the chat messages which were stored before the search index existed to the index
+ */
+public class ChatMessageSearchBackfill extends AbstractBackfill {
+
+    private final ChatMessageRepository repository;
+
+    public ChatMessageSearchBackfill(ChatMessageRepository repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    public long getVersion() {
+        return 1463500000L;
+    }
+
+    @Override
+    public boolean isTransactional() {
+        return false;
+    }
+
+    @Override
+    public int backfill(int batchSize) throws SQLException {
+        try {
+            return repository.updateSearchIndex(batchSize);
+        } catch (PersistenceException e) {
+            throw new SQLException("failed to update the search index: " + e.getMessage(), e);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package de.qabel.qabelbox.chat;
 
 import android.content.Context;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import org.json.JSONException;
@@ -8,15 +9,23 @@ import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.inject.Inject;
+import javax.inject.Singleton;
 
 import de.qabel.core.config.Contact;
 import de.qabel.core.config.Identity;
 import de.qabel.core.drop.DropMessage;
+import de.qabel.desktop.repository.exception.PersistenceException;
 import de.qabel.qabelbox.services.DropConnector;
+import de.qabel.qabelbox.services.RetrievedDropMessages;
 
+@Singleton
 public class ChatServer {
 
     private static final String TAG = "ChatServer";
@@ -24,20 +33,22 @@ public class ChatServer {
     public static final String TAG_URL = "url";
     public static final String TAG_KEY = "key";
 
-    private final List<ChatServerCallback> callbacks = new ArrayList<>();
-    private Context context;
+    /**
+     * Listeners are added from the ui thread while the sync notifies them in the background
+     */
+    private final List<ChatServerCallback> callbacks = new CopyOnWriteArrayList<>();
+    /**
+     * New message counts by sender for each identity key, loaded with one query and then
+     * kept up to date by this chat server
+     */
+    private final Map<String, Map<String, Integer>> newMessageCounts = new HashMap<>();
+    private final ChatMessageRepository repository;
 
     @Inject
-    public ChatServer(Context context) {
-        this.context = context;
-
+    public ChatServer(Context context, ChatMessageRepository repository) {
+        this.repository = repository;
     }
 
-    private ChatMessagesDataBase getDataBaseForIdentity(Identity identity) {
-        return new ChatMessagesDataBase(context, identity);
-    }
-
-
     public void addListener(ChatServerCallback callback) {
 
         callbacks.add(callback);
@@ -53,61 +64,86 @@ public class ChatServer {
      */
 
     public Collection<ChatMessageItem> refreshList(DropConnector connector, Identity identity) {
-        try (ChatMessagesDataBase dataBase = getDataBaseForIdentity(identity)) {
-            List<ChatMessageItem> messages = new ArrayList<>();
-            long lastRetrieved = dataBase.getLastRetrievedDropMessageTime();
-            Log.d(TAG, "last retrieved dropmessage time " + lastRetrieved + " / " + System.currentTimeMillis());
-            String identityKey = getIdentityIdentifier(identity);
-            Collection<DropMessage> result = connector.retrieveDropMessages(identity, lastRetrieved);
-
-            if (result != null) {
-                Log.d(TAG, "new message count: " + result.size());
-                //store into db
-                for (DropMessage item : result) {
-                    ChatMessageItem cms = new ChatMessageItem(item);
-                    cms.receiver = identityKey;
-                    cms.isNew = 1;
-                    if (storeIntoDB(dataBase, cms) == ChatMessagesDataBase.MessageStatus.DUPLICATE) {
-                        cms.isNew = 0;
-                    } else {
-                        messages.add(cms);
-                    }
-                }
-
-                //@todo replace this with header from server response.
-                //@see https://github.com/Qabel/qabel-android/issues/272
-                for (DropMessage item : result) {
-                    lastRetrieved = Math.max(item.getCreationDate().getTime(), lastRetrieved);
-                }
-            }
-            dataBase.setLastRetrievedDropMessagesTime(lastRetrieved);
-            Log.d(TAG, "new retrieved dropmessage time " + lastRetrieved);
+        return storeMessages(identity,
+                connector.retrieveDropMessages(identity, getLastRetrievedTime(identity)));
+    }
 
-            sendCallbacksRefreshed();
-            dataBase.close();
-            return messages;
+    public long getLastRetrievedTime(Identity identity) {
+        try {
+            return repository.findLastReceivedTime(identity);
+        } catch (PersistenceException e) {
+            Log.e(TAG, "Could not load last retrieved message time", e);
+            return 0;
         }
     }
 
-    private String getIdentityIdentifier(Identity identity) {
-        return identity.getEcPublicKey().getReadableKeyIdentifier();
+    /**
+     * Stores received drop messages and the new drop states in one transaction and notifies the listeners
+     *
+     * @return messages which were not known before
+     */
+    public Collection<ChatMessageItem> storeMessages(Identity identity, RetrievedDropMessages result) {
+        return storeMessages(Collections.singletonMap(identity, result));
     }
 
+    /**
+     * Stores the received drop messages of several identities in one transaction and notifies the listeners once.
+     * The drop states are saved in the same transaction, so they are not advanced if the messages can't be stored.
+     *
+     * @return messages which were not known before
+     */
+    public Collection<ChatMessageItem> storeMessages(Map<Identity, RetrievedDropMessages> results) {
+        Map<Identity, List<ChatMessageItem>> items = new HashMap<>();
+        Map<String, String> dropStates = new HashMap<>();
+        int count = 0;
+        for (Map.Entry<Identity, RetrievedDropMessages> result : results.entrySet()) {
+            String identityKey = getIdentityIdentifier(result.getKey());
+            Collection<DropMessage> dropMessages = result.getValue().getMessages();
+            List<ChatMessageItem> identityItems = new ArrayList<>(dropMessages.size());
+            for (DropMessage item : dropMessages) {
+                ChatMessageItem cms = new ChatMessageItem(item);
+                cms.receiver = identityKey;
+                cms.isNew = 1;
+                identityItems.add(cms);
+            }
+            items.put(result.getKey(), identityItems);
+            dropStates.putAll(result.getValue().getDropStates());
+            count += identityItems.size();
+        }
+        Log.d(TAG, "new message count: " + count);
 
-    public ChatMessagesDataBase.MessageStatus storeIntoDB(ChatMessagesDataBase dataBase, ChatMessageItem item) {
-        if (item != null) {
-            return dataBase.put(item);
+        List<ChatMessageItem> messages = new ArrayList<>();
+        try {
+            messages.addAll(repository.saveAll(items, dropStates));
+        } catch (PersistenceException e) {
+            Log.e(TAG, "Failed to store " + count + " messages", e);
         }
-        return ChatMessagesDataBase.MessageStatus.ERROR;
+        countReceivedMessages(messages);
+
+        sendCallbacksRefreshed();
+        return messages;
+    }
+
+    private String getIdentityIdentifier(Identity identity) {
+        return identity.getEcPublicKey().getReadableKeyIdentifier();
     }
 
-    public ChatMessagesDataBase.MessageStatus storeIntoDB(Identity identity, ChatMessageItem item) {
-        if (item != null) {
-            try (ChatMessagesDataBase db = getDataBaseForIdentity(identity)) {
-                return db.put(item);
+    /**
+     * @return true if the message was stored, false if it was already known or could not be stored
+     */
+    public boolean storeIntoDB(Identity identity, ChatMessageItem item) {
+        if (item == null) {
+            return false;
+        }
+        try {
+            if (repository.save(identity, item)) {
+                countNewMessages(identity, Collections.singletonList(item));
+                return true;
             }
+        } catch (PersistenceException e) {
+            Log.e(TAG, "Failed to store message", e);
         }
-        return ChatMessagesDataBase.MessageStatus.ERROR;
+        return false;
     }
 
     /**
@@ -155,27 +191,123 @@ public class ChatServer {
 
 
     public boolean hasNewMessages(Identity identity, Contact c) {
-        try (ChatMessagesDataBase db = getDataBaseForIdentity(identity)) {
-            return db.getNewMessageCount(c) > 0;
+        return getNewMessageCounts(identity).containsKey(c.getEcPublicKey().getReadableKeyIdentifier());
+    }
+
+    /**
+     * @return number of new messages by sender key, senders without new messages are missing
+     */
+    public synchronized Map<String, Integer> getNewMessageCounts(Identity identity) {
+        String key = getIdentityIdentifier(identity);
+        Map<String, Integer> counts = newMessageCounts.get(key);
+        if (counts == null) {
+                try {
+                counts = repository.countNewBySender(identity);
+            } catch (PersistenceException e) {
+                Log.e(TAG, "Could not count new messages", e);
+                return new HashMap<>();
+            }
+            newMessageCounts.put(key, counts);
+        }
+        return new HashMap<>(counts);
+    }
+
+    /**
+     * Drops the cached new message counts, call this when messages may have been stored
+     * by another process like the sync adapter.
+     */
+    public synchronized void invalidateNewMessageCounts() {
+        newMessageCounts.clear();
+    }
+
+    private synchronized void countNewMessages(Identity identity, Collection<ChatMessageItem> stored) {
+        Map<String, Integer> counts = newMessageCounts.get(getIdentityIdentifier(identity));
+        if (counts == null) {
+            return;
+        }
+        for (ChatMessageItem item : stored) {
+            if (item.isNew == 1 && item.getSenderKey() != null) {
+                Integer count = counts.get(item.getSenderKey());
+                counts.put(item.getSenderKey(), count == null ? 1 : count + 1);
+            }
+        }
+    }
+
+    /**
+     * Counts received messages for the identity they were addressed to
+     */
+    private synchronized void countReceivedMessages(Collection<ChatMessageItem> stored) {
+        for (ChatMessageItem item : stored) {
+            Map<String, Integer> counts = newMessageCounts.get(item.getReceiverKey());
+            if (counts != null && item.isNew == 1 && item.getSenderKey() != null) {
+                Integer count = counts.get(item.getSenderKey());
+                counts.put(item.getSenderKey(), count == null ? 1 : count + 1);
+            }
         }
     }
 
     public int setAllMessagesRead(Identity identity, Contact c) {
-        try (ChatMessagesDataBase db = getDataBaseForIdentity(identity)) {
-            return db.setAllMessagesRead(c);
+        String contactKey = c.getEcPublicKey().getReadableKeyIdentifier();
+        int updated;
+        try {
+            updated = repository.markAsRead(identity, contactKey);
+        } catch (PersistenceException e) {
+            Log.e(TAG, "Could not mark messages as read", e);
+            return 0;
+        }
+        synchronized (this) {
+            Map<String, Integer> counts = newMessageCounts.get(getIdentityIdentifier(identity));
+            if (counts != null) {
+                counts.remove(contactKey);
+            }
         }
+        return updated;
     }
 
     public ChatMessageItem[] getAllMessages(Identity identity, Contact c) {
-        try (ChatMessagesDataBase db = getDataBaseForIdentity(identity)) {
-            return db.get(c.getEcPublicKey().getReadableKeyIdentifier());
+        try {
+            return repository.findByContact(identity, c.getEcPublicKey().getReadableKeyIdentifier());
+        } catch (PersistenceException e) {
+            Log.e(TAG, "Could not load messages", e);
+            return new ChatMessageItem[0];
+        }
+    }
+
+    /**
+     * Loads a page of the chat history with the contact
+     *
+     * @param before oldest message already loaded, null for the latest messages
+     * @return up to limit messages before the given one, oldest first
+     */
+    public ChatMessageItem[] getMessages(Identity identity, Contact c, @Nullable ChatMessageItem before, int limit) {
+        try {
+            return repository.findPage(identity, c.getEcPublicKey().getReadableKeyIdentifier(), before, limit);
+        } catch (PersistenceException e) {
+            Log.e(TAG, "Could not load messages", e);
+            return new ChatMessageItem[0];
         }
+    }
 
+    /**
+     * Searches the chat history with all contacts of the identity
+     *
+     * @return up to limit results, best match first
+     */
+    public List<ChatMessageRepository.SearchResult> search(Identity identity, String query, int limit) {
+        try {
+            return repository.search(identity, query, limit);
+        } catch (PersistenceException e) {
+            Log.e(TAG, "Could not search messages", e);
+            return Collections.emptyList();
+        }
     }
 
     public ChatMessageItem[] getAllMessages(Identity identity) {
-        try (ChatMessagesDataBase db = getDataBaseForIdentity(identity)) {
-            return db.getAll();
+        try {
+            return repository.findAll(identity);
+        } catch (PersistenceException e) {
+            Log.e(TAG, "Could not load messages", e);
+            return new ChatMessageItem[0];
         }
     }
 
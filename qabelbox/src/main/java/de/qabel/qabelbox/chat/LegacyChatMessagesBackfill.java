@@ -0,0 +1,133 @@
+package de.qabel.qabelbox.chat;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.qabel.core.config.Identity;
+import de.qabel.desktop.repository.IdentityRepository;
+import de.qabel.desktop.repository.exception.PersistenceException;
+import de.qabel.desktop.repository.sqlite.migration.AbstractBackfill;
+
+/**
+ * Moves the chat history of every identity from its own ChatMessages.db file into the
+ * {@link ChatMessageRepository} and deletes the file afterwards.
+ * <p>
+ * Known messages are skipped by the repository, so an interrupted import simply
+ * starts again with the first message of the file on the next start.
+ */
+public class LegacyChatMessagesBackfill extends AbstractBackfill {
+
+    private static final String TAG = "LegacyChatImport";
+    private static final String DATABASE_NAME = "ChatMessages.db";
+
+    private final Context context;
+    private final IdentityRepository identityRepository;
+    private final ChatMessageRepository repository;
+    /**
+     * Id of the last imported legacy message by database name
+     */
+    private final Map<String, Long> lastIds = new HashMap<>();
+    /**
+     * Databases which could not be read, they are retried on the next start
+     */
+    private final Set<String> unreadable = new HashSet<>();
+
+    public LegacyChatMessagesBackfill(Context context, IdentityRepository identityRepository,
+                                      ChatMessageRepository repository) {
+        this.context = context;
+        this.identityRepository = identityRepository;
+        this.repository = repository;
+    }
+
+    @Override
+    public long getVersion() {
+        return 1463400000L;
+    }
+
+    @Override
+    public boolean isTransactional() {
+        return false;
+    }
+
+    private static String getDatabaseName(Identity identity) {
+        return DATABASE_NAME + identity.getEcPublicKey().getReadableKeyIdentifier();
+    }
+
+    /**
+     * Imports the next batch of the first identity with a legacy chat history
+     *
+     * @return number of read legacy messages, 0 if no history is left
+     */
+    @Override
+    public int backfill(int batchSize) throws SQLException {
+        try {
+            for (Identity identity : identityRepository.findAll().getIdentities()) {
+                String name = getDatabaseName(identity);
+                if (unreadable.contains(name) || !context.getDatabasePath(name).exists()) {
+                    continue;
+                }
+                int read = importBatch(identity, batchSize);
+                if (read > 0) {
+                    return read;
+                }
+            }
+            return 0;
+        } catch (PersistenceException e) {
+            throw new SQLException("failed to import legacy chat messages: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Deletes the legacy database after its last batch
+     *
+     * @return number of read legacy messages
+     */
+    private int importBatch(Identity identity, int batchSize) throws PersistenceException {
+        String name = getDatabaseName(identity);
+        File path = context.getDatabasePath(name);
+        Long lastId = lastIds.get(name);
+        int read = 0;
+        try (SQLiteDatabase legacy = SQLiteDatabase.openDatabase(
+                path.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+             Cursor cursor = legacy.rawQuery(
+                     "SELECT id, sender, receiver, ackid, timestamp, payload_type, isnew, payload "
+                             + "FROM messages WHERE id > ? ORDER BY id LIMIT ?",
+                     new String[]{String.valueOf(lastId == null ? 0 : lastId), String.valueOf(batchSize)})) {
+            List<ChatMessageItem> batch = new ArrayList<>(batchSize);
+            while (cursor.moveToNext()) {
+                read++;
+                lastId = cursor.getLong(0);
+                if (cursor.isNull(1) || cursor.isNull(2) || cursor.isNull(5)) {
+                    continue;
+                }
+                batch.add(new ChatMessageItem(0, cursor.getShort(6), cursor.getLong(4),
+                        cursor.getString(1), cursor.getString(2), cursor.getString(3),
+                        cursor.getString(5), cursor.getString(7)));
+            }
+            repository.saveAll(identity, batch);
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Could not read chat history of " + identity.getAlias(), e);
+            unreadable.add(name);
+            return 0;
+        }
+        lastIds.put(name, lastId);
+        if (read < batchSize) {
+            context.deleteDatabase(name);
+            lastIds.remove(name);
+            Log.i(TAG, "Imported chat history of " + identity.getAlias());
+        }
+        return read;
+    }
+}
@@ -0,0 +1,463 @@
+package de.qabel.qabelbox.chat;
+
+import android.support.annotation.Nullable;
+
+import org.spongycastle.util.encoders.Hex;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import de.qabel.core.config.Identity;
+import de.qabel.desktop.repository.DropStateRepository;
+import de.qabel.desktop.repository.exception.PersistenceException;
+import de.qabel.desktop.repository.sqlite.AbstractClientDatabase;
+import de.qabel.desktop.repository.sqlite.SqliteDropStateRepository;
+
+/**
+ * Stores the chat history in the drop_message table of the client database.
+ * <p>
+ * Duplicates are detected by a unique fingerprint of sender, receiver, timestamp and payload,
+ * so messages can be inserted with INSERT OR IGNORE.
+ */
+public class SqliteChatMessageRepository implements ChatMessageRepository {
+    public static final String TABLE_NAME = "drop_message";
+    public static final String SEARCH_TABLE_NAME = "drop_message_search";
+    // BM25 parameters
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final String COLUMNS = "id, seen, created, sender, receiver, acknowledge_id, payload_type, payload";
+    // written as a range on the creation time so the index can be used for it
+    private static final String PAGE_BEFORE = "created <= ? AND (created < ? OR id < ?)";
+    private static final String PAGE_ORDER = " ORDER BY created DESC, id DESC LIMIT %1$d";
+    /**
+     * Both halves walk one of the time indexes backwards and stop after a page,
+     * so loading a page does not depend on the length of the conversation.
+     */
+    private static final String SELECT_PAGE =
+        "SELECT * FROM (" +
+            "SELECT " + COLUMNS + " FROM " + TABLE_NAME + " " +
+            "WHERE identity_id = ? AND sender = ? AND " + PAGE_BEFORE + PAGE_ORDER +
+        ") UNION ALL SELECT * FROM (" +
+            "SELECT " + COLUMNS + " FROM " + TABLE_NAME + " " +
+            "WHERE identity_id = ? AND receiver = ? AND sender <> ? AND " + PAGE_BEFORE + PAGE_ORDER +
+        ") ORDER BY created DESC, id DESC LIMIT %1$d";
+
+    private final AbstractClientDatabase database;
+
+    public SqliteChatMessageRepository(AbstractClientDatabase database) {
+        this.database = database;
+    }
+
+    static String fingerprint(String sender, String receiver, long timestamp, @Nullable String payload) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            Charset utf8 = Charset.forName("UTF-8");
+            for (String part : new String[]{sender, receiver, String.valueOf(timestamp),
+                    payload == null ? "" : payload}) {
+                digest.update(String.valueOf(part).getBytes(utf8));
+                digest.update((byte) 0);
+            }
+            return Hex.toHexString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @Override
+    public synchronized boolean save(Identity identity, ChatMessageItem item) throws PersistenceException {
+        return !saveAll(identity, Collections.singletonList(item)).isEmpty();
+    }
+
+    @Override
+    public synchronized List<ChatMessageItem> saveAll(Identity identity, Collection<ChatMessageItem> items)
+            throws PersistenceException {
+        return saveAll(Collections.singletonMap(identity, items));
+    }
+
+    @Override
+    public synchronized List<ChatMessageItem> saveAll(Map<Identity, ? extends Collection<ChatMessageItem>> items)
+            throws PersistenceException {
+        return saveAll(items, Collections.<String, String>emptyMap());
+    }
+
+    @Override
+    public synchronized List<ChatMessageItem> saveAll(Map<Identity, ? extends Collection<ChatMessageItem>> items,
+                                                      Map<String, String> dropStates) throws PersistenceException {
+        boolean empty = dropStates.isEmpty();
+        for (Collection<ChatMessageItem> identityItems : items.values()) {
+            empty &= identityItems.isEmpty();
+        }
+        if (empty) {
+            return Collections.emptyList();
+        }
+        return database.getTransactionManager().transactional(() -> {
+            List<ChatMessageItem> inserted = new ArrayList<>();
+            try (PreparedStatement statement = database.prepare(getInsertQuery());
+                 PreparedStatement index = database.prepare(getIndexQuery())) {
+                for (Map.Entry<Identity, ? extends Collection<ChatMessageItem>> entry : items.entrySet()) {
+                    for (ChatMessageItem item : entry.getValue()) {
+                        if (insert(statement, entry.getKey(), item)) {
+                            index(index, item);
+                            inserted.add(item);
+                        }
+                    }
+                }
+            }
+            DropStateRepository states = new SqliteDropStateRepository(database);
+            for (Map.Entry<String, String> state : dropStates.entrySet()) {
+                states.setDropState(state.getKey(), state.getValue());
+            }
+            return inserted;
+        });
+    }
+
+    private static String getInsertQuery() {
+        return "INSERT OR IGNORE INTO " + TABLE_NAME + " " +
+            "(identity_id, sender, receiver, seen, created, acknowledge_id, payload_type, payload, fingerprint) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    }
+
+    private static String getIndexQuery() {
+        return "INSERT OR REPLACE INTO " + SEARCH_TABLE_NAME + " (docid, message, file_name) VALUES (?, ?, ?)";
+    }
+
+    /**
+     * Adds the searchable text of the message to the search index, messages without text get an empty
+     * entry so they are not indexed again
+     */
+    private static void index(PreparedStatement statement, ChatMessageItem item) throws SQLException {
+        ChatMessageItem.MessagePayload data = item.getData();
+        String text = data == null ? null : data.getMessage();
+        boolean share = ChatMessageItem.SHARE_NOTIFICATION.equals(item.drop_payload_type);
+        int i = 1;
+        statement.setInt(i++, item.id);
+        statement.setString(i++, share ? null : text);
+        statement.setString(i++, share ? text : null);
+        statement.execute();
+    }
+
+    /**
+     * @return false if the message was already stored
+     */
+    private boolean insert(PreparedStatement statement, Identity identity, ChatMessageItem item) throws SQLException {
+        String payload = item.drop_payload == null ? "" : item.drop_payload;
+        int i = 1;
+        statement.setInt(i++, identity.getId());
+        statement.setString(i++, item.getSenderKey());
+        statement.setString(i++, item.getReceiverKey());
+        statement.setBoolean(i++, item.isNew == 0);
+        statement.setLong(i++, item.getTime());
+        statement.setString(i++, item.acknowledge_id);
+        statement.setString(i++, item.drop_payload_type);
+        statement.setString(i++, payload);
+        statement.setString(i++, fingerprint(item.getSenderKey(), item.getReceiverKey(), item.getTime(), payload));
+        statement.execute();
+
+        // the generated key of an ignored insert would be the one of the previous insert
+        try (PreparedStatement changes = database.prepare("SELECT changes(), last_insert_rowid()");
+             ResultSet resultSet = changes.executeQuery()) {
+            resultSet.next();
+            if (resultSet.getInt(1) == 0) {
+                return false;
+            }
+            item.id = resultSet.getInt(2);
+            return true;
+        }
+    }
+
+    @Override
+    public synchronized ChatMessageItem[] findAll(Identity identity) throws PersistenceException {
+        try (PreparedStatement statement = database.prepareRead(
+            "SELECT " + COLUMNS + " FROM " + TABLE_NAME + " WHERE identity_id = ? ORDER BY created, id"
+        )) {
+            statement.setInt(1, identity.getId());
+            return hydrateAll(statement);
+        } catch (SQLException e) {
+            throw new PersistenceException("failed to load chat messages: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized ChatMessageItem[] findByContact(Identity identity, String contactKey)
+            throws PersistenceException {
+        try (PreparedStatement statement = database.prepareRead(
+            "SELECT " + COLUMNS + " FROM " + TABLE_NAME + " " +
+            "WHERE identity_id = ? AND (sender = ? OR receiver = ?) ORDER BY created, id"
+        )) {
+            int i = 1;
+            statement.setInt(i++, identity.getId());
+            statement.setString(i++, contactKey);
+            statement.setString(i++, contactKey);
+            return hydrateAll(statement);
+        } catch (SQLException e) {
+            throw new PersistenceException("failed to load chat messages of " + contactKey + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized ChatMessageItem[] findPage(
+            Identity identity, String contactKey, @Nullable ChatMessageItem before, int limit)
+            throws PersistenceException {
+        long time = before == null ? Long.MAX_VALUE : before.getTime();
+        int id = before == null ? Integer.MAX_VALUE : before.id;
+        try (PreparedStatement statement = database.prepareRead(String.format(Locale.ROOT, SELECT_PAGE, limit))) {
+            int i = 1;
+            statement.setInt(i++, identity.getId());
+            statement.setString(i++, contactKey);
+            statement.setLong(i++, time);
+            statement.setLong(i++, time);
+            statement.setInt(i++, id);
+            statement.setInt(i++, identity.getId());
+            statement.setString(i++, contactKey);
+            statement.setString(i++, contactKey);
+            statement.setLong(i++, time);
+            statement.setLong(i++, time);
+            statement.setInt(i++, id);
+            ChatMessageItem[] items = hydrateAll(statement);
+            for (int j = 0, k = items.length - 1; j < k; j++, k--) {
+                ChatMessageItem item = items[j];
+                items[j] = items[k];
+                items[k] = item;
+            }
+            return items;
+        } catch (SQLException e) {
+            throw new PersistenceException("failed to load chat messages of " + contactKey + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static ChatMessageItem[] hydrateAll(PreparedStatement statement) throws SQLException {
+        List<ChatMessageItem> items = new ArrayList<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                items.add(hydrate(resultSet));
+            }
+        }
+        return items.toArray(new ChatMessageItem[items.size()]);
+    }
+
+    private static ChatMessageItem hydrate(ResultSet resultSet) throws SQLException {
+        return new ChatMessageItem(
+            resultSet.getInt(1),
+            (short) (resultSet.getBoolean(2) ? 0 : 1),
+            resultSet.getLong(3),
+            resultSet.getString(4),
+            resultSet.getString(5),
+            resultSet.getString(6),
+            resultSet.getString(7),
+            resultSet.getString(8)
+        );
+    }
+
+    @Override
+    public synchronized Map<String, Integer> countNewBySender(Identity identity) throws PersistenceException {
+        try (PreparedStatement statement = database.prepareRead(
+            "SELECT sender, COUNT(*) FROM " + TABLE_NAME + " WHERE identity_id = ? AND seen = 0 GROUP BY sender"
+        )) {
+            statement.setInt(1, identity.getId());
+            Map<String, Integer> counts = new HashMap<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    counts.put(resultSet.getString(1), resultSet.getInt(2));
+                }
+            }
+            return counts;
+        } catch (SQLException e) {
+            throw new PersistenceException("failed to count new chat messages: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized int markAsRead(Identity identity, String senderKey) throws PersistenceException {
+        try (PreparedStatement statement = database.prepare(
+            "UPDATE " + TABLE_NAME + " SET seen = 1 WHERE identity_id = ? AND sender = ? AND seen = 0"
+        )) {
+            int i = 1;
+            statement.setInt(i++, identity.getId());
+            statement.setString(i++, senderKey);
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new PersistenceException("failed to mark messages of " + senderKey + " as read: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized long findLastReceivedTime(Identity identity) throws PersistenceException {
+        try (PreparedStatement statement = database.prepareRead(
+            "SELECT MAX(created) FROM " + TABLE_NAME + " WHERE identity_id = ? AND receiver = ?"
+        )) {
+            int i = 1;
+            statement.setInt(i++, identity.getId());
+            statement.setString(i++, identity.getKeyIdentifier());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException("failed to load last received message time: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized int updateSearchIndex(int limit) throws PersistenceException {
+        return database.getTransactionManager().transactional(() -> {
+            ChatMessageItem[] batch;
+            try (PreparedStatement statement = database.prepare(
+                "SELECT " + COLUMNS + " FROM " + TABLE_NAME + " m " +
+                "WHERE NOT EXISTS (" +
+                    "SELECT docid FROM " + SEARCH_TABLE_NAME + " s WHERE s.docid = m.id" +
+                ") ORDER BY m.id LIMIT ?"
+            )) {
+                statement.setInt(1, limit);
+                batch = hydrateAll(statement);
+            }
+            try (PreparedStatement index = database.prepare(getIndexQuery())) {
+                for (ChatMessageItem item : batch) {
+                    index(index, item);
+                }
+            }
+            return batch.length;
+        });
+    }
+
+    @Override
+    public synchronized List<SearchResult> search(Identity identity, String query, int limit)
+            throws PersistenceException {
+        String match = toMatchExpression(query);
+        if (match.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        try {
+            Map<Integer, Double> scores = findBestMatches(identity, match, limit);
+            if (scores.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<SearchResult> results = loadResults(match, scores);
+            Collections.sort(results, (a, b) -> Double.compare(b.getScore(), a.getScore()));
+            return results;
+        } catch (SQLException e) {
+            throw new PersistenceException("failed to search chat messages for '" + query + "': " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Every word of the query becomes a quoted prefix term, so user input can't break the match syntax
+     */
+    static String toMatchExpression(String query) {
+        StringBuilder match = new StringBuilder();
+        for (String word : query.replace('"', ' ').replace('*', ' ').trim().split("\\s+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append('"').append(word).append("*\"");
+        }
+        return match.toString();
+    }
+
+    /**
+     * Scores all matches of the identity without loading them
+     *
+     * @return score by message id of the best matches
+     */
+    private Map<Integer, Double> findBestMatches(Identity identity, String match, int limit) throws SQLException {
+        PriorityQueue<Map.Entry<Integer, Double>> best = new PriorityQueue<>(limit,
+                (a, b) -> Double.compare(a.getValue(), b.getValue()));
+        try (PreparedStatement statement = database.prepareRead(
+            "SELECT " + SEARCH_TABLE_NAME + ".docid, matchinfo(" + SEARCH_TABLE_NAME + ", 'pcnalx') " +
+            "FROM " + SEARCH_TABLE_NAME + " " +
+            "JOIN " + TABLE_NAME + " m ON (m.id = " + SEARCH_TABLE_NAME + ".docid) " +
+            "WHERE " + SEARCH_TABLE_NAME + " MATCH ? AND m.identity_id = ?"
+        )) {
+            statement.setString(1, match);
+            statement.setInt(2, identity.getId());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    best.add(new AbstractMap.SimpleEntry<>(resultSet.getInt(1), score(resultSet.getBytes(2))));
+                    if (best.size() > limit) {
+                        best.poll();
+                    }
+                }
+            }
+        }
+        Map<Integer, Double> scores = new HashMap<>();
+        for (Map.Entry<Integer, Double> entry : best) {
+            scores.put(entry.getKey(), entry.getValue());
+        }
+        return scores;
+    }
+
+    /**
+     * Okapi BM25 over all columns, calculated from the matchinfo 'pcnalx'
+     */
+    static double score(byte[] matchInfo) {
+        IntBuffer info = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int phrases = info.get(0);
+        int columns = info.get(1);
+        int rows = info.get(2);
+        int averageLengths = 3;
+        int lengths = averageLengths + columns;
+        int hits = lengths + columns;
+        double score = 0;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columns; column++) {
+                int offset = hits + 3 * (phrase * columns + column);
+                int frequency = info.get(offset);
+                if (frequency == 0) {
+                    continue;
+                }
+                int documents = info.get(offset + 2);
+                // this idf variant stays positive for words which occur in most messages
+                double idf = Math.log(1 + (rows - documents + 0.5) / (documents + 0.5));
+                double lengthRatio = info.get(lengths + column) / Math.max(info.get(averageLengths + column), 1.0);
+                score += idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * lengthRatio));
+            }
+        }
+        return score;
+    }
+
+    private List<SearchResult> loadResults(String match, Map<Integer, Double> scores) throws SQLException {
+        StringBuilder ids = new StringBuilder();
+        for (int i = 0; i < scores.size(); i++) {
+            ids.append(i == 0 ? "?" : ", ?");
+        }
+        List<SearchResult> results = new ArrayList<>(scores.size());
+        try (PreparedStatement statement = database.prepareRead(
+            "SELECT m.id, m.seen, m.created, m.sender, m.receiver, m.acknowledge_id, m.payload_type, m.payload, " +
+            "snippet(" + SEARCH_TABLE_NAME + ", '<b>', '</b>', '...', -1, 12) " +
+            "FROM " + SEARCH_TABLE_NAME + " " +
+            "JOIN " + TABLE_NAME + " m ON (m.id = " + SEARCH_TABLE_NAME + ".docid) " +
+            "WHERE " + SEARCH_TABLE_NAME + " MATCH ? AND " + SEARCH_TABLE_NAME + ".docid IN (" + ids + ")"
+        )) {
+            int i = 1;
+            statement.setString(i++, match);
+            for (Integer id : scores.keySet()) {
+                statement.setInt(i++, id);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    ChatMessageItem message = hydrate(resultSet);
+                    results.add(new SearchResult(message, resultSet.getString(9), scores.get(message.id)));
+                }
+            }
+        }
+        return results;
+    }
+}
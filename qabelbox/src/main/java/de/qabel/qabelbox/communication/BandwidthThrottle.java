@@ -0,0 +1,59 @@
+package de.qabel.qabelbox.communication;
+
+/**
+ * Limits the throughput of a transfer loop by sleeping when the
+ * transferred bytes run ahead of the allowed rate.
+ * <p>
+ * The limit is read for every chunk, so a running transfer follows a changed network.
+ */
+public class BandwidthThrottle {
+
+    public interface Limit {
+        /**
+         * @return maximum rate, 0 or less disables throttling
+         */
+        long getBytesPerSecond();
+    }
+
+    private final Limit limit;
+    private long bytesPerSecond = -1;
+    private long start;
+    private long total;
+
+    /**
+     * @param bytesPerSecond maximum rate, 0 or less disables throttling
+     */
+    public BandwidthThrottle(long bytesPerSecond) {
+        this(() -> bytesPerSecond);
+    }
+
+    public BandwidthThrottle(Limit limit) {
+        this.limit = limit;
+    }
+
+    public long getBytesPerSecond() {
+        return limit.getBytesPerSecond();
+    }
+
+    /**
+     * record transferred bytes and block until the rate is within the limit again
+     */
+    public void onTransferred(long bytes) throws InterruptedException {
+        long current = limit.getBytesPerSecond();
+        if (current != bytesPerSecond) {
+            // measure the new rate from now on instead of paying for the time at the old one
+            bytesPerSecond = current;
+            start = System.currentTimeMillis();
+            total = 0;
+        }
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        total += bytes;
+        long expectedMillis = total * 1000 / bytesPerSecond;
+        long elapsed = System.currentTimeMillis() - start;
+        if (expectedMillis > elapsed) {
+            Thread.sleep(expectedMillis - elapsed);
+        }
+    }
+}
@@ -7,9 +7,18 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.Collections;
 import java.util.Locale;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import de.qabel.qabelbox.communication.callbacks.JsonRequestCallback;
@@ -30,48 +39,39 @@ public class BaseServer {
     private URLs urls;
     private AppPreference preferences;
 
-    private ConnectivityManager connectivityManager;
-    private List<RequestAction> requestActionQueue = new LinkedList<>();
+    private static final int MAX_PARALLEL_RETRIES = 4;
+    private static final ScheduledExecutorService RETRY_SCHEDULER = Executors.newSingleThreadScheduledExecutor();
+    private static final Random RANDOM = new Random();
+
+    private final ConnectivityManager connectivityManager;
+    private final Queue<RequestAction> pendingActions = new ConcurrentLinkedQueue<>();
+    private final Set<RequestAction> runningActions =
+            Collections.newSetFromMap(new ConcurrentHashMap<RequestAction, Boolean>());
 
     /**
-     * create new instance of http client and set timeouts
+     * @param client              the http client of the app, shared by all servers
+     * @param connectivityManager the network state watcher of the app, shared by all servers
      */
-    public BaseServer(Context context) {
-        this(new AppPreference(context), context);
-    }
-
-    public BaseServer(AppPreference preferences, Context context){
+    public BaseServer(AppPreference preferences, Context context, OkHttpClient client,
+                      ConnectivityManager connectivityManager) {
         this.preferences = preferences;
-        connectivityManager = new ConnectivityManager(context);
-        connectivityManager.setListener(new ConnectivityManager.ConnectivityListener() {
+        this.client = client;
+        this.connectivityManager = connectivityManager;
+        connectivityManager.addListener(new ConnectivityManager.ConnectivityListener() {
             @Override
             public void handleConnectionLost() {
-                if (!requestActionQueue.isEmpty()) {
-                    for (RequestAction action : requestActionQueue) {
-                        if (action.isExecuted() && !action.isCanceled()) {
-                            action.getCall().cancel();
-                        }
+                // a request that may already have reached the server can't be resent,
+                // so only idempotent ones are cut off and queued for the reconnect
+                for (RequestAction action : runningActions) {
+                    if (action.isIdempotent() && action.isExecuted() && !action.isCanceled()) {
+                        action.getCall().cancel();
                     }
                 }
             }
 
             @Override
             public void handleConnectionEstablished() {
-                if (!requestActionQueue.isEmpty()) {
-                    List<RequestAction> failedActions = new LinkedList<RequestAction>();
-                    for (RequestAction action : requestActionQueue) {
-                        if (action.getExecuted() == action.getAutoRetry()) {
-                            failedActions.add(action);
-                            continue;
-                        }
-                        if (!action.isExecuted() || action.isCanceled()) {
-                            Call call = client.newCall(action.getRequest());
-                            call.enqueue(action.getCallback());
-                            action.setCall(call);
-                        }
-                    }
-                    requestActionQueue.removeAll(failedActions);
-                }
+                executePendingActions();
             }
 
             @Override
@@ -81,11 +81,6 @@ public class BaseServer {
         });
 
         urls = new URLs(context);
-        OkHttpClient.Builder builder = new OkHttpClient.Builder();
-        builder.connectTimeout(15, TimeUnit.SECONDS); // connect timeout
-        builder.readTimeout(15, TimeUnit.SECONDS);    // socket timeout
-        builder.writeTimeout(10, TimeUnit.SECONDS);
-        client = builder.build();
     }
 
     protected String getToken(){
@@ -93,28 +88,90 @@ public class BaseServer {
     }
 
     protected void doRequest(final Request request, RequestCallback callback) {
-        final RequestAction requestAction = new RequestAction(request, callback);
+        doRequest(new RequestAction(request, callback), callback);
+    }
+
+    /**
+     * @param idempotent true if the request may be sent again after a failure even though
+     *                   the server may have processed it, e.g. uploads to a fixed path
+     */
+    protected void doRequest(final Request request, RequestCallback callback, boolean idempotent) {
+        doRequest(new RequestAction(request, callback, idempotent), callback);
+    }
+
+    private void doRequest(final RequestAction requestAction, RequestCallback callback) {
         callback.setSystemHandler(new RequestCallback.SystemHandler() {
             @Override
-            public boolean onRequestError() {
-                if (requestAction.getExecuted() == requestAction.getAutoRetry()) {
+            public boolean onRequestError(IOException e) {
+                runningActions.remove(requestAction);
+                if (!shouldRetry(requestAction, e)) {
+                    executePendingActions();
                     return true;
                 }
+                if (requestAction.isCanceled() || !connectivityManager.isConnected()) {
+                    // interrupted by a connection loss, resend as soon as we are back online
+                    pendingActions.add(requestAction);
+                    executePendingActions();
+                } else {
+                    scheduleRetry(requestAction);
+                }
                 return false;
             }
 
             @Override
-            public void onRequestSuccess() {
-                requestActionQueue.remove(requestAction);
+            public void onRequestCompleted() {
+                runningActions.remove(requestAction);
+                executePendingActions();
             }
         });
 
         if (connectivityManager.isConnected()) {
-            Call call = client.newCall(request);
-            call.enqueue(callback);
-            requestAction.setCall(call);
+            execute(requestAction);
+        } else {
+            pendingActions.add(requestAction);
         }
-        requestActionQueue.add(requestAction);
+    }
+
+    private boolean shouldRetry(RequestAction action, IOException e) {
+        if (action.getExecuted() >= action.getAutoRetry()) {
+            return false;
+        }
+        if (action.isIdempotent()) {
+            return true;
+        }
+        // the server can't have seen a request that never got a connection, every
+        // other failure (including a cancel) may have happened after bytes were sent
+        return e instanceof ConnectException || e instanceof UnknownHostException;
+    }
+
+    private void scheduleRetry(final RequestAction action) {
+        long delay = action.getBackoffDelay(RANDOM);
+        Log.d(TAG, "retry " + action.getRequest().url() + " in " + delay + "ms");
+        RETRY_SCHEDULER.schedule(() -> {
+            pendingActions.add(action);
+            executePendingActions();
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends queued requests while limiting the number of parallel requests, so that a
+     * reconnect does not send every waiting request at once.
+     */
+    private synchronized void executePendingActions() {
+        while (connectivityManager.isConnected() && runningActions.size() < MAX_PARALLEL_RETRIES) {
+            RequestAction action = pendingActions.poll();
+            if (action == null) {
+                return;
+            }
+            execute(action);
+        }
+    }
+
+    private void execute(RequestAction action) {
+        runningActions.add(action);
+        Call call = client.newCall(action.getRequest());
+        action.setCall(call);
+        call.enqueue(action.getCallback());
     }
 
     /**
@@ -7,7 +7,9 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import de.qabel.qabelbox.communication.callbacks.JsonRequestCallback;
+import de.qabel.qabelbox.communication.connection.ConnectivityManager;
 import de.qabel.qabelbox.config.AppPreference;
+import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 
@@ -32,12 +34,9 @@ public class BoxAccountRegisterServer extends BaseServer {
     private static final String JSON_PASSWORD_NEW_1 = "new_password1";
     private static final String JSON_PASSWORD_NEW_2 = "new_password2";
 
-    @Deprecated
-    public BoxAccountRegisterServer(Context context){
-        super(context);
-    }
-    public BoxAccountRegisterServer(Context context, AppPreference preference){
-        super(preference, context);
+    public BoxAccountRegisterServer(Context context, AppPreference preference, OkHttpClient client,
+                                    ConnectivityManager connectivityManager){
+        super(preference, context, client, connectivityManager);
     }
 
     private void doServerAction(String url, JSONObject json, JsonRequestCallback callback) {
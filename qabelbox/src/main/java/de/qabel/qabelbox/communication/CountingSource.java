@@ -0,0 +1,44 @@
+package de.qabel.qabelbox.communication;
+
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Source;
+
+/**
+ * Counts the bytes read from a source for progress reporting and applies the
+ * bandwidth throttle, so transfers can be copied with {@code writeAll}.
+ */
+public class CountingSource extends ForwardingSource {
+
+    private final AtomicLong total;
+    private final BandwidthThrottle throttle;
+
+    public CountingSource(Source delegate, AtomicLong total, @Nullable BandwidthThrottle throttle) {
+        super(delegate);
+        this.total = total;
+        this.throttle = throttle;
+    }
+
+    @Override
+    public long read(Buffer sink, long byteCount) throws IOException {
+        long read = super.read(sink, byteCount);
+        if (read != -1) {
+            total.addAndGet(read);
+            if (throttle != null) {
+                try {
+                    throttle.onTransferred(read);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("transfer interrupted");
+                }
+            }
+        }
+        return read;
+    }
+}
@@ -0,0 +1,184 @@
+package de.qabel.qabelbox.communication;
+
+import android.support.annotation.Nullable;
+
+import org.apache.james.mime4j.MimeException;
+import org.apache.james.mime4j.stream.EntityState;
+import org.apache.james.mime4j.stream.MimeTokenStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.CacheControl;
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.internal.http.HttpDate;
+import okio.Okio;
+
+/**
+ * Sends and receives drop messages over the shared {@link OkHttpClient}.
+ * <p>
+ * Unlike the core DropHTTP it returns the state the server reports for the drop, which is
+ * sent back as If-Modified-Since on the next request so only new messages are transferred.
+ * <p>
+ * Long-poll contract: with the {@link #HEADER_POLL_TIMEOUT} header the server keeps the request
+ * open until a message newer than If-Modified-Since arrives (200 with the new messages) or the
+ * timeout in seconds expires (304). Servers without long-poll support answer immediately.
+ */
+public class DropHTTPClient {
+
+    public static final String HEADER_LATEST = "X-Qabel-Latest";
+    public static final String HEADER_POLL_TIMEOUT = "X-Qabel-Poll-Timeout";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final int READ_TIMEOUT_MARGIN_SECONDS = 15;
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+    private final OkHttpClient client;
+
+    public DropHTTPClient(OkHttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Posts an encrypted message to the drop.
+     *
+     * @return response code of the drop server
+     */
+    public int sendMessage(URI uri, byte[] message) throws IOException {
+        Request request = new Request.Builder()
+                .url(uri.toString())
+                .post(RequestBody.create(OCTET_STREAM, message))
+                .build();
+        Response response = client.newCall(request).execute();
+        try {
+            return response.code();
+        } finally {
+            response.body().close();
+        }
+    }
+
+    /**
+     * @param since state of a previous response or a date from {@link #formatDate(long)},
+     *              null to receive all messages
+     */
+    public DropResult receiveMessages(URI uri, @Nullable String since) throws IOException {
+        return receive(client, createRequest(uri, since));
+    }
+
+    /**
+     * Waits until new messages arrive at the drop or the timeout expires.
+     *
+     * @see #receiveMessages(URI, String)
+     */
+    public DropResult waitForMessages(URI uri, @Nullable String since, int timeoutSeconds) throws IOException {
+        return receive(newPollCall(uri, since, timeoutSeconds));
+    }
+
+    /**
+     * Prepares a long-poll request, the call can be cancelled from another thread while
+     * {@link #receive(Call)} waits for the server.
+     */
+    public Call newPollCall(URI uri, @Nullable String since, int timeoutSeconds) {
+        OkHttpClient longPollClient = client.newBuilder()
+                .readTimeout(timeoutSeconds + READ_TIMEOUT_MARGIN_SECONDS, TimeUnit.SECONDS)
+                .build();
+        Request.Builder request = createRequest(uri, since)
+                .header(HEADER_POLL_TIMEOUT, String.valueOf(timeoutSeconds));
+        return longPollClient.newCall(request.build());
+    }
+
+    private static Request.Builder createRequest(URI uri, @Nullable String since) {
+        Request.Builder builder = new Request.Builder()
+                .url(uri.toString())
+                // the cache would turn a 304 back into the old messages
+                .cacheControl(new CacheControl.Builder().noStore().build());
+        if (since != null) {
+            builder.header(HEADER_IF_MODIFIED_SINCE, since);
+        }
+        return builder;
+    }
+
+    private static DropResult receive(OkHttpClient client, Request.Builder request) throws IOException {
+        return receive(client.newCall(request.build()));
+    }
+
+    public static DropResult receive(Call call) throws IOException {
+        Response response = call.execute();
+        try {
+            String state = response.header(HEADER_LATEST, response.header(HEADER_LAST_MODIFIED));
+            if (response.code() != HttpURLConnection.HTTP_OK) {
+                return new DropResult(response.code(), Collections.<byte[]>emptyList(), state);
+            }
+            return new DropResult(response.code(),
+                    parseMessages(response.body().byteStream(), response.header("Content-Type")), state);
+        } finally {
+            response.body().close();
+        }
+    }
+
+    private static Collection<byte[]> parseMessages(InputStream input, String contentType) throws IOException {
+        Collection<byte[]> messages = new ArrayList<>();
+        MimeTokenStream stream = new MimeTokenStream();
+        try {
+            stream.parseHeadless(input, contentType);
+            for (EntityState state = stream.getState();
+                 state != EntityState.T_END_OF_STREAM;
+                 state = stream.next()) {
+                if (state == EntityState.T_BODY) {
+                    messages.add(Okio.buffer(Okio.source(stream.getInputStream())).readByteArray());
+                }
+            }
+        } catch (MimeException e) {
+            throw new IOException("Invalid drop response", e);
+        }
+        return messages;
+    }
+
+    @Nullable
+    public static String formatDate(long time) {
+        if (time <= 0) {
+            return null;
+        }
+        return HttpDate.format(new Date(time));
+    }
+
+    public static class DropResult {
+        private final int responseCode;
+        private final Collection<byte[]> messages;
+        private final String state;
+
+        DropResult(int responseCode, Collection<byte[]> messages, @Nullable String state) {
+            this.responseCode = responseCode;
+            this.messages = messages;
+            this.state = state;
+        }
+
+        public int getResponseCode() {
+            return responseCode;
+        }
+
+        public Collection<byte[]> getMessages() {
+            return messages;
+        }
+
+        /**
+         * @return state of the drop after this response, null if the server sent none
+         */
+        @Nullable
+        public String getState() {
+            return state;
+        }
+    }
+}
@@ -6,7 +6,9 @@ import android.util.Log;
 import org.json.JSONObject;
 
 import de.qabel.qabelbox.communication.callbacks.JsonRequestCallback;
+import de.qabel.qabelbox.communication.connection.ConnectivityManager;
 import de.qabel.qabelbox.config.AppPreference;
+import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 
@@ -19,8 +21,9 @@ public class PrefixServer extends BaseServer {
 
     private final static String TAG = "PrefixServer";
 
-    public PrefixServer(Context context) {
-        super(context);
+    public PrefixServer(AppPreference preference, Context context, OkHttpClient client,
+                        ConnectivityManager connectivityManager) {
+        super(preference, context, client, connectivityManager);
     }
 
     public void getPrefix(Context context, JsonRequestCallback callback) {
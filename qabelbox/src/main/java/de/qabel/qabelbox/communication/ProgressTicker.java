@@ -0,0 +1,57 @@
+package de.qabel.qabelbox.communication;
+
+import android.util.Log;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single timer that reports the progress of all running transfers.
+ * <p>
+ * The timer only runs while at least one transfer is registered.
+ */
+public class ProgressTicker {
+
+    private static final String TAG = "ProgressTicker";
+    private static final long INTERVAL_MILLIS = 250;
+    private static final ProgressTicker INSTANCE = new ProgressTicker();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final Set<Runnable> listeners = new CopyOnWriteArraySet<>();
+    private ScheduledFuture<?> tick;
+
+    public static ProgressTicker getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized void register(Runnable listener) {
+        listeners.add(listener);
+        if (tick == null) {
+            tick = executor.scheduleAtFixedRate(this::onTick,
+                    INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void unregister(Runnable listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty() && tick != null) {
+            tick.cancel(false);
+            tick = null;
+        }
+    }
+
+    private void onTick() {
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                // an exception would cancel the timer for all other transfers
+                Log.w(TAG, "progress listener failed", e);
+            }
+        }
+    }
+}
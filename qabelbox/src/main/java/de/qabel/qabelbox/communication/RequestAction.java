@@ -1,22 +1,33 @@
 package de.qabel.qabelbox.communication;
 
+import java.util.Random;
+
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.Request;
 
 public class RequestAction {
 
+    private static final long BASE_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60 * 1000;
+
     private int autoRetry = 5;
     private int executed = 0;
     private Request request;
     private Callback callback;
+    private final boolean idempotent;
 
 
     private Call call;
 
     public RequestAction(Request request, Callback callback) {
+        this(request, callback, isIdempotentMethod(request.method()));
+    }
+
+    public RequestAction(Request request, Callback callback, boolean idempotent) {
         this.request = request;
         this.callback = callback;
+        this.idempotent = idempotent;
     }
 
     public Request getRequest() {
@@ -27,20 +38,20 @@ public class RequestAction {
         return callback;
     }
 
-    public Call getCall() {
+    public synchronized Call getCall() {
         return call;
     }
 
-    public void setCall(Call call) {
+    public synchronized void setCall(Call call) {
         this.call = call;
         this.executed++;
     }
 
-    public boolean isExecuted() {
+    public synchronized boolean isExecuted() {
         return this.call != null && this.call.isExecuted();
     }
 
-    public boolean isCanceled() {
+    public synchronized boolean isCanceled() {
         return this.call != null && this.call.isCanceled();
     }
 
@@ -48,7 +59,38 @@ public class RequestAction {
         return autoRetry;
     }
 
-    public int getExecuted(){
+    public synchronized int getExecuted(){
         return executed;
     }
+
+    /**
+     * @return true if the request can be sent again without side effects, even if the
+     * server may already have processed it
+     */
+    public boolean isIdempotent() {
+        return idempotent;
+    }
+
+    /**
+     * Exponential backoff with jitter: the delay doubles with every execution and a random
+     * part is added so that requests failing together are not retried together.
+     */
+    public synchronized long getBackoffDelay(Random random) {
+        int attempt = Math.max(0, executed - 1);
+        long delay = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 16));
+        return delay / 2 + (long) (random.nextDouble() * (delay / 2));
+    }
+
+    static boolean isIdempotentMethod(String method) {
+        switch (method) {
+            case "GET":
+            case "HEAD":
+            case "PUT":
+            case "DELETE":
+            case "OPTIONS":
+                return true;
+            default:
+                return false;
+        }
+    }
 }
@@ -2,7 +2,7 @@ package de.qabel.qabelbox.communication;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import de.qabel.qabelbox.communication.callbacks.UploadRequestCallback;
 import okhttp3.MediaType;
@@ -11,13 +11,9 @@ import okhttp3.internal.Util;
 import okio.BufferedSink;
 import okio.Okio;
 import okio.Source;
-import rx.Observable;
-import rx.Subscription;
 
 public class UploadRequestBody extends RequestBody {
 
-    private static final int SEGMENT_SIZE = 2048; // okio.Segment.SIZE
-
     private final File file;
     private final UploadRequestCallback listener;
     private MediaType contentType;
@@ -40,23 +36,17 @@ public class UploadRequestBody extends RequestBody {
 
     @Override
     public void writeTo(BufferedSink sink) throws IOException {
+        AtomicLong total = new AtomicLong();
+        long length = file.length();
+        Runnable progress = () -> listener.onProgress(total.get(), length);
+        ProgressTicker.getInstance().register(progress);
         Source source = null;
-        Subscription progressSubscription = null;
         try {
-            source = Okio.source(file);
-            long total[] = new long[]{0};
-            long read;
-            Observable<Long> observable = Observable.interval(250, TimeUnit.MILLISECONDS);
-            progressSubscription = observable.subscribe(aLong -> listener.onProgress(total[0], file.length()));
-
-            while ((read = source.read(sink.buffer(), SEGMENT_SIZE)) != -1) {
-                total[0] += read;
-                sink.flush();
-            }
+            source = new CountingSource(Okio.source(file), total, listener.getThrottle());
+            sink.writeAll(source);
+            sink.flush();
         } finally {
-            if (progressSubscription != null) {
-                progressSubscription.unsubscribe();
-            }
+            ProgressTicker.getInstance().unregister(progress);
             Util.closeQuietly(source);
         }
     }
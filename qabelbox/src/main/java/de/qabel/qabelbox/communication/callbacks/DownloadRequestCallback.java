@@ -1,23 +1,24 @@
 package de.qabel.qabelbox.communication.callbacks;
 
-import java.io.BufferedInputStream;
+import android.support.annotation.Nullable;
+
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-import okhttp3.Headers;
+import de.qabel.qabelbox.communication.BandwidthThrottle;
+import de.qabel.qabelbox.communication.CountingSource;
+import de.qabel.qabelbox.communication.ProgressTicker;
 import okhttp3.Response;
-import rx.Observable;
-import rx.Subscription;
+import okhttp3.internal.Util;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
 
 public abstract class DownloadRequestCallback extends RequestCallback {
 
-    private static final int SEGMENT_SIZE = 2048; // okio.Segment.SIZE
-
     private File outputFile;
+    private BandwidthThrottle throttle;
 
     public DownloadRequestCallback(File outputFile) {
         super();
@@ -28,34 +29,28 @@ public abstract class DownloadRequestCallback extends RequestCallback {
         //Empty body for not tracked downloads
     }
 
+    public void setThrottle(@Nullable BandwidthThrottle throttle) {
+        this.throttle = throttle;
+    }
+
     @Override
     protected void onSuccess(int statusCode, Response response) {
-        Subscription progressSubscription = null;
+        long contentLength = response.body().contentLength();
+        AtomicLong total = new AtomicLong();
+        Runnable progress = () -> onProgress(total.get(), contentLength);
+        ProgressTicker.getInstance().register(progress);
+        Source input = new CountingSource(response.body().source(), total, throttle);
+        BufferedSink output = null;
         try {
-
-            InputStream is = response.body().byteStream();
-            BufferedInputStream input = new BufferedInputStream(is);
-            OutputStream output = new FileOutputStream(outputFile);
-
-            final byte[] data = new byte[SEGMENT_SIZE];
-            long contentLength = response.body().contentLength();
-            long total[] = new long[]{0};
-            int count;
-            Observable<Long> observable = Observable.interval(250, TimeUnit.MILLISECONDS);
-            progressSubscription = observable.subscribe(aLong -> onProgress(total[0], contentLength));
-            while ((count = input.read(data)) != -1) {
-                total[0] += count;
-                output.write(data, 0, count);
-            }
+            output = Okio.buffer(Okio.sink(outputFile));
+            output.writeAll(input);
             output.flush();
-            output.close();
-            input.close();
         } catch (IOException e) {
             this.onError(e, null);
         } finally {
-            if (progressSubscription != null) {
-                progressSubscription.unsubscribe();
-            }
+            ProgressTicker.getInstance().unregister(progress);
+            Util.closeQuietly(output);
+            Util.closeQuietly(input);
         }
     }
 }
@@ -17,9 +17,16 @@ public abstract class RequestCallback implements Callback {
 
     public interface SystemHandler {
 
-        boolean onRequestError();
+        /**
+         * @return true if the error should be passed to the callback, false if the request is retried
+         */
+        boolean onRequestError(IOException e);
 
-        void onRequestSuccess();
+        /**
+         * called when the server answered the request and the response was handled,
+         * regardless of the status code
+         */
+        void onRequestCompleted();
 
     }
 
@@ -38,7 +45,7 @@ public abstract class RequestCallback implements Callback {
 
     @Override
     public void onFailure(Call call, IOException e) {
-        if (this.systemHandler == null || systemHandler.onRequestError()) {
+        if (this.systemHandler == null || systemHandler.onRequestError(e)) {
             onError(e, null);
         }
     }
@@ -46,13 +53,17 @@ public abstract class RequestCallback implements Callback {
     @Override
     public void onResponse(Call call, Response response) throws IOException {
         int statusCode = response.code();
-        if (acceptedStatusCodes.contains(statusCode)) {
+        try {
+            if (acceptedStatusCodes.contains(statusCode)) {
+                onSuccess(statusCode, response);
+            } else {
+                onError(new QblServerException(statusCode, call.request().toString()), response);
+            }
+        } finally {
+            // a download streams its body in onSuccess, it occupies a slot until then
             if (this.systemHandler != null) {
-                systemHandler.onRequestSuccess();
+                systemHandler.onRequestCompleted();
             }
-            onSuccess(statusCode, response);
-        } else {
-            onError(new QblServerException(statusCode, call.request().toString()), response);
         }
     }
 
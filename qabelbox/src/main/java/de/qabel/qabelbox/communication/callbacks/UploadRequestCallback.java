@@ -1,10 +1,25 @@
 package de.qabel.qabelbox.communication.callbacks;
 
+import android.support.annotation.Nullable;
+
+import de.qabel.qabelbox.communication.BandwidthThrottle;
+
 public abstract class UploadRequestCallback extends RequestCallback {
 
+    private BandwidthThrottle throttle;
+
     public UploadRequestCallback(int... acceptedStatusCodes) {
         super(acceptedStatusCodes);
     }
 
     public abstract void onProgress(long currentBytes, long totalBytes);
+
+    @Nullable
+    public BandwidthThrottle getThrottle() {
+        return throttle;
+    }
+
+    public void setThrottle(@Nullable BandwidthThrottle throttle) {
+        this.throttle = throttle;
+    }
 }
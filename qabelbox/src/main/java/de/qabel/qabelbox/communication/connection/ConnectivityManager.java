@@ -4,7 +4,16 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.net.NetworkInfo;
+import android.support.v4.net.ConnectivityManagerCompat;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Watches the network state with a single broadcast receiver and forwards changes to all
+ * registered listeners, so one instance can be shared by every server of the app.
+ */
 public class ConnectivityManager {
 
     private Context context;
@@ -13,17 +22,11 @@ public class ConnectivityManager {
     private BroadcastReceiver broadcastReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
-            if (listener != null) {
-                if (isConnected()) {
-                    listener.handleConnectionEstablished();
-                } else {
-                    listener.handleConnectionLost();
-                }
-            }
+            notifyListeners(isConnected());
         }
     };
 
-    protected ConnectivityListener listener;
+    private final List<ConnectivityListener> listeners = new CopyOnWriteArrayList<>();
 
     public ConnectivityManager(Context context) {
         this.context = context;
@@ -33,22 +36,45 @@ public class ConnectivityManager {
     }
 
     public void onDestroy() {
-        if(this.listener != null){
-            this.listener.onDestroy();
+        for (ConnectivityListener listener : listeners) {
+            listener.onDestroy();
         }
+        listeners.clear();
         context.unregisterReceiver(broadcastReceiver);
     }
 
+    protected void notifyListeners(boolean connected) {
+        for (ConnectivityListener listener : listeners) {
+            if (connected) {
+                listener.handleConnectionEstablished();
+            } else {
+                listener.handleConnectionLost();
+            }
+        }
+    }
+
     public boolean isConnected() {
         return connectivityManager.getActiveNetworkInfo() != null && connectivityManager.getActiveNetworkInfo().isConnected();
     }
 
     public boolean isWifi() {
-        return connectivityManager.getActiveNetworkInfo().getType() == android.net.ConnectivityManager.TYPE_WIFI;
+        NetworkInfo info = connectivityManager.getActiveNetworkInfo();
+        return info != null && info.getType() == android.net.ConnectivityManager.TYPE_WIFI;
+    }
+
+    /**
+     * true if the active network may charge the user per byte (cellular, tethering, ...)
+     */
+    public boolean isMetered() {
+        return ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+    }
+
+    public void addListener(ConnectivityListener listener) {
+        listeners.add(listener);
     }
 
-    public void setListener(ConnectivityListener listener) {
-        this.listener = listener;
+    public void removeListener(ConnectivityListener listener) {
+        listeners.remove(listener);
     }
 
     public interface ConnectivityListener {
@@ -29,6 +29,12 @@ public class AppPreference {
     private static final String P_WELCOME_SCREEN_SHOWN_AT = "welcomescreenshownat";
     private static final String P_LAST_ACTIVE_IDENTITY = "P_LAST_ACTIVE_IDENTITY";
 
+    private static final String P_TRANSFER_METERED_MAX_SIZE = "transfermeteredmaxsize";
+    private static final String P_TRANSFER_METERED_BANDWIDTH = "transfermeteredbandwidth";
+
+    private static final long DEFAULT_TRANSFER_METERED_MAX_SIZE = 10 * 1024 * 1024;
+    private static final long DEFAULT_TRANSFER_METERED_BANDWIDTH = 128 * 1024;
+
     private final Context context;
     private final SharedPreferences settings;
     private final BoxQuotaJSONAdapter boxQuotaJSONAdapter = new BoxQuotaJSONAdapter();
@@ -110,6 +116,47 @@ public class AppPreference {
         settings.edit().putString(P_LAST_ACTIVE_IDENTITY, identityKey).commit();
     }
 
+    public interface ActiveIdentityListener {
+        void onActiveIdentityChanged(String identityKey);
+    }
+
+    /**
+     * The shared preferences only keep a weak reference to the returned registration,
+     * keep it as long as the listener should be notified.
+     */
+    public SharedPreferences.OnSharedPreferenceChangeListener addActiveIdentityListener(
+            ActiveIdentityListener listener) {
+        SharedPreferences.OnSharedPreferenceChangeListener registration = (preferences, key) -> {
+            if (P_LAST_ACTIVE_IDENTITY.equals(key)) {
+                listener.onActiveIdentityChanged(getLastActiveIdentityKey());
+            }
+        };
+        settings.registerOnSharedPreferenceChangeListener(registration);
+        return registration;
+    }
+
+    /**
+     * bulk transfers larger than this (in bytes) are deferred until an unmetered network is available
+     */
+    public long getMeteredTransferMaxSize() {
+        return settings.getLong(P_TRANSFER_METERED_MAX_SIZE, DEFAULT_TRANSFER_METERED_MAX_SIZE);
+    }
+
+    public void setMeteredTransferMaxSize(long bytes) {
+        settings.edit().putLong(P_TRANSFER_METERED_MAX_SIZE, bytes).commit();
+    }
+
+    /**
+     * bandwidth cap in bytes per second for background transfers on metered networks, 0 for no limit
+     */
+    public long getMeteredBandwidthLimit() {
+        return settings.getLong(P_TRANSFER_METERED_BANDWIDTH, DEFAULT_TRANSFER_METERED_BANDWIDTH);
+    }
+
+    public void setMeteredBandwidthLimit(long bytesPerSecond) {
+        settings.edit().putLong(P_TRANSFER_METERED_BANDWIDTH, bytesPerSecond).commit();
+    }
+
     public BoxQuota getBoxQuota() {
         BoxQuota quota = getJsonModel(P_ACCOUNT_QUOTA, boxQuotaJSONAdapter);
         if (quota == null) {
@@ -5,19 +5,43 @@ import android.content.Context;
 import javax.inject.Singleton;
 
 import dagger.Component;
+import de.qabel.desktop.repository.ContactRepository;
+import de.qabel.desktop.repository.DropOutboxRepository;
+import de.qabel.desktop.repository.IdentityRepository;
 import de.qabel.qabelbox.adapter.QabelSyncAdapter;
+import de.qabel.qabelbox.communication.BoxAccountRegisterServer;
+import de.qabel.qabelbox.communication.PrefixServer;
+import de.qabel.qabelbox.communication.connection.ConnectivityManager;
 import de.qabel.qabelbox.dagger.modules.AccountModule;
 import de.qabel.qabelbox.dagger.modules.ActivityModule;
 import de.qabel.qabelbox.dagger.modules.ApplicationModule;
 import de.qabel.qabelbox.dagger.modules.RepositoryModule;
 import de.qabel.qabelbox.dagger.modules.StorageModule;
+import de.qabel.qabelbox.services.DropSender;
 import de.qabel.qabelbox.settings.fragments.SettingsFragment;
+import okhttp3.OkHttpClient;
 
 @Component(modules = {ApplicationModule.class, RepositoryModule.class, AccountModule.class, StorageModule.class})
 @Singleton
 public interface ApplicationComponent {
     Context context();
 
+    OkHttpClient httpClient();
+
+    ConnectivityManager connectivityManager();
+
+    BoxAccountRegisterServer boxAccountRegisterServer();
+
+    PrefixServer prefixServer();
+
+    DropSender dropSender();
+
+    IdentityRepository identityRepository();
+
+    ContactRepository contactRepository();
+
+    DropOutboxRepository dropOutboxRepository();
+
     ActivityComponent plus(ActivityModule activityModule);
 
     void inject(QabelSyncAdapter syncAdapter);
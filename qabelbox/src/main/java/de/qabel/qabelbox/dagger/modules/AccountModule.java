@@ -8,16 +8,27 @@ import dagger.Module;
 import dagger.Provides;
 import de.qabel.qabelbox.account.AccountManager;
 import de.qabel.qabelbox.communication.BoxAccountRegisterServer;
+import de.qabel.qabelbox.communication.PrefixServer;
+import de.qabel.qabelbox.communication.connection.ConnectivityManager;
 import de.qabel.qabelbox.config.AppPreference;
 import de.qabel.qabelbox.storage.server.BlockServer;
+import okhttp3.OkHttpClient;
 
 @Module
 public class AccountModule {
 
     @Singleton
     @Provides
-    BoxAccountRegisterServer providesAccountServer(AppPreference preference, Context context) {
-        return new BoxAccountRegisterServer(context, preference);
+    BoxAccountRegisterServer providesAccountServer(AppPreference preference, Context context,
+                                                   OkHttpClient client, ConnectivityManager connectivityManager) {
+        return new BoxAccountRegisterServer(context, preference, client, connectivityManager);
+    }
+
+    @Singleton
+    @Provides
+    PrefixServer providesPrefixServer(AppPreference preference, Context context,
+                                      OkHttpClient client, ConnectivityManager connectivityManager) {
+        return new PrefixServer(preference, context, client, connectivityManager);
     }
 
     @Singleton
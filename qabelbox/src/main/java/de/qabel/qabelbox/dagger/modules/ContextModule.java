@@ -2,15 +2,32 @@ package de.qabel.qabelbox.dagger.modules;
 
 import android.content.Context;
 
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
 import javax.inject.Singleton;
 
 import dagger.Module;
 import dagger.Provides;
+import de.qabel.qabelbox.communication.connection.ConnectivityManager;
 import de.qabel.qabelbox.config.AppPreference;
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 
 @Module
 public class ContextModule {
 
+    private static final String HTTP_CACHE_DIR = "http";
+    private static final long HTTP_CACHE_SIZE = 2 * 1024 * 1024;
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final int MAX_REQUESTS = 32;
+    private static final int MAX_REQUESTS_PER_HOST = 6;
+
     Context context;
 
     public ContextModule(Context context){
@@ -25,4 +42,32 @@ public class ContextModule {
         return new AppPreference(context);
     }
 
+    /**
+     * The single http client of the app. Sharing it shares its connection pool, dispatcher
+     * threads and response cache, so requests to the block, drop and account hosts reuse
+     * established TLS connections.
+     */
+    @Singleton @Provides OkHttpClient providesHttpClient(Context context){
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+        builder.connectTimeout(15, TimeUnit.SECONDS); // connect timeout
+        builder.readTimeout(15, TimeUnit.SECONDS);    // socket timeout
+        builder.writeTimeout(10, TimeUnit.SECONDS);
+        builder.dispatcher(dispatcher);
+        builder.connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES));
+        builder.protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        builder.cache(new Cache(new File(context.getCacheDir(), HTTP_CACHE_DIR), HTTP_CACHE_SIZE));
+        return builder.build();
+    }
+
+    /**
+     * One network state receiver for the whole app, servers and transfers register listeners on it
+     */
+    @Singleton @Provides ConnectivityManager providesConnectivityManager(Context context){
+        return new ConnectivityManager(context);
+    }
+
 }
@@ -2,20 +2,27 @@ package de.qabel.qabelbox.dagger.modules;
 
 import android.content.Context;
 
+import javax.inject.Singleton;
+
 import dagger.Module;
 import dagger.Provides;
 import de.qabel.desktop.repository.ContactRepository;
+import de.qabel.desktop.repository.DropOutboxRepository;
+import de.qabel.desktop.repository.DropStateRepository;
 import de.qabel.desktop.repository.IdentityRepository;
 import de.qabel.desktop.repository.sqlite.AndroidClientDatabase;
+import de.qabel.qabelbox.chat.ChatMessageRepository;
 import de.qabel.qabelbox.persistence.RepositoryFactory;
 
 @Module
 public class RepositoryModule {
 
+    @Singleton
     @Provides AndroidClientDatabase provideAndroidClientDatabase(RepositoryFactory factory) {
         return factory.getAndroidClientDatabase();
     }
 
+    @Singleton
     @Provides RepositoryFactory provideRepositoryFactory(Context context) {
         return new RepositoryFactory(context);
     }
@@ -30,4 +37,19 @@ public class RepositoryModule {
         return factory.getContactRepository(database);
     }
 
+    @Provides DropStateRepository provideDropStateRepository(
+            RepositoryFactory factory, AndroidClientDatabase database) {
+        return factory.getDropStateRepository(database);
+    }
+
+    @Provides DropOutboxRepository provideDropOutboxRepository(
+            RepositoryFactory factory, AndroidClientDatabase database) {
+        return factory.getDropOutboxRepository(database);
+    }
+
+    @Provides ChatMessageRepository provideChatMessageRepository(
+            RepositoryFactory factory, AndroidClientDatabase database) {
+        return factory.getChatMessageRepository(database);
+    }
+
 }
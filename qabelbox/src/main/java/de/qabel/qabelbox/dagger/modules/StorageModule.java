@@ -11,6 +11,7 @@ import dagger.Provides;
 import de.qabel.desktop.repository.IdentityRepository;
 import de.qabel.qabelbox.account.AccountManager;
 import de.qabel.qabelbox.communication.BoxAccountRegisterServer;
+import de.qabel.qabelbox.communication.connection.ConnectivityManager;
 import de.qabel.qabelbox.config.AppPreference;
 import de.qabel.qabelbox.providers.DocumentIdParser;
 import de.qabel.qabelbox.storage.AndroidBoxManager;
@@ -22,6 +23,8 @@ import de.qabel.qabelbox.storage.server.AndroidBlockServer;
 import de.qabel.qabelbox.storage.server.BlockServer;
 import de.qabel.qabelbox.storage.transfer.BlockServerTransferManager;
 import de.qabel.qabelbox.storage.transfer.TransferManager;
+import de.qabel.qabelbox.storage.transfer.TransferPolicy;
+import okhttp3.OkHttpClient;
 
 @Module
 public class StorageModule {
@@ -43,13 +46,22 @@ public class StorageModule {
         return context.getCacheDir();
     }
 
+    @Singleton
+    @Provides
+    TransferPolicy providesTransferPolicy(AppPreference preference, ConnectivityManager connectivityManager) {
+        return new TransferPolicy(preference, connectivityManager);
+    }
+
+    @Singleton
     @Provides
-    public TransferManager providesTransferManager(Context context, BlockServer blockServer, File tmpFile) {
-        return createTransferManager(context, blockServer, tmpFile);
+    public TransferManager providesTransferManager(Context context, BlockServer blockServer, File tmpFile,
+                                                   TransferPolicy transferPolicy) {
+        return createTransferManager(context, blockServer, tmpFile, transferPolicy);
     }
 
-    protected TransferManager createTransferManager(Context context, BlockServer blockServer, File tmpFile) {
-        return new BlockServerTransferManager(context, blockServer, tmpFile);
+    protected TransferManager createTransferManager(Context context, BlockServer blockServer, File tmpFile,
+                                                    TransferPolicy transferPolicy) {
+        return new BlockServerTransferManager(context, blockServer, tmpFile, transferPolicy);
     }
 
     @Singleton
@@ -66,12 +78,14 @@ public class StorageModule {
 
     @Singleton
     @Provides
-    BlockServer providesBlockServer(AppPreference preference, Context context) {
-        return createBlockServer(preference, context);
+    BlockServer providesBlockServer(AppPreference preference, Context context, OkHttpClient client,
+                                    ConnectivityManager connectivityManager) {
+        return createBlockServer(preference, context, client, connectivityManager);
     }
 
-    protected BlockServer createBlockServer(AppPreference preference, Context context){
-        return new AndroidBlockServer(preference, context);
+    protected BlockServer createBlockServer(AppPreference preference, Context context, OkHttpClient client,
+                                            ConnectivityManager connectivityManager){
+        return new AndroidBlockServer(preference, context, client, connectivityManager);
     }
 
 }
@@ -17,7 +17,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 
 import de.qabel.core.config.Contact;
-import de.qabel.core.config.Contacts;
 import de.qabel.core.crypto.QblECPublicKey;
 import de.qabel.core.drop.DropURL;
 import de.qabel.qabelbox.QabelBoxApplication;
@@ -73,15 +72,12 @@ public class ContactBaseFragment extends BaseFragment {
             ContactExportImport.ContactsParseResult result = ContactExportImport
                     .parse(activity.getActiveIdentity(), json);
             int failed = result.getSkippedContacts();
-            Contacts contacts = result.getContacts();
-            for (Contact contact : contacts.getContacts()) {
-                try {
-                    addContactSilent(activity.getApplicationContext(), contact);
-                    added++;
-                } catch (QblStorageEntityExistsException existsException) {
-                    Log.w(TAG, "found doublet's. Will ignore it", existsException);
-                    failed++;
-                }
+            Collection<Contact> contacts = result.getContacts().getContacts();
+            LocalQabelService service = QabelBoxApplication.getInstance().getService();
+            added = service.addContacts(contacts, activity.getActiveIdentity());
+            failed += contacts.size() - added;
+            if (added > 0) {
+                sendRefreshContactList(activity.getApplicationContext());
             }
             if (added == 1 && failed == 0) {
                 UIHelper.showDialogMessage(
@@ -15,12 +15,14 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.EditText;
 import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -61,8 +63,14 @@ public class ContactChatFragment extends ContactBaseFragment {
     private static final String ARG_IDENTITY = "Identity";
     private final String TAG = this.getClass().getSimpleName();
 
+    /**
+     * Number of messages loaded at once, older pages are loaded when scrolling to the top
+     */
+    private static final int PAGE_SIZE = 50;
+
     private Contact contact;
-    private final ArrayList<ChatMessageItem> messages = new ArrayList<>();
+    private boolean hasOlderMessages = true;
+    private boolean loadingOlderMessages;
 
 
     @BindView(R.id.contact_chat_list)
@@ -128,6 +136,18 @@ public class ContactChatFragment extends ContactBaseFragment {
         final View view = inflater.inflate(R.layout.fragment_contact_chat, container, false);
         ButterKnife.bind(this, view);
         etText.setText("");
+        contactListRecyclerView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                if (firstVisibleItem == 0 && totalItemCount > 0) {
+                    loadOlderMessages();
+                }
+            }
+        });
 
         return view;
     }
@@ -163,11 +183,12 @@ public class ContactChatFragment extends ContactBaseFragment {
                         ChatMessageItem newMessage = new ChatMessageItem(identity, contact.getEcPublicKey().getReadableKeyIdentifier(), dropMessage.getDropPayload(), dropMessage.getDropPayloadType());
 
                         chatServer.storeIntoDB(getIdentity(), newMessage);
-                        messages.add(newMessage);
 
                         getActivity().runOnUiThread(() -> {
                             etText.setText("");
-                            fillAdapter(messages);
+                            ChatMessageAdapter adapter = getAdapter();
+                            adapter.addMessages(Collections.singletonList(newMessage));
+                            adapter.notifyDataSetChanged();
                         });
                     }
                 }
@@ -188,32 +209,66 @@ public class ContactChatFragment extends ContactBaseFragment {
     }
 
     /**
-     * Get the messages from the ChatServer and refreshes the local list and view.
+     * Get the latest messages from the ChatServer and refreshes the local list and view.
      */
     private void refreshMessages() {
-        ChatMessageItem[] items = chatServer.getAllMessages(getIdentity(), contact);
-        messages.clear();
-        for (ChatMessageItem item : items) {
-            Log.v(TAG, "add message " + item.drop_payload);
-            messages.add(item);
+        ChatMessageItem[] items = chatServer.getMessages(getIdentity(), contact, null, PAGE_SIZE);
+        ChatMessageAdapter adapter = getAdapter();
+        if (adapter.addMessages(Arrays.asList(items)) == PAGE_SIZE && adapter.getCount() > PAGE_SIZE) {
+            // more new messages than a page, start over to not leave a gap in the history
+            contactListRecyclerView.setAdapter(null);
+            adapter = getAdapter();
+            adapter.addMessages(Arrays.asList(items));
+            hasOlderMessages = true;
         }
         chatServer.setAllMessagesRead(getIdentity(), contact);
         Intent intent = new Intent(Helper.INTENT_REFRESH_CONTACTLIST);
         context.sendOrderedBroadcast(intent, null);
-        fillAdapter(messages);
+        adapter.notifyDataSetChanged();
     }
 
+    /**
+     * Loads the page before the oldest shown message and keeps the visible messages in place.
+     */
+    private void loadOlderMessages() {
+        if (!hasOlderMessages || loadingOlderMessages) {
+            return;
+        }
+        loadingOlderMessages = true;
+        final ChatMessageItem oldest = getAdapter().getOldestMessage();
+        new AsyncTask<Void, Void, ChatMessageItem[]>() {
+            @Override
+            protected ChatMessageItem[] doInBackground(Void... params) {
+                return chatServer.getMessages(getIdentity(), contact, oldest, PAGE_SIZE);
+            }
 
-    private void fillAdapter(final ArrayList<ChatMessageItem> data) {
+            @Override
+            protected void onPostExecute(ChatMessageItem[] items) {
+                loadingOlderMessages = false;
+                if (items.length < PAGE_SIZE) {
+                    hasOlderMessages = false;
+                }
+                if (contactListRecyclerView == null) {
+                    return;
+                }
+                int first = contactListRecyclerView.getFirstVisiblePosition();
+                View firstView = contactListRecyclerView.getChildAt(0);
+                int top = firstView == null ? 0 : firstView.getTop();
+                ChatMessageAdapter adapter = getAdapter();
+                int added = adapter.addMessages(Arrays.asList(items));
+                adapter.notifyDataSetChanged();
+                contactListRecyclerView.setSelectionFromTop(first + added, top);
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
 
+    private ChatMessageAdapter getAdapter() {
         if (contactListRecyclerView.getAdapter() == null) {
-            ChatMessageAdapter contactListAdapter = new ChatMessageAdapter(data, contact);
+            ChatMessageAdapter contactListAdapter = new ChatMessageAdapter(contact);
             contactListRecyclerView.setAdapter(contactListAdapter);
             contactListAdapter.setOnItemClickListener(getOnItemClickListener());
         }
-        ChatMessageAdapter adapter = (ChatMessageAdapter) contactListRecyclerView.getAdapter();
-        adapter.setMessages(data, contact);
-        adapter.notifyDataSetChanged();
+        return (ChatMessageAdapter) contactListRecyclerView.getAdapter();
     }
 
     @NonNull
@@ -429,6 +484,7 @@ public class ContactChatFragment extends ContactBaseFragment {
         @Override
         public void onReceive(Context context, Intent intent) {
             Log.v(TAG, "receive refresh chat event");
+            chatServer.invalidateNewMessageCounts();
             if (chatServer.hasNewMessages(activeIdentity, contact)) {
                 refreshMessages();
             }
@@ -439,6 +495,7 @@ public class ContactChatFragment extends ContactBaseFragment {
 
         @Override
         public void onReceive(Context context, Intent intent) {
+            chatServer.invalidateNewMessageCounts();
             if (isOrderedBroadcast() && chatServer.hasNewMessages(activeIdentity, contact)) {
                 Log.v(TAG, "Aborting chat notification");
                 abortBroadcast();
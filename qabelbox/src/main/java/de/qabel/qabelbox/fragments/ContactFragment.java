@@ -33,6 +33,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Map;
 
 import javax.inject.Inject;
 
@@ -298,8 +299,10 @@ public class ContactFragment extends BaseFragment {
         }
         final int count = contacts.getContacts().size();
         ArrayList<ContactAdapterItem> items = new ArrayList<>();
+        Map<String, Integer> newMessageCounts = chatServer.getNewMessageCounts(getActiveIdentity());
         for (Contact c : contacts.getContacts()) {
-            items.add(new ContactAdapterItem(c, chatServer.hasNewMessages(getActiveIdentity(), c)));
+            items.add(new ContactAdapterItem(c,
+                    newMessageCounts.containsKey(c.getEcPublicKey().getReadableKeyIdentifier())));
         }
         contactListAdapter = new ContactsAdapter(items);
         setClickListener();
@@ -396,16 +399,16 @@ public class ContactFragment extends BaseFragment {
                         fis.close();
                         ContactExportImport.ContactsParseResult contactsParseResult =
                                 ContactExportImport.parse(getActiveIdentity(), json);
+                        Collection<Contact> contacts = contactsParseResult.getContacts().getContacts();
                         int added = 0;
                         int failed = contactsParseResult.getSkippedContacts();
-                        for (Contact contact : contactsParseResult.getContacts().getContacts()) {
-                            try {
-                                addContactSilent(contact);
-                                added++;
-                            } catch (PersistenceException | QblStorageEntityExistsException e) {
-                                failed++;
-                                Log.w(TAG, "found doublette. Will ignore it", e);
-                            }
+                        try {
+                            added = contactRepository.addAll(contacts, getActiveIdentity());
+                            failed += contacts.size() - added;
+                            sendRefreshContactList();
+                        } catch (PersistenceException e) {
+                            failed += contacts.size();
+                            Log.w(TAG, "Could not import contacts", e);
                         }
                         if (added > 0) {
                             if (added == 1 && failed == 0) {
@@ -471,6 +474,7 @@ public class ContactFragment extends BaseFragment {
         @Override
         public void onReceive(Context context, Intent intent) {
             Log.v(TAG, "receive refresh contactlist event");
+            chatServer.invalidateNewMessageCounts();
             refreshContactList();
             if (isOrderedBroadcast()) {
                 abortBroadcast();
@@ -19,6 +19,7 @@ import org.json.JSONObject;
 
 import java.util.ArrayList;
 
+import de.qabel.qabelbox.QabelBoxApplication;
 import de.qabel.qabelbox.R;
 import de.qabel.qabelbox.activities.CreateAccountActivity;
 import de.qabel.qabelbox.communication.BoxAccountRegisterServer;
@@ -74,7 +75,7 @@ public class CreateAccountLoginFragment extends BaseIdentityFragment {
     @Override
     public void onAttach(Activity activity) {
         super.onAttach(activity);
-        mBoxAccountServer = new BoxAccountRegisterServer(activity.getApplicationContext());
+        mBoxAccountServer = QabelBoxApplication.getApplicationComponent(activity).boxAccountRegisterServer();
     }
 
     @Override
@@ -18,6 +18,7 @@ import org.json.JSONObject;
 
 import java.util.ArrayList;
 
+import de.qabel.qabelbox.QabelBoxApplication;
 import de.qabel.qabelbox.R;
 import de.qabel.qabelbox.communication.BoxAccountRegisterServer;
 import de.qabel.qabelbox.communication.callbacks.JsonRequestCallback;
@@ -54,7 +55,7 @@ public class CreateAccountResetPasswordFragment extends BaseIdentityFragment {
     @Override
     public void onAttach(Activity activity) {
         super.onAttach(activity);
-        mBoxAccountServer = new BoxAccountRegisterServer(activity.getApplicationContext());
+        mBoxAccountServer = QabelBoxApplication.getApplicationComponent(activity).boxAccountRegisterServer();
     }
 
     @Override
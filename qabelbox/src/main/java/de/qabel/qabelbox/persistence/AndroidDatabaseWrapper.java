@@ -17,9 +17,15 @@ public class AndroidDatabaseWrapper extends DatabaseWrapperImpl<QblSQLiteParams>
     private QblSQLiteOpenHelper dbHelper;
     private SQLiteDatabase database;
     private QblSQLiteParams params;
+    private final EntityCodec codec;
 
     public AndroidDatabaseWrapper(QblSQLiteParams params) {
+        this(params, new BinaryEntityCodec());
+    }
+
+    public AndroidDatabaseWrapper(QblSQLiteParams params, EntityCodec codec) {
         this.params = params;
+        this.codec = codec;
     }
 
     @Override
@@ -43,7 +49,7 @@ public class AndroidDatabaseWrapper extends DatabaseWrapperImpl<QblSQLiteParams>
     public boolean insert(Persistable entity) {
         ContentValues contentValues = new ContentValues();
         contentValues.put(STR_ID, entity.getPersistenceID());
-        contentValues.put(STR_BLOB, PersistenceUtil.serialize(entity.getPersistenceID(), entity));
+        contentValues.put(STR_BLOB, codec.encode(entity));
 
         return database.insert(PersistenceUtil.getTableNameForClass(entity.getClass()), null, contentValues) != -1L;
     }
@@ -51,7 +57,7 @@ public class AndroidDatabaseWrapper extends DatabaseWrapperImpl<QblSQLiteParams>
     @Override
     public boolean update(Persistable entity) {
         ContentValues contentValues = new ContentValues();
-        contentValues.put(STR_BLOB, PersistenceUtil.serialize(entity.getPersistenceID(), entity));
+        contentValues.put(STR_BLOB, codec.encode(entity));
 
         String[] whereArgs = {entity.getPersistenceID()};
         return database.update(PersistenceUtil.getTableNameForClass(entity.getClass()), contentValues, STR_ID_QUERY, whereArgs) != -1;
@@ -63,6 +69,25 @@ public class AndroidDatabaseWrapper extends DatabaseWrapperImpl<QblSQLiteParams>
         return database.delete(PersistenceUtil.getTableNameForClass(cls), STR_ID_QUERY, whereArgs) == 1;
     }
 
+    @Override
+    public boolean exists(String id, Class cls) throws QblPersistenceException {
+        String[] columns = {STR_ID};
+        String[] selectionArgs = {id};
+
+        Cursor cursor = null;
+        try {
+            cursor = database.query(PersistenceUtil.getTableNameForClass(cls), columns, STR_ID_QUERY,
+                    selectionArgs, null, null, null);
+            return cursor.moveToFirst();
+        } catch (SQLiteException e) {
+            throw new QblPersistenceException(e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
     @Override
     public <U extends Persistable> U getEntity(String id, Class<? extends U> cls) {
         String[] columns = {STR_BLOB};
@@ -74,7 +99,7 @@ public class AndroidDatabaseWrapper extends DatabaseWrapperImpl<QblSQLiteParams>
                     selectionArgs, null, null, null);
 
             if (cursor.moveToFirst()) {
-                return (U) PersistenceUtil.deserialize(id, cursor.getBlob(0));
+                return (U) codec.decode(id, cursor.getBlob(0));
             }
         } catch (SQLiteException e) {
             throw new QblPersistenceException(e);
@@ -98,8 +123,7 @@ public class AndroidDatabaseWrapper extends DatabaseWrapperImpl<QblSQLiteParams>
                     null, null, null, null, null);
             if (cursor.moveToFirst()) {
                 do {
-                    objects.add((U) PersistenceUtil.deserialize(cursor.getString(0),
-                            cursor.getBlob(1)));
+                    objects.add((U) codec.decode(cursor.getString(0), cursor.getBlob(1)));
                 } while (cursor.moveToNext());
             }
         } catch (SQLiteException e) {
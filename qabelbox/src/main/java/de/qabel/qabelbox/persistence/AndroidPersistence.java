@@ -58,7 +58,7 @@ public class AndroidPersistence extends Persistence<QblSQLiteParams> {
             throw new IllegalArgumentException("Arguments cannot be null!");
         }
 
-        if (getEntity(object.getPersistenceID(), object.getClass()) == null) {
+        if (!exists(object.getPersistenceID(), object.getClass())) {
             LOGGER.info("Entity not stored!");
             return false;
         }
@@ -68,13 +68,29 @@ public class AndroidPersistence extends Persistence<QblSQLiteParams> {
 
     @Override
     public boolean updateOrPersistEntity(Persistable object) {
-        if (getEntity(object.getPersistenceID(), object.getClass()) == null) {
+        if (!exists(object.getPersistenceID(), object.getClass())) {
             return persistEntity(object);
         } else {
-            return updateEntity(object);
+            return databaseWrapper.update(object);
         }
     }
 
+    /**
+     * Checks for a stored entity by its id without decoding it
+     */
+    public boolean exists(String id, Class cls) {
+        if (id == null || cls == null) {
+            throw new IllegalArgumentException("Arguments cannot be null!");
+        }
+
+        try {
+            return databaseWrapper.exists(id, cls);
+        } catch (QblPersistenceException e) {
+            LOGGER.debug("Table does not exist!");
+        }
+        return false;
+    }
+
     @Override
     public boolean removeEntity(String id, Class cls) {
         if (id == null || cls == null) {
@@ -0,0 +1,314 @@
+package de.qabel.qabelbox.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import de.qabel.core.config.Contact;
+import de.qabel.core.config.Contacts;
+import de.qabel.core.config.Entity;
+import de.qabel.core.config.Identity;
+import de.qabel.core.config.Persistable;
+import de.qabel.core.config.SyncSettingItem;
+import de.qabel.core.crypto.QblECKeyPair;
+import de.qabel.core.crypto.QblECPublicKey;
+import de.qabel.core.drop.DropURL;
+import de.qabel.core.exceptions.QblDropInvalidURL;
+
+/**
+ * Compact binary encoding of identities, contacts and contact lists.
+ * <p>
+ * Blobs start with a magic byte, a format version and the type of the entity. Other types and
+ * blobs without the magic byte, like the ones written by java serialization, are handed to the fallback codec.
+ */
+public class BinaryEntityCodec implements EntityCodec {
+    static final byte MAGIC = 'Q';
+    static final byte VERSION = 1;
+    private static final byte TYPE_IDENTITY = 1;
+    private static final byte TYPE_CONTACT = 2;
+    private static final byte TYPE_CONTACTS = 3;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Field PERSISTENCE_ID = getPersistenceIdField();
+
+    private final EntityCodec fallback;
+
+    public BinaryEntityCodec() {
+        this(new SerializableEntityCodec());
+    }
+
+    public BinaryEntityCodec(EntityCodec fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public byte[] encode(Persistable entity) {
+        if (entity == null) {
+            throw new IllegalArgumentException("Arguments cannot be null!");
+        }
+        byte type;
+        if (entity instanceof Identity) {
+            type = TYPE_IDENTITY;
+        } else if (entity instanceof Contact) {
+            type = TYPE_CONTACT;
+        } else if (entity instanceof Contacts) {
+            type = TYPE_CONTACTS;
+        } else {
+            return fallback.encode(entity);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(type);
+            switch (type) {
+                case TYPE_IDENTITY:
+                    writeIdentity(out, (Identity) entity);
+                    break;
+                case TYPE_CONTACT:
+                    writeContact(out, (Contact) entity);
+                    break;
+                default:
+                    writeContacts(out, (Contacts) entity);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot encode object!", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Persistable decode(String id, byte[] blob) {
+        if (id == null || blob == null) {
+            throw new IllegalArgumentException("Arguments cannot be null!");
+        }
+        if (blob.length < 3 || blob[0] != MAGIC) {
+            return fallback.decode(id, blob);
+        }
+        if (blob[1] != VERSION) {
+            throw new IllegalArgumentException("Unknown format version " + blob[1]);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(blob, 3, blob.length - 3));
+        try {
+            switch (blob[2]) {
+                case TYPE_IDENTITY:
+                    return readIdentity(in);
+                case TYPE_CONTACT:
+                    return readContact(in);
+                case TYPE_CONTACTS:
+                    return readContacts(in);
+                default:
+                    throw new IllegalArgumentException("Unknown entity type " + blob[2]);
+            }
+        } catch (IOException | URISyntaxException | QblDropInvalidURL e) {
+            throw new IllegalArgumentException("Cannot decode object!", e);
+        }
+    }
+
+    private static void writeIdentity(DataOutputStream out, Identity identity) throws IOException {
+        writeEntity(out, identity);
+        writeString(out, identity.getAlias());
+        writeString(out, identity.getEmail());
+        writeString(out, identity.getPhone());
+        writeStrings(out, identity.getPrefixes());
+        writeBytes(out, identity.getPrimaryKeyPair().getPrivateKey());
+    }
+
+    private static Identity readIdentity(DataInputStream in)
+            throws IOException, URISyntaxException, QblDropInvalidURL {
+        String persistenceId = readPersistenceId(in);
+        int id = in.readInt();
+        long created = in.readLong();
+        long updated = in.readLong();
+        long deleted = in.readLong();
+        List<DropURL> dropUrls = readDropUrls(in);
+        String alias = readString(in);
+        String email = readString(in);
+        String phone = readString(in);
+        List<String> prefixes = readStrings(in);
+        QblECKeyPair keyPair = new QblECKeyPair(readBytes(in));
+
+        Identity identity = new Identity(alias, dropUrls, keyPair);
+        identity.setEmail(email);
+        identity.setPhone(phone);
+        if (prefixes != null) {
+            identity.setPrefixes(prefixes);
+        }
+        restore(identity, persistenceId, id, created, updated, deleted);
+        return identity;
+    }
+
+    private static void writeContact(DataOutputStream out, Contact contact) throws IOException {
+        writeEntity(out, contact);
+        writeString(out, contact.getAlias());
+        writeString(out, contact.getEmail());
+        writeString(out, contact.getPhone());
+        writeBytes(out, contact.getEcPublicKey().getKey());
+    }
+
+    private static Contact readContact(DataInputStream in)
+            throws IOException, URISyntaxException, QblDropInvalidURL {
+        String persistenceId = readPersistenceId(in);
+        int id = in.readInt();
+        long created = in.readLong();
+        long updated = in.readLong();
+        long deleted = in.readLong();
+        List<DropURL> dropUrls = readDropUrls(in);
+        String alias = readString(in);
+        String email = readString(in);
+        String phone = readString(in);
+        QblECPublicKey publicKey = new QblECPublicKey(readBytes(in));
+
+        Contact contact = new Contact(alias, dropUrls, publicKey);
+        contact.setEmail(email);
+        contact.setPhone(phone);
+        restore(contact, persistenceId, id, created, updated, deleted);
+        return contact;
+    }
+
+    private static void writeContacts(DataOutputStream out, Contacts contacts) throws IOException {
+        writePersistenceId(out, contacts);
+        writeIdentity(out, contacts.getIdentity());
+        Collection<Contact> entities = contacts.getContacts();
+        out.writeInt(entities.size());
+        for (Contact contact : entities) {
+            writeContact(out, contact);
+        }
+    }
+
+    private static Contacts readContacts(DataInputStream in)
+            throws IOException, URISyntaxException, QblDropInvalidURL {
+        String persistenceId = readPersistenceId(in);
+        Contacts contacts = new Contacts(readIdentity(in));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            contacts.put(readContact(in));
+        }
+        setPersistenceId(contacts, persistenceId);
+        return contacts;
+    }
+
+    private static void writeEntity(DataOutputStream out, Entity entity) throws IOException {
+        writePersistenceId(out, entity);
+        out.writeInt(entity.getId());
+        out.writeLong(entity.getCreated());
+        out.writeLong(entity.getUpdated());
+        out.writeLong(entity.getDeleted());
+        Collection<DropURL> dropUrls = entity.getDropUrls();
+        out.writeInt(dropUrls.size());
+        for (DropURL dropUrl : dropUrls) {
+            writeString(out, dropUrl.toString());
+        }
+    }
+
+    private static List<DropURL> readDropUrls(DataInputStream in)
+            throws IOException, URISyntaxException, QblDropInvalidURL {
+        int count = in.readInt();
+        List<DropURL> dropUrls = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            dropUrls.add(new DropURL(readString(in)));
+        }
+        return dropUrls;
+    }
+
+    private static void restore(SyncSettingItem item, String persistenceId, int id,
+                                long created, long updated, long deleted) {
+        item.setId(id);
+        item.setCreated(created);
+        item.setUpdated(updated);
+        item.setDeleted(deleted);
+        setPersistenceId(item, persistenceId);
+    }
+
+    private static void writePersistenceId(DataOutputStream out, Persistable entity) throws IOException {
+        UUID uuid = UUID.fromString(entity.getPersistenceID());
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static String readPersistenceId(DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong()).toString();
+    }
+
+    /**
+     * The persistence id is generated by the constructor and has no setter, but it is the primary key of the blob
+     */
+    private static void setPersistenceId(Persistable entity, String persistenceId) {
+        try {
+            PERSISTENCE_ID.set(entity, UUID.fromString(persistenceId));
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot restore persistence id!", e);
+        }
+    }
+
+    private static Field getPersistenceIdField() {
+        try {
+            Field field = Persistable.class.getDeclaredField("persistenceID");
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("Persistable has no persistenceID", e);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        if (strings == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            writeString(out, string);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        writeBytes(out, string == null ? null : string.getBytes(UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -17,6 +17,8 @@ public interface DatabaseWrapper {
 
     boolean delete(String id, Class cls) throws QblPersistenceException;
 
+    boolean exists(String id, Class cls) throws QblPersistenceException;
+
     <U extends Persistable> U getEntity(String id, Class<? extends U> cls) throws QblPersistenceException;
 
     <U extends Persistable> List<U> getEntities(Class<? extends U> cls) throws QblPersistenceException;
@@ -0,0 +1,14 @@
+package de.qabel.qabelbox.persistence;
+
+import de.qabel.core.config.Persistable;
+
+/**
+ * Converts persisted entities to the blobs stored by the {@link DatabaseWrapper} and back
+ */
+public interface EntityCodec {
+
+    byte[] encode(Persistable entity) throws IllegalArgumentException;
+
+    Persistable decode(String id, byte[] blob) throws IllegalArgumentException;
+
+}
@@ -0,0 +1,81 @@
+package de.qabel.qabelbox.persistence;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.sql.SQLException;
+
+import de.qabel.core.exceptions.QblInvalidEncryptionKeyException;
+import de.qabel.desktop.repository.exception.EntityNotFoundExcepion;
+import de.qabel.desktop.repository.exception.PersistenceException;
+import de.qabel.desktop.repository.sqlite.migration.AbstractBackfill;
+
+/**
+ * Runs the {@link PersistenceMigration} of the legacy AndroidPersistence. The identities are
+ * migrated by {@link #migrateIdentities()} before the backfills start, the contacts in batches.
+ */
+public class LegacyContactsBackfill extends AbstractBackfill {
+    private static final String TAG = "LegacyContactsBackfill";
+    public static final String DATABASE_NAME = "qabel-service";
+    public static final int DATABASE_VERSION = 1;
+
+    private final Context context;
+    private final PersistenceMigration migration;
+    private AndroidPersistence persistence;
+
+    public LegacyContactsBackfill(Context context, PersistenceMigration migration) {
+        this.context = context;
+        this.migration = migration;
+    }
+
+    @Override
+    public long getVersion() {
+        return 1463700000L;
+    }
+
+    @Override
+    public boolean isTransactional() {
+        return false;
+    }
+
+    public void migrateIdentities() throws PersistenceException {
+        AndroidPersistence legacy = getPersistence();
+        if (legacy != null) {
+            migration.migrateIdentities(legacy);
+        }
+    }
+
+    @Override
+    public int backfill(int batchSize) throws SQLException {
+        try {
+            AndroidPersistence legacy = getPersistence();
+            if (legacy == null) {
+                return 0;
+            }
+            return migration.migrateNextContacts(legacy, batchSize);
+        } catch (PersistenceException | EntityNotFoundExcepion e) {
+            throw new SQLException("failed to migrate legacy contacts: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Opens the legacy database only if it exists, so a new installation doesn't create it
+     *
+     * @return null if there is nothing to migrate
+     */
+    private synchronized AndroidPersistence getPersistence() throws PersistenceException {
+        if (persistence == null) {
+            if (migration.isComplete() || !context.getDatabasePath(DATABASE_NAME).exists()) {
+                return null;
+            }
+            try {
+                persistence = new AndroidPersistence(
+                        new QblSQLiteParams(context, DATABASE_NAME, null, DATABASE_VERSION));
+            } catch (QblInvalidEncryptionKeyException e) {
+                Log.e(TAG, "Invalid database password!");
+                return null;
+            }
+        }
+        return persistence;
+    }
+}
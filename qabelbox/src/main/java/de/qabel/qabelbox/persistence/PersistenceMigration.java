@@ -1,6 +1,13 @@
 package de.qabel.qabelbox.persistence;
 
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import de.qabel.core.config.Contact;
 import de.qabel.core.config.Contacts;
@@ -10,25 +17,154 @@ import de.qabel.desktop.repository.IdentityRepository;
 import de.qabel.desktop.repository.exception.EntityNotFoundExcepion;
 import de.qabel.desktop.repository.exception.PersistenceException;
 
+/**
+ * Moves identities and contacts from the legacy AndroidPersistence into the repositories.
+ * <p>
+ * Every finished step is recorded in the {@link MigrationState}, so an interrupted migration
+ * continues where it stopped and a completed one is skipped without opening the legacy database.
+ */
 public class PersistenceMigration {
+    private static final String TAG = "PersistenceMigration";
+    static final int BATCH_SIZE = 500;
+    static final String STEP_IDENTITIES = "identities";
+    static final String STEP_CONTACTS = "contacts:";
+    static final String STEP_COMPLETE = "complete";
+
+    public interface MigrationState {
+        boolean isDone(String step) throws PersistenceException;
+
+        void setDone(String step) throws PersistenceException;
+    }
+
+    private final MigrationState state;
+    private final IdentityRepository identityRepository;
+    private final ContactRepository contactRepository;
+    /**
+     * Contacts of the identities which are not migrated yet, loaded by the first batch
+     */
+    private Deque<Contacts> pending;
+    private List<Contact> current;
+    private int currentOffset;
 
+    public PersistenceMigration(MigrationState state,
+                                IdentityRepository identityRepository,
+                                ContactRepository contactRepository) {
+        this.state = state;
+        this.identityRepository = identityRepository;
+        this.contactRepository = contactRepository;
+    }
+
+    /**
+     * Migrates everything at once without remembering the finished steps
+     */
     public static void migrate(AndroidPersistence persistence,
                                IdentityRepository identityRepository,
                                ContactRepository contactRepository)
             throws PersistenceException, EntityNotFoundExcepion {
-        List<Identity> identities = persistence.getEntities(Identity.class);
-        List<Contacts> contactsList = persistence.getEntities(Contacts.class);
-        for (Identity identity: identities) {
+        PersistenceMigration migration = new PersistenceMigration(
+                new MemoryMigrationState(), identityRepository, contactRepository);
+        migration.migrateIdentities(persistence);
+        migration.migrateContacts(persistence);
+    }
+
+    public boolean isComplete() throws PersistenceException {
+        return state.isDone(STEP_COMPLETE);
+    }
+
+    /**
+     * Identities are needed as soon as the app starts and there are only a few, so this
+     * step is cheap enough to run before the contacts are migrated in the background.
+     */
+    public void migrateIdentities(AndroidPersistence persistence) throws PersistenceException {
+        if (state.isDone(STEP_IDENTITIES)) {
+            return;
+        }
+        for (Identity identity : persistence.getEntities(Identity.class)) {
             identityRepository.save(identity);
         }
-        for (Contacts contacts: contactsList) {
-            for (Contact contact: contacts.getContacts()) {
+        state.setDone(STEP_IDENTITIES);
+    }
+
+    /**
+     * Saves the contacts of every identity in transactions of {@link #BATCH_SIZE} contacts
+     * and drops the legacy tables when all of them are migrated.
+     */
+    public void migrateContacts(AndroidPersistence persistence)
+            throws PersistenceException, EntityNotFoundExcepion {
+        int migrated = 0;
+        int batch;
+        while ((batch = migrateNextContacts(persistence, BATCH_SIZE)) > 0) {
+            migrated += batch;
+        }
+        Log.i(TAG, "Migrated " + migrated + " legacy contacts");
+    }
+
+    /**
+     * Saves the next batch of contacts of one identity. The identity is marked as done with its
+     * last batch and the legacy tables are dropped when no identity is left.
+     *
+     * @return number of saved contacts, 0 if all contacts are migrated
+     */
+    public int migrateNextContacts(AndroidPersistence persistence, int batchSize)
+            throws PersistenceException, EntityNotFoundExcepion {
+        if (isComplete()) {
+            return 0;
+        }
+        if (pending == null) {
+            pending = new ArrayDeque<>();
+            for (Contacts contacts : persistence.getEntities(Contacts.class)) {
+                if (!state.isDone(getContactsStep(contacts))) {
+                    pending.add(contacts);
+                }
+            }
+        }
+        while (!pending.isEmpty()) {
+            Contacts contacts = pending.peek();
+            if (current == null) {
+                current = new ArrayList<>(contacts.getContacts());
+                currentOffset = 0;
+            }
+            if (currentOffset < current.size()) {
                 Identity identity = identityRepository.find(
                         contacts.getIdentity().getKeyIdentifier());
-                contactRepository.save(contact, identity);
+                List<Contact> batch = new ArrayList<>(current.subList(
+                        currentOffset, Math.min(currentOffset + batchSize, current.size())));
+                contactRepository.saveAll(batch, identity);
+                currentOffset += batch.size();
+                if (currentOffset == current.size()) {
+                    finishContacts(contacts);
+                }
+                return batch.size();
             }
+            finishContacts(contacts);
         }
         persistence.dropTable(Identity.class);
         persistence.dropTable(Contacts.class);
+        state.setDone(STEP_COMPLETE);
+        return 0;
+    }
+
+    private void finishContacts(Contacts contacts) throws PersistenceException {
+        state.setDone(getContactsStep(contacts));
+        pending.poll();
+        current = null;
+    }
+
+    private static String getContactsStep(Contacts contacts) {
+        return STEP_CONTACTS + contacts.getIdentity().getKeyIdentifier();
+    }
+
+    private static class MemoryMigrationState implements MigrationState {
+        private final Set<String> done = new HashSet<>();
+
+        @Override
+        public boolean isDone(String step) {
+            return done.contains(step);
+        }
+
+        @Override
+        public void setDone(String step) {
+            done.add(step);
+        }
     }
 }
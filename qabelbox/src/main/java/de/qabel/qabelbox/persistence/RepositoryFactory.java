@@ -1,6 +1,8 @@
 package de.qabel.qabelbox.persistence;
 
 import android.content.Context;
+import android.content.Intent;
+import android.database.sqlite.SQLiteDatabase;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
@@ -9,28 +11,46 @@ import java.io.FileOutputStream;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Properties;
 
 import de.qabel.desktop.config.factory.DefaultIdentityFactory;
 import de.qabel.desktop.repository.EntityManager;
 import de.qabel.desktop.repository.IdentityRepository;
+import de.qabel.desktop.repository.exception.PersistenceException;
 import de.qabel.desktop.repository.sqlite.AndroidClientDatabase;
 import de.qabel.desktop.repository.sqlite.MigrationException;
+import de.qabel.desktop.repository.sqlite.MigrationListener;
+import de.qabel.desktop.repository.sqlite.ReaderPool;
 import de.qabel.desktop.repository.sqlite.SqliteContactRepository;
+import de.qabel.desktop.repository.sqlite.SqliteDropOutboxRepository;
+import de.qabel.desktop.repository.sqlite.SqliteDropStateRepository;
 import de.qabel.desktop.repository.sqlite.SqliteDropUrlRepository;
 import de.qabel.desktop.repository.sqlite.SqliteIdentityRepository;
 import de.qabel.desktop.repository.sqlite.SqlitePrefixRepository;
 import de.qabel.desktop.repository.sqlite.hydrator.DropURLHydrator;
 import de.qabel.desktop.repository.sqlite.hydrator.IdentityHydrator;
+import de.qabel.desktop.repository.sqlite.migration.AbstractBackfill;
+import de.qabel.desktop.repository.sqlite.migration.AbstractMigration;
+import de.qabel.qabelbox.chat.ChatMessageSearchBackfill;
+import de.qabel.qabelbox.chat.LegacyChatMessagesBackfill;
+import de.qabel.qabelbox.chat.SqliteChatMessageRepository;
 import de.qabel.qabelbox.exceptions.QblPersistenceException;
+import de.qabel.qabelbox.helper.Helper;
 
 public class RepositoryFactory {
 
     protected static final String DB_REPOSITORIES = "client-database";
     private static final String TAG = "RepositorySQLite";
+    private static final int READER_CONNECTIONS = 2;
+    /**
+     * Connection property of the sqldroid driver which replaces the flags the database is opened with
+     */
+    private static final String SQLDROID_DATABASE_FLAGS = "DatabaseFlags";
     private Context context;
     private Connection connection;
     private AndroidClientDatabase androidClientDatabase;
     private EntityManager entityManager;
+    private volatile Thread backfillThread;
 
     public RepositoryFactory(Context context) {
         this.context = context;
@@ -49,6 +69,14 @@ public class RepositoryFactory {
         return context.getFileStreamPath(DB_REPOSITORIES);
     }
 
+    /**
+     * Opens the client database read only with the android api, to hand out cursors.
+     * The database has to be migrated already, everything else should use the repositories.
+     */
+    public SQLiteDatabase openSqliteDatabase() {
+        return SQLiteDatabase.openDatabase(getDatabasePath().getPath(), null, SQLiteDatabase.OPEN_READONLY);
+    }
+
     public void deleteDatabase() {
         close();
         try {
@@ -96,6 +124,21 @@ public class RepositoryFactory {
         return new SqliteContactRepository(clientDatabase, getEntityManager());
     }
 
+    @NonNull
+    public SqliteDropStateRepository getDropStateRepository(AndroidClientDatabase clientDatabase) {
+        return new SqliteDropStateRepository(clientDatabase);
+    }
+
+    @NonNull
+    public SqliteDropOutboxRepository getDropOutboxRepository(AndroidClientDatabase clientDatabase) {
+        return new SqliteDropOutboxRepository(clientDatabase);
+    }
+
+    @NonNull
+    public SqliteChatMessageRepository getChatMessageRepository(AndroidClientDatabase clientDatabase) {
+        return new SqliteChatMessageRepository(clientDatabase);
+    }
+
     @NonNull
     public SqlitePrefixRepository getSqlitePrefixRepository(AndroidClientDatabase clientDatabase) {
         return new SqlitePrefixRepository(clientDatabase);
@@ -109,23 +152,104 @@ public class RepositoryFactory {
     @NonNull
     public AndroidClientDatabase getAndroidClientDatabase() throws QblPersistenceException {
         if (connection == null) {
+            String url = "jdbc:sqlite:" + getDatabasePath();
             try {
-                connection = DriverManager.getConnection("jdbc:sqlite:" + getDatabasePath());
+                connection = DriverManager.getConnection(url);
             } catch (SQLException e) {
                 throw new QblPersistenceException(e);
             }
             androidClientDatabase = new AndroidClientDatabase(connection);
+            androidClientDatabase.addMigrationListener(new ProgressLogger());
             try {
                 androidClientDatabase.migrate();
             } catch (MigrationException e) {
                 throw new RuntimeException(e);
             }
+            enableReaders(url);
+            addBackfills(androidClientDatabase);
+            startBackfills(androidClientDatabase);
         }
         return androidClientDatabase;
     }
 
+    /**
+     * The legacy identities are migrated right away, because the app needs them to start.
+     * Legacy contacts come first, the chat import indexes its messages itself,
+     * so the search index backfill only has to handle the remaining ones.
+     */
+    private void addBackfills(AndroidClientDatabase database) {
+        IdentityRepository identityRepository = getIdentityRepository(database);
+        SqliteChatMessageRepository chatMessageRepository = getChatMessageRepository(database);
+        LegacyContactsBackfill legacyContacts = new LegacyContactsBackfill(context, new PersistenceMigration(
+                new SqliteMigrationState(database), identityRepository, getContactRepository(database)));
+        try {
+            legacyContacts.migrateIdentities();
+        } catch (PersistenceException e) {
+            Log.e(TAG, "Migration of legacy identities failed", e);
+        }
+        database.addBackfill(legacyContacts);
+        database.addBackfill(new LegacyChatMessagesBackfill(context, identityRepository, chatMessageRepository));
+        database.addBackfill(new ChatMessageSearchBackfill(chatMessageRepository));
+    }
+
+    /**
+     * Backfills only move existing data, so they don't hold up the start of the app
+     */
+    private void startBackfills(AndroidClientDatabase database) {
+        if (!database.hasBackfills()) {
+            return;
+        }
+        backfillThread = new Thread(() -> {
+            try {
+                database.runBackfills();
+            } catch (MigrationException e) {
+                Log.e(TAG, "Backfill failed, retrying on next start", e);
+            }
+        }, "DatabaseBackfill");
+        backfillThread.start();
+    }
+
+    /**
+     * Waits until the backfills started with the database are finished
+     */
+    public void awaitBackfills() throws InterruptedException {
+        Thread thread = backfillThread;
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Queries run on separate reader connections if the database could be switched to WAL mode,
+     * otherwise a reader would still wait for a running write transaction.
+     */
+    private void enableReaders(String url) {
+        try {
+            if (!androidClientDatabase.enableWriteAheadLogging()) {
+                Log.w(TAG, "Could not enable WAL mode, using a single connection");
+                return;
+            }
+        } catch (SQLException | RuntimeException e) {
+            Log.w(TAG, "Could not enable WAL mode, using a single connection", e);
+            return;
+        }
+        Properties readOnly = new Properties();
+        readOnly.setProperty(SQLDROID_DATABASE_FLAGS, String.valueOf(
+                SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS));
+        androidClientDatabase.setReaders(
+                new ReaderPool(READER_CONNECTIONS, () -> DriverManager.getConnection(url, readOnly)));
+    }
+
     public void close() {
+        try {
+            awaitBackfills();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         if (connection != null) {
+            if (androidClientDatabase != null) {
+                androidClientDatabase.close();
+            }
             try {
                 connection.close();
                 connection = null;
@@ -135,4 +259,28 @@ public class RepositoryFactory {
             androidClientDatabase = null;
         }
     }
+
+    /**
+     * Lists the contacts and chats again when a backfill moved data which wasn't visible before
+     */
+    private class ProgressLogger implements MigrationListener {
+        @Override
+        public void onMigrated(AbstractMigration migration, long durationMillis, int done, int total) {
+            Log.i(TAG, "Migration " + done + "/" + total + " " + migration.getClass().getSimpleName()
+                    + " took " + durationMillis + "ms");
+        }
+
+        @Override
+        public void onBackfilled(AbstractBackfill backfill, int rows, boolean finished) {
+            String name = backfill.getClass().getSimpleName();
+            if (!finished) {
+                Log.d(TAG, "Backfill " + name + " processed " + rows + " rows");
+                return;
+            }
+            Log.i(TAG, "Backfill " + name + " done with " + rows + " rows");
+            if (rows > 0) {
+                context.sendBroadcast(new Intent(Helper.INTENT_REFRESH_CONTACTLIST));
+            }
+        }
+    }
 }
@@ -0,0 +1,22 @@
+package de.qabel.qabelbox.persistence;
+
+import de.qabel.core.config.Persistable;
+
+/**
+ * Stores entities with plain java serialization
+ */
+public class SerializableEntityCodec implements EntityCodec {
+
+    @Override
+    public byte[] encode(Persistable entity) {
+        if (entity == null) {
+            throw new IllegalArgumentException("Arguments cannot be null!");
+        }
+        return PersistenceUtil.serialize(entity.getPersistenceID(), entity);
+    }
+
+    @Override
+    public Persistable decode(String id, byte[] blob) {
+        return (Persistable) PersistenceUtil.deserialize(id, blob);
+    }
+}
@@ -0,0 +1,43 @@
+package de.qabel.qabelbox.persistence;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import de.qabel.desktop.repository.exception.PersistenceException;
+import de.qabel.desktop.repository.sqlite.ClientDatabase;
+
+/**
+ * Stores the finished steps of the legacy migration in the client database
+ */
+public class SqliteMigrationState implements PersistenceMigration.MigrationState {
+    private final ClientDatabase database;
+
+    public SqliteMigrationState(ClientDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public boolean isDone(String step) throws PersistenceException {
+        try (PreparedStatement statement = database.prepareRead(
+                "SELECT 1 FROM legacy_migration WHERE step = ?")) {
+            statement.setString(1, step);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException("failed to read migration step " + step, e);
+        }
+    }
+
+    @Override
+    public void setDone(String step) throws PersistenceException {
+        try (PreparedStatement statement = database.prepare(
+                "INSERT OR IGNORE INTO legacy_migration (step) VALUES (?)")) {
+            statement.setString(1, step);
+            statement.execute();
+        } catch (SQLException e) {
+            throw new PersistenceException("failed to save migration step " + step, e);
+        }
+    }
+}
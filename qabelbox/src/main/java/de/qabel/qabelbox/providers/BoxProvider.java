@@ -27,6 +27,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -475,9 +476,11 @@ public class BoxProvider extends DocumentsProvider {
                                         documentId1.getPrefix());
                                 BoxNavigation boxNavigation = volume.navigate();
                                 boxNavigation.navigate(path);
-                                boxNavigation.upload(documentId1.getFileName(),
-                                        new FileInputStream(tmp));
-                                boxNavigation.commit();
+                                if (!uploadChanges(boxNavigation, documentId1.getFileName(),
+                                        new FileInputStream(tmp))) {
+                                    Log.d(TAG, "File unchanged, nothing to commit");
+                                    return documentId;
+                                }
                             } catch (FileNotFoundException | QblStorageException e1) {
                                 Log.e(TAG, "Cannot upload file!", e);
                             }
@@ -498,6 +501,22 @@ public class BoxProvider extends DocumentsProvider {
         }
     }
 
+    /**
+     * Uploads the content and commits the navigation unless the file already had this content
+     *
+     * @return true if the file was changed
+     */
+    static boolean uploadChanges(BoxNavigation navigation, String name, InputStream content)
+            throws QblStorageException {
+        BoxFile existing = navigation.getFile(name, false);
+        BoxFile uploaded = navigation.upload(name, content);
+        if (uploaded.equals(existing)) {
+            return false;
+        }
+        navigation.commit();
+        return true;
+    }
+
     private File downloadFile(final String documentId, final String mode, final CancellationSignal signal) throws FileNotFoundException {
 
         final Future<File> future = mThreadPoolExecutor.submit(
@@ -2,7 +2,6 @@ package de.qabel.qabelbox.services;
 
 import android.support.annotation.Nullable;
 
-import java.util.Collection;
 import java.util.Map;
 
 import de.qabel.core.config.Contact;
@@ -17,7 +16,20 @@ public interface DropConnector {
                          @Nullable LocalQabelService.OnSendDropMessageResult dropResultCallback)
             throws QblDropPayloadSizeException;
 
-    Collection<DropMessage> retrieveDropMessages(Identity identity, long sinceDate);
+    /**
+     * The returned drop states are not saved yet, store them together with the messages
+     */
+    RetrievedDropMessages retrieveDropMessages(Identity identity, long sinceDate);
+
+    /**
+     * Retrieves the messages of the identity with a decryptor which is shared by all identities of a sync
+     */
+    RetrievedDropMessages retrieveDropMessages(Identity identity, long sinceDate, DropMessageDecryptor decryptor);
+
+    /**
+     * Indexes the contacts of all identities, build it once per sync
+     */
+    DropMessageDecryptor createDecryptor();
 
     interface OnSendDropMessageResult {
         void onSendDropResult(Map<DropURL, Boolean> deliveryStatus);
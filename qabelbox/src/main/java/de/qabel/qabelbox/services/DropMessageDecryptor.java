@@ -0,0 +1,146 @@
+package de.qabel.qabelbox.services;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.InterruptedIOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.qabel.core.config.Contact;
+import de.qabel.core.config.Contacts;
+import de.qabel.core.config.Identities;
+import de.qabel.core.config.Identity;
+import de.qabel.core.crypto.AbstractBinaryDropMessage;
+import de.qabel.core.crypto.BinaryDropMessageV0;
+import de.qabel.core.drop.DropMessage;
+import de.qabel.core.exceptions.QblDropInvalidMessageSizeException;
+import de.qabel.core.exceptions.QblSpoofedSenderException;
+import de.qabel.core.exceptions.QblVersionMismatchException;
+
+/**
+ * Decrypts binary drop messages for a fixed set of identities and contacts.
+ * <p>
+ * Senders are looked up in an index by key identifier which is built once per instance,
+ * messages are decrypted in parallel on a pool bounded by the number of cores.
+ */
+public class DropMessageDecryptor {
+
+    private static final String TAG = "DropMessageDecryptor";
+    private static final ExecutorService DECRYPTION_EXECUTOR =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+    private final Identities identities;
+    private final Map<String, List<Contact>> senders = new HashMap<>();
+
+    public DropMessageDecryptor(Identities identities, Map<Identity, Contacts> contacts) {
+        this.identities = identities;
+
+        // shuffled so the order in which senders are checked does not reveal the contact lists
+        List<Contact> ccc = new ArrayList<>();
+        for (Contacts identityContacts : contacts.values()) {
+            ccc.addAll(identityContacts.getContacts());
+        }
+        Collections.shuffle(ccc, new SecureRandom());
+
+        for (Contact contact : ccc) {
+            List<Contact> candidates = senders.get(contact.getKeyIdentifier());
+            if (candidates == null) {
+                candidates = new ArrayList<>(1);
+                senders.put(contact.getKeyIdentifier(), candidates);
+            }
+            candidates.add(contact);
+        }
+    }
+
+    /**
+     * @return decrypted messages from known senders, in the order of the cipher messages
+     * @throws InterruptedIOException if the thread was interrupted, no message is returned then,
+     *                                so the drop state of a partial result is never stored
+     */
+    public Collection<DropMessage> decrypt(Collection<byte[]> cipherMessages) throws InterruptedIOException {
+        List<Callable<DropMessage>> decryptions = new ArrayList<>(cipherMessages.size());
+        for (byte[] cipherMessage : cipherMessages) {
+            decryptions.add(() -> decrypt(cipherMessage));
+        }
+
+        Collection<DropMessage> plainMessages = new ArrayList<>();
+        try {
+            for (Future<DropMessage> result : DECRYPTION_EXECUTOR.invokeAll(decryptions)) {
+                DropMessage dropMessage = result.get();
+                if (dropMessage != null) {
+                    plainMessages.add(dropMessage);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted =
+                    new InterruptedIOException("Interrupted while decrypting drop messages");
+            interrupted.initCause(e);
+            throw interrupted;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return plainMessages;
+    }
+
+    @Nullable
+    DropMessage decrypt(byte[] cipherMessage) {
+        AbstractBinaryDropMessage binMessage;
+        byte binaryFormatVersion = cipherMessage[0];
+
+        switch (binaryFormatVersion) {
+            case 0:
+                try {
+                    binMessage = new BinaryDropMessageV0(cipherMessage);
+                } catch (QblVersionMismatchException e) {
+                    Log.e(TAG, "Version mismatch in binary drop message", e);
+                    throw new RuntimeException("Version mismatch should not happen", e);
+                } catch (QblDropInvalidMessageSizeException e) {
+                    Log.i(TAG, "Binary drop message version 0 with unexpected size discarded.");
+                    // Invalid message uploads may happen with malicious intent
+                    // or by broken clients. Skip.
+                    return null;
+                }
+                break;
+            default:
+                Log.w(TAG, "Unknown binary drop message version " + binaryFormatVersion);
+                // cannot handle this message -> skip
+                return null;
+        }
+        for (Identity identity : identities.getIdentities()) {
+            DropMessage dropMessage;
+            try {
+                dropMessage = binMessage.disassembleMessage(identity);
+            } catch (QblSpoofedSenderException e) {
+                //TODO: Notify the user about the spoofed message
+                return null;
+            }
+            if (dropMessage != null) {
+                List<Contact> candidates = senders.get(dropMessage.getSenderKeyId());
+                if (candidates != null) {
+                    for (Contact c : candidates) {
+                        if (dropMessage.registerSender(c)) {
+                            return dropMessage;
+                        }
+                    }
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+}
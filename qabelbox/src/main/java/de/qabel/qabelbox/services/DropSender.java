@@ -0,0 +1,229 @@
+package de.qabel.qabelbox.services;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import de.qabel.core.drop.DropURL;
+import de.qabel.desktop.repository.DropOutboxRepository;
+import de.qabel.desktop.repository.exception.PersistenceException;
+import de.qabel.qabelbox.communication.DropHTTPClient;
+import de.qabel.qabelbox.communication.connection.ConnectivityManager;
+import okhttp3.OkHttpClient;
+
+/**
+ * Sends encrypted drop messages through the persistent drop outbox.
+ * <p>
+ * A message is queued once per drop and all drops are posted in parallel on a small pool.
+ * Failed drops stay in the outbox and are retried with exponential backoff, queued messages
+ * of a previous run are picked up when the sender is created and when the device goes online.
+ * An entry is claimed in the outbox before it is posted, so it is never sent twice at once.
+ */
+@Singleton
+public class DropSender {
+
+    private static final String TAG = "DropSender";
+    /**
+     * Maximum number of drop messages posted at the same time
+     */
+    private static final int MAX_PARALLEL_SENDS = 4;
+    /**
+     * Failed attempts while the device was online before a message is given up
+     */
+    static final int MAX_ATTEMPTS = 12;
+    private static final long BASE_BACKOFF_MILLIS = 5 * 1000;
+    private static final long MAX_BACKOFF_MILLIS = 30 * 60 * 1000;
+    /**
+     * How long a claimed entry is skipped by other sends, longer than any post takes.
+     * Entries of a sender which died while posting are sent again after this.
+     */
+    static final long CLAIM_MILLIS = 5 * 60 * 1000;
+
+    private final ScheduledExecutorService sendExecutor = Executors.newScheduledThreadPool(MAX_PARALLEL_SENDS);
+    private final DropOutboxRepository outbox;
+    private final DropHTTPClient dropHTTPClient;
+    private final ConnectivityManager connectivityManager;
+    private final Random random = new Random();
+
+    @Inject
+    public DropSender(DropOutboxRepository outbox, OkHttpClient client, ConnectivityManager connectivityManager) {
+        this.outbox = outbox;
+        this.dropHTTPClient = new DropHTTPClient(client);
+        this.connectivityManager = connectivityManager;
+        connectivityManager.addListener(new ConnectivityManager.ConnectivityListener() {
+            @Override
+            public void handleConnectionLost() {
+            }
+
+            @Override
+            public void handleConnectionEstablished() {
+                sendExecutor.execute(DropSender.this::sendDue);
+            }
+
+            @Override
+            public void onDestroy() {
+            }
+        });
+        sendExecutor.execute(this::sendDue);
+    }
+
+    /**
+     * Queues the message for all drops and posts it. Returns without blocking.
+     *
+     * @param dropResultCallback called once every drop has been tried,
+     *                           drops which failed are retried in the background
+     */
+    public void send(Collection<DropURL> dropURLs, byte[] message,
+                     @Nullable DropConnector.OnSendDropMessageResult dropResultCallback) {
+        Map<DropURL, Boolean> deliveryStatus = new HashMap<>();
+        if (dropURLs.isEmpty()) {
+            Log.e(TAG, "no dropurls in recipient");
+            if (dropResultCallback != null) {
+                sendExecutor.execute(() -> dropResultCallback.onSendDropResult(deliveryStatus));
+            }
+            return;
+        }
+        AtomicInteger pending = new AtomicInteger(dropURLs.size());
+        for (DropURL dropURL : dropURLs) {
+            sendExecutor.execute(() -> {
+                boolean delivered = sendFirst(dropURL, message);
+                synchronized (deliveryStatus) {
+                    deliveryStatus.put(dropURL, delivered);
+                }
+                if (pending.decrementAndGet() == 0 && dropResultCallback != null) {
+                    dropResultCallback.onSendDropResult(deliveryStatus);
+                }
+            });
+        }
+    }
+
+    private boolean sendFirst(DropURL dropURL, byte[] message) {
+        DropOutboxRepository.Entry entry;
+        try {
+            entry = outbox.add(dropURL.getUri().toString(), message, System.currentTimeMillis() + CLAIM_MILLIS);
+        } catch (PersistenceException e) {
+            Log.e(TAG, "Could not queue message for " + dropURL + ", sending without retry", e);
+            try {
+                return post(dropURL.getUri(), message) == HttpURLConnection.HTTP_OK;
+            } catch (IOException ioException) {
+                Log.w(TAG, "Sending to " + dropURL + " failed", ioException);
+                return false;
+            }
+        }
+        return attempt(entry);
+    }
+
+    /**
+     * Sends all queued messages which are due and not claimed by another send.
+     */
+    public void sendDue() {
+        long now = System.currentTimeMillis();
+        Collection<DropOutboxRepository.Entry> entries;
+        try {
+            entries = outbox.findDue(now);
+        } catch (PersistenceException e) {
+            Log.e(TAG, "Could not load drop outbox", e);
+            return;
+        }
+        for (DropOutboxRepository.Entry entry : entries) {
+            sendExecutor.execute(() -> {
+                try {
+                    if (!outbox.claim(entry, now, System.currentTimeMillis() + CLAIM_MILLIS)) {
+                        return;
+                    }
+                } catch (PersistenceException e) {
+                    Log.e(TAG, "Could not claim outbox entry " + entry.getId(), e);
+                    return;
+                }
+                attempt(entry);
+            });
+        }
+    }
+
+    /**
+     * Posts a claimed entry and removes it from the outbox or schedules the next attempt.
+     *
+     * @return true if the message was delivered
+     */
+    private boolean attempt(DropOutboxRepository.Entry entry) {
+        try {
+            int responseCode;
+            try {
+                responseCode = post(URI.create(entry.getDrop()), entry.getMessage());
+            } catch (IOException e) {
+                Log.w(TAG, "Sending to " + entry.getDrop() + " failed", e);
+                if (!connectivityManager.isConnected()) {
+                    // retried when the device is online again, without using up an attempt
+                    outbox.reschedule(entry, System.currentTimeMillis());
+                    return false;
+                }
+                responseCode = -1;
+            }
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                outbox.delete(entry);
+                return true;
+            }
+            if (isPermanentError(responseCode)) {
+                Log.e(TAG, "Drop " + entry.getDrop() + " rejected message with " + responseCode);
+                outbox.delete(entry);
+            } else {
+                reschedule(entry);
+            }
+        } catch (PersistenceException e) {
+            Log.e(TAG, "Could not update drop outbox", e);
+        }
+        return false;
+    }
+
+    private void reschedule(DropOutboxRepository.Entry entry) throws PersistenceException {
+        entry.addFailedAttempt();
+        if (entry.getAttempts() >= MAX_ATTEMPTS) {
+            Log.e(TAG, "Giving up on message for " + entry.getDrop() + " after " + entry.getAttempts() + " attempts");
+            outbox.delete(entry);
+            return;
+        }
+        long delay = getBackoffDelay(entry.getAttempts());
+        outbox.reschedule(entry, System.currentTimeMillis() + delay);
+        sendExecutor.schedule(this::sendDue, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Exponential backoff with jitter, see {@link de.qabel.qabelbox.communication.RequestAction}
+     */
+    long getBackoffDelay(int attempts) {
+        long delay = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempts - 1, 16));
+        return delay / 2 + (long) (random.nextDouble() * (delay / 2));
+    }
+
+    /**
+     * Client errors except timeouts and throttling won't go away by sending the same message again
+     */
+    static boolean isPermanentError(int responseCode) {
+        return responseCode >= 400 && responseCode < 500
+                && responseCode != HttpURLConnection.HTTP_CLIENT_TIMEOUT
+                && responseCode != 429;
+    }
+
+    /**
+     * Posts an encrypted message to a drop.
+     *
+     * @return response code of the drop server
+     */
+    protected int post(URI drop, byte[] message) throws IOException {
+        return dropHTTPClient.sendMessage(drop, message);
+    }
+}
@@ -3,14 +3,17 @@ package de.qabel.qabelbox.services;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import java.io.IOException;
 import java.net.URI;
-import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 
@@ -18,35 +21,46 @@ import de.qabel.core.config.Contact;
 import de.qabel.core.config.Contacts;
 import de.qabel.core.config.Identities;
 import de.qabel.core.config.Identity;
-import de.qabel.core.crypto.AbstractBinaryDropMessage;
 import de.qabel.core.crypto.BinaryDropMessageV0;
 import de.qabel.core.drop.DropMessage;
 import de.qabel.core.drop.DropURL;
-import de.qabel.core.exceptions.QblDropInvalidMessageSizeException;
 import de.qabel.core.exceptions.QblDropPayloadSizeException;
-import de.qabel.core.exceptions.QblSpoofedSenderException;
-import de.qabel.core.exceptions.QblVersionMismatchException;
-import de.qabel.core.http.DropHTTP;
-import de.qabel.core.http.HTTPResult;
 import de.qabel.desktop.repository.ContactRepository;
+import de.qabel.desktop.repository.DropStateRepository;
 import de.qabel.desktop.repository.IdentityRepository;
+import de.qabel.desktop.repository.exception.EntityNotFoundExcepion;
 import de.qabel.desktop.repository.exception.PersistenceException;
+import de.qabel.qabelbox.communication.DropHTTPClient;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
 
 public class HttpDropConnector implements DropConnector {
     private static final String TAG = "HttpDropConnector";
-    private DropHTTP dropHTTP;
+    /**
+     * Maximum number of drops fetched at the same time, shared by all identities
+     */
+    private static final int MAX_PARALLEL_FETCHES = 4;
+    private static final ExecutorService FETCH_EXECUTOR = Executors.newFixedThreadPool(MAX_PARALLEL_FETCHES);
+    private DropHTTPClient dropHTTPClient;
+    private DropSender dropSender;
     private IdentityRepository identityRepository;
     private ContactRepository contactRepository;
+    private DropStateRepository dropStateRepository;
 
     @Inject
-    public HttpDropConnector(IdentityRepository identityRepository, ContactRepository contactRepository) {
+    public HttpDropConnector(IdentityRepository identityRepository, ContactRepository contactRepository,
+                             DropStateRepository dropStateRepository, DropSender dropSender,
+                             OkHttpClient client) {
         this.identityRepository = identityRepository;
         this.contactRepository = contactRepository;
-        this.dropHTTP = new DropHTTP();
+        this.dropStateRepository = dropStateRepository;
+        this.dropSender = dropSender;
+        this.dropHTTPClient = new DropHTTPClient(client);
     }
 
     /**
-     * Sends {@link DropMessage} to a {@link Contact} in a new thread. Returns without blocking.
+     * Queues {@link DropMessage} for all drops of a {@link Contact} and sends it in the background.
+     * Returns without blocking.
      *
      * @param dropMessage        {@link DropMessage} to send.
      * @param recipient          {@link Contact} to send {@link DropMessage} to.
@@ -59,56 +73,40 @@ public class HttpDropConnector implements DropConnector {
                                 final Identity identity,
                                 @Nullable final LocalQabelService.OnSendDropMessageResult dropResultCallback)
             throws QblDropPayloadSizeException {
-        new Thread(new Runnable() {
-            final BinaryDropMessageV0 binaryMessage = new BinaryDropMessageV0(dropMessage);
-            final byte[] messageByteArray = binaryMessage.assembleMessageFor(recipient, identity);
-            HashMap<DropURL, Boolean> deliveryStatus = new HashMap<>();
-
-            @Override
-            public void run() {
-                if (recipient.getDropUrls().size() == 0) {
-                    Log.e(TAG, "no dropurls in recipient");
-                }
-                for (DropURL dropURL : recipient.getDropUrls()) {
-                    HTTPResult<?> dropResult = dropHTTPsend(dropURL, messageByteArray);
-                    if (dropResult.getResponseCode() == 200) {
-                        deliveryStatus.put(dropURL, true);
-                    } else {
-                        deliveryStatus.put(dropURL, false);
-                    }
-                }
-                if (dropResultCallback != null) {
-                    dropResultCallback.onSendDropResult(deliveryStatus);
-                }
-            }
-        }).start();
+        byte[] messageByteArray = new BinaryDropMessageV0(dropMessage).assembleMessageFor(recipient, identity);
+        dropSender.send(recipient.getDropUrls(), messageByteArray, dropResultCallback);
     }
 
-    /**
-     * Send DropMessages via DropHTTP. Method extracted to mock send in LocalQabelServiceTester.
-     *
-     * @param dropURL DropURL to send DropMessage to.
-     * @param message Encrypted DropMessage
-     * @return
-     */
-    HTTPResult<?> dropHTTPsend(DropURL dropURL, byte[] message) {
-        return dropHTTP.send(dropURL.getUri(), message);
-    }
-
-
     /**
      * Retrieves all DropMessages for given Identities
      *
-     * @return Retrieved, decrypted DropMessages.
+     * @param sinceDate only used for drops without a stored state
+     * @return Retrieved, decrypted DropMessages and the new drop states to store with them.
      */
     @Override
-    public Collection<DropMessage> retrieveDropMessages(Identity identity, long sinceDate) {
-        Collection<DropMessage> allMessages = new ArrayList<>();
+    public RetrievedDropMessages retrieveDropMessages(Identity identity, long sinceDate) {
+        return retrieveDropMessages(identity, sinceDate, createDecryptor());
+    }
 
+    @Override
+    public RetrievedDropMessages retrieveDropMessages(Identity identity, long sinceDate,
+                                                      DropMessageDecryptor decryptor) {
+        List<Future<RetrievedDropMessages>> fetches = new ArrayList<>();
         for (DropURL dropUrl : identity.getDropUrls()) {
-            Collection<DropMessage> results = this.retrieveDropMessages(dropUrl.getUri(), sinceDate);
-            allMessages.addAll(results);
+            fetches.add(FETCH_EXECUTOR.submit(() -> retrieveDropMessages(dropUrl.getUri(), sinceDate, decryptor)));
+        }
 
+        RetrievedDropMessages allMessages = new RetrievedDropMessages();
+        for (Future<RetrievedDropMessages> fetch : fetches) {
+            try {
+                allMessages.addAll(fetch.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                Log.w(TAG, "Interrupted while retrieving drop messages", e);
+                break;
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Could not retrieve drop messages", e.getCause());
+            }
         }
         return allMessages;
     }
@@ -119,61 +117,92 @@ public class HttpDropConnector implements DropConnector {
      * @param uri URI where to retrieve the drop from
      * @return Retrieved, decrypted DropMessages.
      */
-    public Collection<DropMessage> retrieveDropMessages(URI uri, long sinceDate) {
-        HTTPResult<Collection<byte[]>> cipherMessages = getDropMessages(uri, sinceDate);
-        Collection<DropMessage> plainMessages = new ArrayList<>();
+    public RetrievedDropMessages retrieveDropMessages(URI uri, long sinceDate) throws IOException {
+        return retrieveDropMessages(uri, sinceDate, createDecryptor());
+    }
+
+    /**
+     * Fetches only the messages which are newer than the stored state of the drop.
+     * The new state is returned with the messages and must be stored together with them.
+     */
+    private RetrievedDropMessages retrieveDropMessages(URI uri, long sinceDate, DropMessageDecryptor decryptor)
+            throws IOException {
+        String since = getSince(uri, sinceDate);
+        Log.v(TAG, "retrieveDropMessage: " + uri + " since: " + since);
+        return processResult(uri, since, dropHTTPClient.receiveMessages(uri, since), decryptor);
+    }
+
+    /**
+     * Prepares a long-poll of the drop, it waits until new messages arrive or the timeout expires.
+     */
+    public LongPoll newLongPoll(URI uri, long sinceDate, int timeoutSeconds) {
+        String since = getSince(uri, sinceDate);
+        return new LongPoll(uri, since, dropHTTPClient.newPollCall(uri, since, timeoutSeconds));
+    }
 
-        List<Contact> ccc = new ArrayList<>();
-        for (Contacts contacts: getAllContacts().values()) {
-            ccc.addAll(contacts.getContacts());
+    /**
+     * A single long-poll request which can be cancelled from another thread while it waits
+     */
+    public class LongPoll {
+        private final URI uri;
+        private final String since;
+        private final Call call;
+
+        LongPoll(URI uri, @Nullable String since, Call call) {
+            this.uri = uri;
+            this.since = since;
+            this.call = call;
         }
-        Collections.shuffle(ccc, new SecureRandom());
-
-        for (byte[] cipherMessage : cipherMessages.getData()) {
-            AbstractBinaryDropMessage binMessage;
-            byte binaryFormatVersion = cipherMessage[0];
-
-            switch (binaryFormatVersion) {
-                case 0:
-                    try {
-                        binMessage = new BinaryDropMessageV0(cipherMessage);
-                    } catch (QblVersionMismatchException e) {
-                        Log.e(TAG, "Version mismatch in binary drop message", e);
-                        throw new RuntimeException("Version mismatch should not happen", e);
-                    } catch (QblDropInvalidMessageSizeException e) {
-                        Log.i(TAG, "Binary drop message version 0 with unexpected size discarded.");
-                        // Invalid message uploads may happen with malicious intent
-                        // or by broken clients. Skip.
-                        continue;
-                    }
-                    break;
-                default:
-                    Log.w(TAG, "Unknown binary drop message version " + binaryFormatVersion);
-                    // cannot handle this message -> skip
-                    continue;
-            }
-            for (Identity identity : getIdentities().getIdentities()) {
-                DropMessage dropMessage;
-                try {
-                    dropMessage = binMessage.disassembleMessage(identity);
-                } catch (QblSpoofedSenderException e) {
-                    //TODO: Notify the user about the spoofed message
-                    break;
-                }
-                if (dropMessage != null) {
-                    for (Contact c : ccc) {
-                        if (c.getKeyIdentifier().equals(dropMessage.getSenderKeyId())) {
-                            if (dropMessage.registerSender(c)) {
-                                plainMessages.add(dropMessage);
-                                break;
-                            }
-                        }
-                    }
-                    break;
-                }
-            }
+
+        /**
+         * @return new messages, empty if the timeout expired or the server does not support long-polling
+         * @throws IOException if the request failed or was cancelled
+         */
+        public RetrievedDropMessages execute() throws IOException {
+            return processResult(uri, since, DropHTTPClient.receive(call), createDecryptor());
+        }
+
+        public void cancel() {
+            call.cancel();
+        }
+    }
+
+    @Nullable
+    private String getSince(URI uri, long sinceDate) {
+        String since = getDropState(uri.toString());
+        if (since == null) {
+            since = DropHTTPClient.formatDate(sinceDate);
+        }
+        return since;
+    }
+
+    private RetrievedDropMessages processResult(URI uri, @Nullable String since,
+                                                DropHTTPClient.DropResult result,
+                                                DropMessageDecryptor decryptor) throws IOException {
+        Collection<DropMessage> messages = new ArrayList<>(decryptor.decrypt(result.getMessages()));
+        Map<String, String> dropStates = new HashMap<>();
+        if (result.getState() != null && !result.getState().equals(since)) {
+            dropStates.put(uri.toString(), result.getState());
+        }
+        return new RetrievedDropMessages(messages, dropStates);
+    }
+
+    @Nullable
+    private String getDropState(String drop) {
+        try {
+            return dropStateRepository.getDropState(drop);
+        } catch (EntityNotFoundExcepion e) {
+            return null;
+        } catch (PersistenceException e) {
+            Log.w(TAG, "Could not load state of drop " + drop, e);
+            return null;
         }
-        return plainMessages;
+    }
+
+    @Override
+    public DropMessageDecryptor createDecryptor() {
+        Identities identities = getIdentities();
+        return new DropMessageDecryptor(identities, getAllContacts(identities));
     }
 
     private Identities getIdentities() {
@@ -184,10 +213,10 @@ public class HttpDropConnector implements DropConnector {
         }
     }
 
-    private Map<Identity, Contacts> getAllContacts() {
+    private Map<Identity, Contacts> getAllContacts(Identities identities) {
         try {
             Map<Identity, Contacts> contacts = new HashMap<>();
-            for (Identity identity: getIdentities().getIdentities()) {
+            for (Identity identity: identities.getIdentities()) {
                 contacts.put(identity, contactRepository.find(identity));
             }
             return contacts;
@@ -195,15 +224,4 @@ public class HttpDropConnector implements DropConnector {
             throw new IllegalStateException("Could not retrieve Identities", e);
         }
     }
-
-    /**
-     * Receives DropMessages via DropHTTP. Method extracted to mock receive in LocalQabelServiceTester.
-     *
-     * @param uri URI to receive DropMessages from
-     * @return HTTPResult with collection of encrypted DropMessages.
-     */
-    HTTPResult<Collection<byte[]>> getDropMessages(URI uri, long sinceDate) {
-        Log.v(TAG, "retrieveDropMessage: " + uri.toString() + " at: " + sinceDate);
-        return dropHTTP.receiveMessages(uri, sinceDate);
-    }
 }
@@ -10,11 +10,10 @@ import android.util.Log;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.InterruptedIOException;
 import java.net.URI;
-import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -24,28 +23,24 @@ import de.qabel.core.config.Contact;
 import de.qabel.core.config.Contacts;
 import de.qabel.core.config.Identities;
 import de.qabel.core.config.Identity;
-import de.qabel.core.crypto.AbstractBinaryDropMessage;
 import de.qabel.core.crypto.BinaryDropMessageV0;
 import de.qabel.core.drop.DropMessage;
 import de.qabel.core.drop.DropURL;
-import de.qabel.core.exceptions.QblDropInvalidMessageSizeException;
 import de.qabel.core.exceptions.QblDropPayloadSizeException;
 import de.qabel.core.exceptions.QblInvalidEncryptionKeyException;
-import de.qabel.core.exceptions.QblSpoofedSenderException;
-import de.qabel.core.exceptions.QblVersionMismatchException;
 import de.qabel.core.http.DropHTTP;
 import de.qabel.core.http.HTTPResult;
 import de.qabel.desktop.repository.ContactRepository;
 import de.qabel.desktop.repository.IdentityRepository;
 import de.qabel.desktop.repository.exception.EntityNotFoundExcepion;
 import de.qabel.desktop.repository.exception.PersistenceException;
-import de.qabel.desktop.repository.sqlite.AndroidClientDatabase;
+import de.qabel.qabelbox.QabelBoxApplication;
 import de.qabel.qabelbox.config.AppPreference;
+import de.qabel.qabelbox.dagger.components.ApplicationComponent;
 import de.qabel.qabelbox.exceptions.QblStorageEntityExistsException;
 import de.qabel.qabelbox.persistence.AndroidPersistence;
-import de.qabel.qabelbox.persistence.PersistenceMigration;
+import de.qabel.qabelbox.persistence.LegacyContactsBackfill;
 import de.qabel.qabelbox.persistence.QblSQLiteParams;
-import de.qabel.qabelbox.persistence.RepositoryFactory;
 
 public class LocalQabelService extends Service implements DropConnector {
 
@@ -56,8 +51,8 @@ public class LocalQabelService extends Service implements DropConnector {
 
     private final IBinder mBinder = new LocalBinder();
 
-    protected static final String DB_NAME = "qabel-service";
-    protected static final int DB_VERSION = 1;
+    protected static final String DB_NAME = LegacyContactsBackfill.DATABASE_NAME;
+    protected static final int DB_VERSION = LegacyContactsBackfill.DATABASE_VERSION;
     protected AndroidPersistence persistence;
     private DropHTTP dropHTTP;
 
@@ -65,6 +60,7 @@ public class LocalQabelService extends Service implements DropConnector {
 
     private IdentityRepository identityRepository;
     private ContactRepository contactRepository;
+    private DropSender dropSender;
 
     protected String getLastActiveIdentityID() {
         return appPreferences.getLastActiveIdentityKey();
@@ -183,6 +179,19 @@ public class LocalQabelService extends Service implements DropConnector {
         }
     }
 
+    /**
+     * Adds all contacts which are not contacts of the identity yet with one transaction
+     *
+     * @return number of added contacts
+     */
+    public int addContacts(Collection<Contact> contacts, Identity identity) {
+        try {
+            return contactRepository.addAll(contacts, identity);
+        } catch (PersistenceException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public void deleteContact(Contact contact) {
         try {
             contactRepository.delete(contact, getActiveIdentity());
@@ -217,7 +226,8 @@ public class LocalQabelService extends Service implements DropConnector {
     }
 
     /**
-     * Sends {@link DropMessage} to a {@link Contact} in a new thread. Returns without blocking.
+     * Queues {@link DropMessage} for all drops of a {@link Contact} and sends it in the background.
+     * Returns without blocking.
      *
      * @param dropMessage        {@link DropMessage} to send.
      * @param recipient          {@link Contact} to send {@link DropMessage} to.
@@ -230,58 +240,35 @@ public class LocalQabelService extends Service implements DropConnector {
                                 final Identity identity,
                                 @Nullable final OnSendDropMessageResult dropResultCallback)
             throws QblDropPayloadSizeException {
-        new Thread(new Runnable() {
-            final BinaryDropMessageV0 binaryMessage = new BinaryDropMessageV0(dropMessage);
-            final byte[] messageByteArray = binaryMessage.assembleMessageFor(recipient, identity);
-            HashMap<DropURL, Boolean> deliveryStatus = new HashMap<>();
-
-            @Override
-            public void run() {
-                if (recipient.getDropUrls().size() == 0) {
-                    Log.e(TAG, "no dropurls in recipient");
-                }
-                for (DropURL dropURL : recipient.getDropUrls()) {
-                    HTTPResult<?> dropResult = dropHTTPsend(dropURL, messageByteArray);
-                    if (dropResult.getResponseCode() == 200) {
-                        deliveryStatus.put(dropURL, true);
-                    } else {
-                        deliveryStatus.put(dropURL, false);
-                    }
-                }
-                if (dropResultCallback != null) {
-                    dropResultCallback.onSendDropResult(deliveryStatus);
-                }
-            }
-        }).start();
+        byte[] messageByteArray = new BinaryDropMessageV0(dropMessage).assembleMessageFor(recipient, identity);
+        dropSender.send(recipient.getDropUrls(), messageByteArray, dropResultCallback);
     }
 
+
     /**
-     * Send DropMessages via DropHTTP. Method extracted to mock send in LocalQabelServiceTester.
+     * Retrieves all DropMessages for given Identities
      *
-     * @param dropURL DropURL to send DropMessage to.
-     * @param message Encrypted DropMessage
-     * @return
+     * @return Retrieved, decrypted DropMessages.
      */
-    HTTPResult<?> dropHTTPsend(DropURL dropURL, byte[] message) {
-        return dropHTTP.send(dropURL.getUri(), message);
+    @Override
+    public RetrievedDropMessages retrieveDropMessages(Identity identity, long sinceDate) {
+        return retrieveDropMessages(identity, sinceDate, createDecryptor());
     }
 
-
     /**
-     * Retrieves all DropMessages for given Identities
-     *
-     * @return Retrieved, decrypted DropMessages.
+     * Drops are fetched by date here, there are no drop states to store
      */
     @Override
-    public Collection<DropMessage> retrieveDropMessages(Identity identity, long sinceDate) {
+    public RetrievedDropMessages retrieveDropMessages(Identity identity, long sinceDate,
+                                                      DropMessageDecryptor decryptor) {
         Collection<DropMessage> allMessages = new ArrayList<>();
 
         for (DropURL dropUrl : identity.getDropUrls()) {
-            Collection<DropMessage> results = this.retrieveDropMessages(dropUrl.getUri(), sinceDate);
+            Collection<DropMessage> results = this.retrieveDropMessages(dropUrl.getUri(), sinceDate, decryptor);
             allMessages.addAll(results);
 
         }
-        return allMessages;
+        return new RetrievedDropMessages(allMessages);
     }
 
     /**
@@ -291,60 +278,22 @@ public class LocalQabelService extends Service implements DropConnector {
      * @return Retrieved, decrypted DropMessages.
      */
     public Collection<DropMessage> retrieveDropMessages(URI uri, long sinceDate) {
-        HTTPResult<Collection<byte[]>> cipherMessages = getDropMessages(uri, sinceDate);
-        Collection<DropMessage> plainMessages = new ArrayList<>();
+        return retrieveDropMessages(uri, sinceDate, createDecryptor());
+    }
 
-        List<Contact> ccc = new ArrayList<>();
-        for (Contacts contacts : getAllContacts().values()) {
-            ccc.addAll(contacts.getContacts());
+    private Collection<DropMessage> retrieveDropMessages(URI uri, long sinceDate, DropMessageDecryptor decryptor) {
+        HTTPResult<Collection<byte[]>> cipherMessages = getDropMessages(uri, sinceDate);
+        try {
+            return decryptor.decrypt(cipherMessages.getData());
+        } catch (InterruptedIOException e) {
+            Log.w(TAG, "Interrupted while retrieving drop messages", e);
+            return new ArrayList<>();
         }
-        Collections.shuffle(ccc, new SecureRandom());
-
-        for (byte[] cipherMessage : cipherMessages.getData()) {
-            AbstractBinaryDropMessage binMessage;
-            byte binaryFormatVersion = cipherMessage[0];
+    }
 
-            switch (binaryFormatVersion) {
-                case 0:
-                    try {
-                        binMessage = new BinaryDropMessageV0(cipherMessage);
-                    } catch (QblVersionMismatchException e) {
-                        LOGGER.error("Version mismatch in binary drop message", e);
-                        throw new RuntimeException("Version mismatch should not happen", e);
-                    } catch (QblDropInvalidMessageSizeException e) {
-                        LOGGER.info("Binary drop message version 0 with unexpected size discarded.");
-                        // Invalid message uploads may happen with malicious intent
-                        // or by broken clients. Skip.
-                        continue;
-                    }
-                    break;
-                default:
-                    LOGGER.warn("Unknown binary drop message version " + binaryFormatVersion);
-                    // cannot handle this message -> skip
-                    continue;
-            }
-            for (Identity identity : getIdentities().getIdentities()) {
-                DropMessage dropMessage;
-                try {
-                    dropMessage = binMessage.disassembleMessage(identity);
-                } catch (QblSpoofedSenderException e) {
-                    //TODO: Notify the user about the spoofed message
-                    break;
-                }
-                if (dropMessage != null) {
-                    for (Contact c : ccc) {
-                        if (c.getKeyIdentifier().equals(dropMessage.getSenderKeyId())) {
-                            if (dropMessage.registerSender(c)) {
-                                plainMessages.add(dropMessage);
-                                break;
-                            }
-                        }
-                    }
-                    break;
-                }
-            }
-        }
-        return plainMessages;
+    @Override
+    public DropMessageDecryptor createDecryptor() {
+        return new DropMessageDecryptor(getIdentities(), getAllContacts());
     }
 
     /**
@@ -376,28 +325,29 @@ public class LocalQabelService extends Service implements DropConnector {
         Log.i(TAG, "LocalQabelService created");
         dropHTTP = new DropHTTP();
         initRepositories();
-        try {
-            migratePersistence();
-        } catch (EntityNotFoundExcepion | PersistenceException e) {
-            Log.e(TAG, "Migration of identities and contatcs failed", e);
-        }
         appPreferences = new AppPreference(getApplicationContext());
     }
 
-    private void migratePersistence() throws EntityNotFoundExcepion, PersistenceException {
-        initAndroidPersistence();
-        PersistenceMigration.migrate(persistence, identityRepository, contactRepository);
-    }
-
     public AndroidPersistence getPersistence() {
         return persistence;
     }
 
+    /**
+     * Uses the client database of the app, which migrates the legacy persistence in the background
+     */
     public void initRepositories() {
-        RepositoryFactory repositoryFactory = new RepositoryFactory(getApplicationContext());
-        AndroidClientDatabase androidClientDatabase = repositoryFactory.getAndroidClientDatabase();
-        identityRepository = repositoryFactory.getIdentityRepository(androidClientDatabase);
-        contactRepository = repositoryFactory.getContactRepository(androidClientDatabase);
+        ApplicationComponent component = QabelBoxApplication.getApplicationComponent(getApplicationContext());
+        identityRepository = component.identityRepository();
+        contactRepository = component.contactRepository();
+        dropSender = createDropSender();
+    }
+
+    /**
+     * The sender is shared with the rest of the app, so each outbox entry has a single sender.
+     * Method extracted to mock send in LocalQabelServiceTester.
+     */
+    protected DropSender createDropSender() {
+        return QabelBoxApplication.getApplicationComponent(getApplicationContext()).dropSender();
     }
 
     protected void initAndroidPersistence() {
@@ -1,27 +1,35 @@
 package de.qabel.qabelbox.services;
 
+import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.ContentProvider;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.content.UriMatcher;
 import android.database.Cursor;
-import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 import android.os.IBinder;
+import android.text.TextUtils;
 import android.util.Log;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import de.qabel.QabelContentProviderConstants;
-import de.qabel.core.config.Contact;
-import de.qabel.core.config.Contacts;
-import de.qabel.core.config.Identity;
 import de.qabel.qabelbox.BuildConfig;
+import de.qabel.qabelbox.QblBroadcastConstants;
+import de.qabel.qabelbox.helper.Helper;
+import de.qabel.qabelbox.persistence.RepositoryFactory;
 
 /**
  * QabelResourceProvider provides access to Qabel resources like Contacts and Identities for
@@ -30,6 +38,12 @@ import de.qabel.qabelbox.BuildConfig;
  * QabelResourceProvider hosts the ResourceActorThread and requires the database to be unlocked.
  * Thus before IQabelServiceInternal.RESOURCES_INITIALIZED is received, the provider will only
  * return null values.
+ * <p>
+ * Queries run directly on the client database and support projection, selection and sort order
+ * on the public column names, and paging with the limit and offset query parameters.
+ * A selection may only compare public columns with arguments like {@code "owner_id = ? AND name = ?"},
+ * a sort order may only list public columns with ASC or DESC. Other SQL is rejected,
+ * because the client database also holds the private keys and messages.
  */
 public class QabelContentProvider extends ContentProvider {
 
@@ -38,15 +52,50 @@ public class QabelContentProvider extends ContentProvider {
     private static final int IDENTITIES = 2;
     private static final String TAG = "QabelContentProvider";
     private static final String CONTENT_AUTHORITY = BuildConfig.APPLICATION_ID + ".services.QabelContentProvider";
+    private static final Uri CONTACTS_URI =
+            Uri.parse("content://" + CONTENT_AUTHORITY + "/" + QabelContentProviderConstants.CONTENT_CONTACTS);
+    private static final Uri IDENTITIES_URI =
+            Uri.parse("content://" + CONTENT_AUTHORITY + "/" + QabelContentProviderConstants.CONTENT_IDENTITIES);
+    private static final String DEFAULT_SORT_ORDER = "name";
+    private static final Pattern SELECTION_TERM = Pattern.compile("\\s*(\\w+)\\s*=\\s*\\?\\s*");
+    private static final Pattern SELECTION_AND = Pattern.compile("\\s+AND\\s+", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SORT_TERM = Pattern.compile(
+            "\\s*(\\w+)(?:\\s+(ASC|DESC))?\\s*", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Contacts of all identities with the public column names, SQLite flattens the subquery into the outer query
+     */
+    private static final String CONTACTS_TABLE = "(SELECT c.alias AS name, c2.publicKey AS owner_id, c.publicKey AS id " +
+            "FROM contact c " +
+            "JOIN identity_contacts ic ON (c.id = ic.contact_id) " +
+            "JOIN identity i ON (ic.identity_id = i.id) " +
+            "JOIN contact c2 ON (i.contact_id = c2.id))";
+    private static final String IDENTITIES_TABLE = "(SELECT c.alias AS name, c.publicKey AS id " +
+            "FROM identity i " +
+            "JOIN contact c ON (i.contact_id = c.id))";
 
     private boolean resourcesReady = false;
+    private SQLiteDatabase database;
 
     static {
         uriMatcher.addURI(CONTENT_AUTHORITY, QabelContentProviderConstants.CONTENT_CONTACTS, CONTACTS);
         uriMatcher.addURI(CONTENT_AUTHORITY, QabelContentProviderConstants.CONTENT_IDENTITIES, IDENTITIES);
     }
 
-    private LocalQabelService mService;
+    private BroadcastReceiver contactsChangedReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            context.getContentResolver().notifyChange(CONTACTS_URI, null);
+        }
+    };
+
+    private BroadcastReceiver identitiesChangedReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            context.getContentResolver().notifyChange(IDENTITIES_URI, null);
+            context.getContentResolver().notifyChange(CONTACTS_URI, null);
+        }
+    };
 
     public QabelContentProvider() {
     }
@@ -54,60 +103,134 @@ public class QabelContentProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         Context context = getContext();
-        Intent intent = new Intent(context, LocalQabelService.class);
         if (context == null) {
             Log.e(TAG, "Cannot create service without context");
             return false;
         }
+        Intent intent = new Intent(context, LocalQabelService.class);
         context.bindService(intent, new ServiceConnection() {
             @Override
             public void onServiceConnected(ComponentName name, IBinder service) {
-                LocalQabelService.LocalBinder binder = (LocalQabelService.LocalBinder) service;
-                mService = binder.getService();
                 resourcesReady = true;
             }
 
             @Override
             public void onServiceDisconnected(ComponentName name) {
                 resourcesReady = false;
-                mService = null;
             }
         }, Context.BIND_AUTO_CREATE);
 
+        context.registerReceiver(contactsChangedReceiver,
+                new IntentFilter(Helper.INTENT_REFRESH_CONTACTLIST));
+        context.registerReceiver(identitiesChangedReceiver,
+                new IntentFilter(QblBroadcastConstants.Storage.BOX_VOLUMES_CHANGES));
+
         return true;
     }
 
-    private Cursor queryContacts() {
-        MatrixCursor cursor = new MatrixCursor(QabelContentProviderConstants.CONTACT_COLUMN_NAMES);
+    /**
+     * The database is opened on the first query, after the service migrated it
+     */
+    private synchronized SQLiteDatabase getDatabase() {
+        if (database == null) {
+            database = new RepositoryFactory(getContext()).openSqliteDatabase();
+        }
+        return database;
+    }
 
-        for (Contacts contacts : mService.getAllContacts().values()) {
-            for (Contact contact : contacts.getContacts()) {
-                String[] values = new String[]{contact.getAlias(),
-                        contacts.getIdentity().getKeyIdentifier(),
-                        contact.getKeyIdentifier()};
-                cursor.addRow(values);
-            }
+    private Cursor query(String table, String[] columns, Uri notificationUri, Uri uri, String[] projection,
+                         String selection, String[] selectionArgs, String sortOrder) {
+        Map<String, String> projectionMap = new HashMap<>();
+        for (String column : columns) {
+            projectionMap.put(column, column);
         }
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(table);
+        builder.setProjectionMap(projectionMap);
+        builder.setStrict(true);
+
+        Cursor cursor = builder.query(getDatabase(),
+                projection == null ? columns : projection,
+                getSelection(selection, selectionArgs, columns), selectionArgs, null, null,
+                sortOrder == null ? DEFAULT_SORT_ORDER : getSortOrder(sortOrder, columns),
+                getLimit(uri));
+        cursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
         return cursor;
     }
 
-    private Cursor queryIdentities() {
-        MatrixCursor cursor = new MatrixCursor(QabelContentProviderConstants.IDENTITIES_COLUMN_NAMES);
+    /**
+     * Rebuilds the selection from its column comparisons, so no other SQL reaches the database
+     *
+     * @return the selection with one argument per public column, null to select all rows
+     * @throws IllegalArgumentException if the selection is anything else
+     */
+    static String getSelection(String selection, String[] selectionArgs, String[] columns) {
+        if (selection == null || selection.trim().isEmpty()) {
+            return null;
+        }
+        List<String> terms = new ArrayList<>();
+        for (String term : SELECTION_AND.split(selection)) {
+            Matcher matcher = SELECTION_TERM.matcher(term);
+            if (!matcher.matches() || !isColumn(matcher.group(1), columns)) {
+                throw new IllegalArgumentException("Unsupported selection: " + selection);
+            }
+            terms.add(matcher.group(1) + " = ?");
+        }
+        if (selectionArgs == null || selectionArgs.length != terms.size()) {
+            throw new IllegalArgumentException("Expected " + terms.size() + " selection arguments");
+        }
+        return TextUtils.join(" AND ", terms);
+    }
 
-        ArrayList<Identity> returnedIdentityList = new ArrayList<>(
-                mService.getIdentities().getIdentities());
-        Collections.sort(returnedIdentityList, new Comparator<Identity>() {
-            @Override
-            public int compare(Identity lhs, Identity rhs) {
-                return lhs.getAlias().compareTo(rhs.getAlias());
+    /**
+     * @return the sort order rebuilt from public columns and their directions
+     * @throws IllegalArgumentException if the sort order contains anything else
+     */
+    static String getSortOrder(String sortOrder, String[] columns) {
+        List<String> terms = new ArrayList<>();
+        for (String term : sortOrder.split(",")) {
+            Matcher matcher = SORT_TERM.matcher(term);
+            if (!matcher.matches() || !isColumn(matcher.group(1), columns)) {
+                throw new IllegalArgumentException("Unsupported sort order: " + sortOrder);
             }
-        });
+            String direction = matcher.group(2);
+            terms.add(direction == null ? matcher.group(1) : matcher.group(1) + " " + direction.toUpperCase(Locale.US));
+        }
+        return TextUtils.join(", ", terms);
+    }
 
-        for (Identity identity : returnedIdentityList) {
-            String[] values = new String[]{identity.getAlias(), identity.getKeyIdentifier()};
-            cursor.addRow(values);
+    private static boolean isColumn(String name, String[] columns) {
+        for (String column : columns) {
+            if (column.equals(name)) {
+                return true;
+            }
         }
-        return cursor;
+        return false;
+    }
+
+    /**
+     * @return the LIMIT clause for the limit and offset parameters of the uri, null for all rows
+     */
+    private static String getLimit(Uri uri) {
+        String limit = uri.getQueryParameter(QabelContentProviderConstants.PARAM_LIMIT);
+        String offset = uri.getQueryParameter(QabelContentProviderConstants.PARAM_OFFSET);
+        if (limit == null && offset == null) {
+            return null;
+        }
+        int rows = limit == null ? Integer.MAX_VALUE : parseNonNegative(limit);
+        int skipped = offset == null ? 0 : parseNonNegative(offset);
+        return skipped + "," + rows;
+    }
+
+    private static int parseNonNegative(String value) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= 0) {
+                return number;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException("Invalid limit or offset: " + value);
     }
 
     @Override
@@ -117,10 +240,12 @@ public class QabelContentProvider extends ContentProvider {
         }
         switch (uriMatcher.match(uri)) {
             case CONTACTS: {
-                return queryContacts();
+                return query(CONTACTS_TABLE, QabelContentProviderConstants.CONTACT_COLUMN_NAMES, CONTACTS_URI,
+                        uri, projection, selection, selectionArgs, sortOrder);
             }
             case IDENTITIES: {
-                return queryIdentities();
+                return query(IDENTITIES_TABLE, QabelContentProviderConstants.IDENTITIES_COLUMN_NAMES, IDENTITIES_URI,
+                        uri, projection, selection, selectionArgs, sortOrder);
             }
             default:
         }
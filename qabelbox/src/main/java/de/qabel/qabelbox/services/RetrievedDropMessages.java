@@ -0,0 +1,50 @@
+package de.qabel.qabelbox.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.qabel.core.drop.DropMessage;
+
+/**
+ * Decrypted messages of one retrieval together with the new states of the drops they came from.
+ * <p>
+ * The states must only be saved together with the messages, otherwise a failed store would
+ * skip the messages on the next retrieval.
+ */
+public class RetrievedDropMessages {
+
+    private final Collection<DropMessage> messages;
+    private final Map<String, String> dropStates;
+
+    public RetrievedDropMessages() {
+        this(new ArrayList<>(), new HashMap<>());
+    }
+
+    public RetrievedDropMessages(Collection<DropMessage> messages) {
+        this(messages, new HashMap<>());
+    }
+
+    public RetrievedDropMessages(Collection<DropMessage> messages, Map<String, String> dropStates) {
+        this.messages = messages;
+        this.dropStates = dropStates;
+    }
+
+    public Collection<DropMessage> getMessages() {
+        return Collections.unmodifiableCollection(messages);
+    }
+
+    /**
+     * @return new state by drop url, drops whose state did not change are missing
+     */
+    public Map<String, String> getDropStates() {
+        return Collections.unmodifiableMap(dropStates);
+    }
+
+    public void addAll(RetrievedDropMessages other) {
+        messages.addAll(other.messages);
+        dropStates.putAll(other.dropStates);
+    }
+}
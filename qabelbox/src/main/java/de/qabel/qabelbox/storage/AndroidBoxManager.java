@@ -47,6 +47,7 @@ import de.qabel.qabelbox.storage.model.BoxUploadingFile;
 import de.qabel.qabelbox.storage.navigation.BoxNavigation;
 import de.qabel.qabelbox.storage.notifications.StorageNotificationManager;
 import de.qabel.qabelbox.storage.transfer.BoxTransferListener;
+import de.qabel.qabelbox.storage.transfer.TransferClass;
 import de.qabel.qabelbox.storage.transfer.TransferManager;
 
 public class AndroidBoxManager implements BoxManager {
@@ -245,7 +246,7 @@ public class AndroidBoxManager implements BoxManager {
         }
 
         File downloadedFile = blockingDownload(boxFile.prefix,
-                BLOCKS_PREFIX + boxFile.block,
+                BLOCKS_PREFIX + boxFile.block, TransferClass.BULK, boxFile.size == null ? 0 : boxFile.size,
                 storageNotificationManager.addDownloadNotification(identityKeyIdentifier, path, boxFile));
 
         File outputFile = new File(context.getExternalCacheDir(), boxFile.name);
@@ -257,8 +258,13 @@ public class AndroidBoxManager implements BoxManager {
 
     @Override
     public File blockingDownload(String prefix, String name, BoxTransferListener boxTransferListener) throws QblStorageException {
+        return blockingDownload(prefix, name, TransferClass.INTERACTIVE, 0, boxTransferListener);
+    }
+
+    protected File blockingDownload(String prefix, String name, TransferClass transferClass, long size,
+                                    BoxTransferListener boxTransferListener) throws QblStorageException {
         File target = transferManager.createTempFile();
-        int id = transferManager.download(prefix, name, target, boxTransferListener);
+        int id = transferManager.download(prefix, name, target, transferClass, size, boxTransferListener);
         if (transferManager.waitFor(id)) {
             return target;
         } else {
@@ -301,15 +307,15 @@ public class AndroidBoxManager implements BoxManager {
         try {
             File tmpFile = transferManager.createTempFile();
             IOUtils.copy(inputStream, new FileOutputStream(tmpFile));
-            blockingUpload(prefix, name, tmpFile, null);
+            blockingUpload(prefix, name, tmpFile, TransferClass.INTERACTIVE, null);
         } catch (IOException e) {
             throw new QblStorageException(e);
         }
     }
 
-    protected long blockingUpload(String prefix, String name,
-                                  File file, BoxTransferListener boxTransferListener) throws QblStorageException {
-        int id = transferManager.uploadAndDeleteLocalfileOnSuccess(prefix, name, file, boxTransferListener);
+    protected long blockingUpload(String prefix, String name, File file, TransferClass transferClass,
+                                  BoxTransferListener boxTransferListener) throws QblStorageException {
+        int id = transferManager.uploadAndDeleteLocalfileOnSuccess(prefix, name, file, transferClass, boxTransferListener);
         if (!transferManager.waitFor(id)) {
             throw new QblStorageException("Upload failed!");
         }
@@ -322,7 +328,7 @@ public class AndroidBoxManager implements BoxManager {
 
     protected UploadResult uploadEncrypted(
             InputStream content, KeyParameter key, String prefix, String block,
-            BoxTransferListener boxTransferListener) throws QblStorageException {
+            TransferClass transferClass, BoxTransferListener boxTransferListener) throws QblStorageException {
         try {
             File tempFile = transferManager.createTempFile();
             OutputStream outputStream = new FileOutputStream(tempFile);
@@ -331,7 +337,7 @@ public class AndroidBoxManager implements BoxManager {
             }
             outputStream.flush();
             Long size = tempFile.length();
-            Long mTime = blockingUpload(prefix, block, tempFile, boxTransferListener);
+            Long mTime = blockingUpload(prefix, block, tempFile, transferClass, boxTransferListener);
             return new UploadResult(mTime, size);
         } catch (IOException | InvalidKeyException e) {
             throw new QblStorageException(e);
@@ -348,7 +354,7 @@ public class AndroidBoxManager implements BoxManager {
         BoxTransferListener boxTransferListener = addUploadTransfer(documentId);
         try {
             UploadResult uploadResult = uploadEncrypted(content, key, documentId.getPrefix(),
-                    BLOCKS_PREFIX + block, boxTransferListener);
+                    BLOCKS_PREFIX + block, TransferClass.BULK, boxTransferListener);
 
             BoxFile boxResult = new BoxFile(documentId.getPrefix(), block,
                     documentId.getFileName(), uploadResult.size, uploadResult.mTime, key.getKey());
@@ -375,7 +381,7 @@ public class AndroidBoxManager implements BoxManager {
     @Override
     public void uploadEncrypted(String prefix, String block, byte[] key,
                                 InputStream content, BoxTransferListener boxTransferListener) throws QblStorageException {
-        uploadEncrypted(content, new KeyParameter(key), prefix, block, boxTransferListener);
+        uploadEncrypted(content, new KeyParameter(key), prefix, block, TransferClass.INTERACTIVE, boxTransferListener);
     }
 
     @Override
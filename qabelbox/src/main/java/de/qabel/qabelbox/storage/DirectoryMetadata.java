@@ -72,6 +72,12 @@ public class DirectoryMetadata {
                     " url TEXT NOT NULL )",
             "INSERT INTO spec_version (version) VALUES(0)"
     };
+    /**
+     * Spec version 1 extends the files table by the optional hash column, the SHA-256 of the
+     * plaintext content. Clients that don't know the column ignore it and insert files without a hash.
+     */
+    static final int SPEC_VERSION_FILE_HASH = 1;
+    private static final String FILE_HASH_COLUMN = "hash";
     private final File tempDir;
 
     public DirectoryMetadata(Connection connection, String root, byte[] deviceId,
@@ -114,6 +120,7 @@ public class DirectoryMetadata {
                 UUID.randomUUID().toString(), tempDir);
         try {
             dm.initDatabase();
+            dm.upgrade();
         } catch (SQLException e) {
             throw new RuntimeException("Cannot init the database", e);
         }
@@ -131,7 +138,58 @@ public class DirectoryMetadata {
         } catch (ClassNotFoundException e) {
             throw new QblStorageException(e);
         }
-        return new DirectoryMetadata(connection, deviceId, path, fileName, tempDir);
+        DirectoryMetadata dm = new DirectoryMetadata(connection, deviceId, path, fileName, tempDir);
+        try {
+            dm.upgrade();
+        } catch (SQLException e) {
+            throw new QblStorageException(e);
+        }
+        return dm;
+    }
+
+    /**
+     * Brings metadata of an older spec version up to date, the changes are uploaded with the next commit
+     */
+    private void upgrade() throws SQLException, QblStorageException {
+        if (getSpecVersion() >= SPEC_VERSION_FILE_HASH) {
+            return;
+        }
+        connection.setAutoCommit(false);
+        try {
+            addFileHashColumn();
+            setSpecVersion(SPEC_VERSION_FILE_HASH);
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private void setSpecVersion(int version) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "UPDATE spec_version SET version = ?")) {
+            statement.setInt(1, version);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Metadata written by earlier versions of this client may already have the column without the spec version
+     */
+    private void addFileHashColumn() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            ResultSet rs = statement.executeQuery("PRAGMA table_info(files)");
+            while (rs.next()) {
+                if (FILE_HASH_COLUMN.equals(rs.getString("name"))) {
+                    return;
+                }
+            }
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("ALTER TABLE files ADD COLUMN " + FILE_HASH_COLUMN + " BLOB");
+        }
     }
 
     public File getPath() {
@@ -347,11 +405,13 @@ public class DirectoryMetadata {
         try {
             statement = connection.createStatement();
             ResultSet rs = statement.executeQuery(
-                    "SELECT prefix, block, name, size, mtime, key, meta, metakey FROM files");
+                    "SELECT prefix, block, name, size, mtime, key, meta, metakey, hash FROM files");
             List<BoxFile> files = new ArrayList<>();
             while (rs.next()) {
-                files.add(new BoxFile(rs.getString(1), rs.getString(2),
-                        rs.getString(3), rs.getLong(4), rs.getLong(5), rs.getBytes(6), rs.getString(7), rs.getBytes(8)));
+                BoxFile file = new BoxFile(rs.getString(1), rs.getString(2),
+                        rs.getString(3), rs.getLong(4), rs.getLong(5), rs.getBytes(6), rs.getString(7), rs.getBytes(8));
+                file.hash = rs.getBytes(9);
+                files.add(file);
             }
             return files;
         } catch (SQLException e) {
@@ -376,7 +436,7 @@ public class DirectoryMetadata {
         PreparedStatement st = null;
         try {
             st = connection.prepareStatement(
-                    "INSERT INTO files (prefix, block, name, size, mtime, key, meta, metakey) VALUES(?, ?, ?, ?, ?, ?, ?, ?)");
+                    "INSERT INTO files (prefix, block, name, size, mtime, key, meta, metakey, hash) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?)");
             st.setString(1, file.prefix);
             st.setString(2, file.block);
             st.setString(3, file.name);
@@ -385,6 +445,7 @@ public class DirectoryMetadata {
             st.setBytes(6, file.key);
             st.setString(7, file.meta);
             st.setBytes(8, file.metakey);
+            st.setBytes(9, file.hash);
             if (st.executeUpdate() != 1) {
                 throw new QblStorageException("Failed to insert file");
             }
@@ -536,12 +597,14 @@ public class DirectoryMetadata {
         PreparedStatement statement = null;
         try {
             statement = connection.prepareStatement(
-                    "SELECT prefix, block, name, size, mtime, key, meta, metakey FROM files WHERE name=?");
+                    "SELECT prefix, block, name, size, mtime, key, meta, metakey, hash FROM files WHERE name=?");
             statement.setString(1, name);
             ResultSet rs = statement.executeQuery();
             if (rs.next()) {
-                return new BoxFile(rs.getString(1), rs.getString(2),
+                BoxFile file = new BoxFile(rs.getString(1), rs.getString(2),
                         rs.getString(3), rs.getLong(4), rs.getLong(5), rs.getBytes(6), rs.getString(7), rs.getBytes(8));
+                file.hash = rs.getBytes(9);
+                return file;
             }
             return null;
         } catch (SQLException e) {
@@ -13,6 +13,10 @@ public class BoxFile extends BoxObject implements Parcelable {
     public byte[] key;
     public String meta;
     public byte[] metakey;
+    /**
+     * SHA-256 of the plaintext content, null if unknown
+     */
+    public byte[] hash;
 
     @Override
     public boolean equals(Object o) {
@@ -65,7 +69,9 @@ public class BoxFile extends BoxObject implements Parcelable {
 
     @Override
     protected BoxFile clone() throws CloneNotSupportedException {
-        return new BoxFile(prefix, block, name, size, mtime, key, meta, metakey);
+        BoxFile clone = new BoxFile(prefix, block, name, size, mtime, key, meta, metakey);
+        clone.hash = hash;
+        return clone;
     }
 
     /**
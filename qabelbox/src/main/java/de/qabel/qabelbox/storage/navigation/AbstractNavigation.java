@@ -13,7 +13,13 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -394,20 +400,71 @@ public abstract class AbstractNavigation implements BoxNavigation {
         DocumentId documentId = new DocumentId(boxVolume.getPublicKeyIdentifier(),
                 prefix, this.getPath().split(BoxProvider.PATH_SEP), name);
 
-        BoxFile resultFile = boxManager.uploadEncrypted(documentId.toString(), content);
-
         BoxFile oldFile = dm.getFile(name);
-        if (oldFile != null) {
-            if (oldFile.meta != null && oldFile.metakey != null) {
-                resultFile.meta = oldFile.meta;
-                resultFile.metakey = oldFile.metakey.clone();
+        File buffered = null;
+        try {
+            if (oldFile != null && oldFile.hash != null) {
+                // hash before uploading, apps often write back files they did not change
+                buffered = File.createTempFile("upload", "", dm.getTempDir());
+                byte[] hash = copyAndHash(content, buffered);
+                if (Arrays.equals(hash, oldFile.hash)) {
+                    logger.info("Content of " + name + " is unchanged, skipping upload");
+                    return oldFile;
+                }
+                content = new FileInputStream(buffered);
+            }
+            DigestInputStream hashingContent = new DigestInputStream(content, newContentDigest());
+            BoxFile resultFile = boxManager.uploadEncrypted(documentId.toString(), hashingContent);
+            resultFile.hash = hashingContent.getMessageDigest().digest();
+
+            if (oldFile != null) {
+                if (oldFile.meta != null && oldFile.metakey != null) {
+                    resultFile.meta = oldFile.meta;
+                    resultFile.metakey = oldFile.metakey.clone();
+                }
+                deleteQueue.add(oldFile.block);
+                dm.deleteFile(oldFile);
             }
-            deleteQueue.add(oldFile.block);
-            dm.deleteFile(oldFile);
+            updatedFiles.add(new FileUpdate(oldFile, resultFile));
+            dm.insertFile(resultFile);
+            return resultFile;
+        } catch (IOException e) {
+            throw new QblStorageException(e);
+        } finally {
+            if (buffered != null) {
+                try {
+                    content.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Cannot close upload buffer", e);
+                }
+                if (!buffered.delete()) {
+                    Log.w(TAG, "Cannot delete upload buffer " + buffered);
+                }
+            }
+        }
+    }
+
+    private static byte[] copyAndHash(InputStream content, File target) throws IOException, QblStorageException {
+        MessageDigest digest = newContentDigest();
+        try (OutputStream output = new FileOutputStream(target)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                output.write(buffer, 0, read);
+            }
+        } finally {
+            content.close();
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest newContentDigest() throws QblStorageException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new QblStorageException(e);
         }
-        updatedFiles.add(new FileUpdate(oldFile, resultFile));
-        dm.insertFile(resultFile);
-        return resultFile;
     }
 
     @Override
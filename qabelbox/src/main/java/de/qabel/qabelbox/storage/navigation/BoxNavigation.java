@@ -49,6 +49,10 @@ public interface BoxNavigation {
 
     List<BoxObject> listExternals() throws QblStorageException;
 
+    /**
+     * Uploads the content as file with the given name. If the file already exists with the
+     * same content, nothing is uploaded and the existing file is returned.
+     */
     BoxFile upload(String name, InputStream content) throws QblStorageException;
 
     InputStream download(BoxFile file) throws QblStorageException;
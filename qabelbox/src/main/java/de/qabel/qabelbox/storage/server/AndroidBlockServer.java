@@ -12,8 +12,11 @@ import de.qabel.qabelbox.communication.callbacks.DownloadRequestCallback;
 import de.qabel.qabelbox.communication.callbacks.JSONModelCallback;
 import de.qabel.qabelbox.communication.callbacks.RequestCallback;
 import de.qabel.qabelbox.communication.callbacks.UploadRequestCallback;
+import de.qabel.qabelbox.communication.connection.ConnectivityManager;
 import de.qabel.qabelbox.config.AppPreference;
 import de.qabel.qabelbox.storage.model.BoxQuota;
+import okhttp3.CacheControl;
+import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 
@@ -23,9 +26,11 @@ public class AndroidBlockServer extends BaseServer implements BlockServer {
     public static final String BLOCKS = "blocks/";
     private int currentId = 0;
     private final int suffixId;
+    private static final CacheControl NO_STORE = new CacheControl.Builder().noStore().build();
 
-    public AndroidBlockServer(AppPreference preference, Context context) {
-        super(preference, context);
+    public AndroidBlockServer(AppPreference preference, Context context, OkHttpClient client,
+                              ConnectivityManager connectivityManager) {
+        super(preference, context, client, connectivityManager);
         //maybe it can be bether to create a unique id. but normally we have only one instance in boxvolume of blockserver so it should no collision occurs
         suffixId = (this.getClass().hashCode() % 0xffff) * 0x10000;
     }
@@ -45,12 +50,15 @@ public class AndroidBlockServer extends BaseServer implements BlockServer {
                 .url(url);
 
         builder = builder.method(method, body);
+        // blocks are large and immutable, keep them out of the shared response cache
+        builder.cacheControl(NO_STORE);
 
         addHeader(getToken(), builder);
         Request request = builder.build();
         Log.v(TAG, "blockserver request " + request.toString());
 
-        doRequest(request, callback);
+        // files are addressed by path, so sending an upload twice just overwrites the file
+        doRequest(request, callback, true);
     }
 
     @Override
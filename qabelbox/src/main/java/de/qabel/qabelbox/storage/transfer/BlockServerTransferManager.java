@@ -10,11 +10,19 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import de.qabel.qabelbox.QabelBoxApplication;
+import de.qabel.qabelbox.communication.BandwidthThrottle;
 import de.qabel.qabelbox.storage.server.AndroidBlockServer;
 import de.qabel.qabelbox.communication.callbacks.DownloadRequestCallback;
 import de.qabel.qabelbox.communication.callbacks.RequestCallback;
@@ -31,14 +39,116 @@ public class BlockServerTransferManager implements TransferManager {
     private final Map<Integer, Exception> errors;
     private final BlockServer blockServer;
     private final Context context;
+    private final TransferPolicy transferPolicy;
+    private final List<DeferredTransfer> deferredTransfers = new LinkedList<>();
+    private final TransferPolicy.NetworkChangeListener networkChangeListener = this::resumeDeferredTransfers;
+    private final ScheduledExecutorService expiryExecutor = Executors.newSingleThreadScheduledExecutor();
+    private long maxDeferMillis = TimeUnit.MINUTES.toMillis(30);
 
-    public BlockServerTransferManager(Context context, BlockServer blockServer, File tmpDir){
+    public BlockServerTransferManager(Context context, BlockServer blockServer, File tmpDir,
+                                      TransferPolicy transferPolicy) {
         this.tempDir = tmpDir;
         latches = new ConcurrentHashMap<>();
         errors = new HashMap<>();
 
         this.context = context;
         this.blockServer = blockServer;
+        this.transferPolicy = transferPolicy;
+        transferPolicy.addNetworkChangeListener(networkChangeListener);
+    }
+
+    /**
+     * Stops listening for network changes, deferred transfers are not started anymore
+     */
+    public void close() {
+        transferPolicy.removeNetworkChangeListener(networkChangeListener);
+        expiryExecutor.shutdownNow();
+    }
+
+    /**
+     * Deferred transfers fail after this time, so nobody waits for them forever
+     */
+    void setMaxDeferMillis(long maxDeferMillis) {
+        this.maxDeferMillis = maxDeferMillis;
+    }
+
+    /**
+     * transfer that is not allowed on the current network and waits for a network change
+     */
+    private static class DeferredTransfer {
+        final TransferClass transferClass;
+        final long size;
+        final Runnable start;
+        final Runnable fail;
+        ScheduledFuture<?> expiry;
+
+        DeferredTransfer(TransferClass transferClass, long size, Runnable start, Runnable fail) {
+            this.transferClass = transferClass;
+            this.size = size;
+            this.start = start;
+            this.fail = fail;
+        }
+    }
+
+    private void startOrDefer(TransferClass transferClass, long size, Runnable start, Runnable fail) {
+        synchronized (deferredTransfers) {
+            if (!transferPolicy.isAllowed(transferClass, size)) {
+                Log.d(TAG, "deferring " + transferClass + " transfer of " + size + " bytes");
+                DeferredTransfer transfer = new DeferredTransfer(transferClass, size, start, fail);
+                deferredTransfers.add(transfer);
+                transfer.expiry = expiryExecutor.schedule(
+                        () -> expire(transfer), maxDeferMillis, TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+        start.run();
+    }
+
+    private void expire(DeferredTransfer transfer) {
+        synchronized (deferredTransfers) {
+            if (!deferredTransfers.remove(transfer)) {
+                return;
+            }
+        }
+        Log.w(TAG, transfer.transferClass + " transfer of " + transfer.size + " bytes expired");
+        transfer.fail.run();
+    }
+
+    /**
+     * start all deferred transfers the new network allows
+     */
+    void resumeDeferredTransfers() {
+        List<Runnable> resumed = new LinkedList<>();
+        synchronized (deferredTransfers) {
+            Iterator<DeferredTransfer> iterator = deferredTransfers.iterator();
+            while (iterator.hasNext()) {
+                DeferredTransfer transfer = iterator.next();
+                if (transferPolicy.isAllowed(transfer.transferClass, transfer.size)) {
+                    iterator.remove();
+                    transfer.expiry.cancel(false);
+                    resumed.add(transfer.start);
+                }
+            }
+        }
+        for (Runnable start : resumed) {
+            start.run();
+        }
+    }
+
+    @Nullable
+    private BandwidthThrottle createThrottle(TransferClass transferClass) {
+        if (transferClass == TransferClass.INTERACTIVE) {
+            return null;
+        }
+        return new BandwidthThrottle(() -> transferPolicy.getBandwidthLimit(transferClass));
+    }
+
+    private void failDeferred(int id, @Nullable BoxTransferListener boxTransferListener) {
+        errors.put(id, new IOException("Transfer was deferred for too long on a metered network"));
+        if (boxTransferListener != null) {
+            boxTransferListener.onFinished();
+        }
+        latches.get(id).countDown();
     }
 
     @Override
@@ -63,11 +173,27 @@ public class BlockServerTransferManager implements TransferManager {
      */
     @Override
     public int uploadAndDeleteLocalfileOnSuccess(String prefix, final String name, final File localfile, @Nullable final BoxTransferListener boxTransferListener) {
+        return uploadAndDeleteLocalfileOnSuccess(prefix, name, localfile, TransferClass.BULK, boxTransferListener);
+    }
+
+    @Override
+    public int uploadAndDeleteLocalfileOnSuccess(final String prefix, final String name, final File localfile,
+                                                 final TransferClass transferClass,
+                                                 @Nullable final BoxTransferListener boxTransferListener) {
 
         Log.d(TAG, "uploadAndDeleteLocalfile " + prefix + " " + name + " " + localfile.toString());
         final int id = blockServer.getNextId();
         latches.put(id, new CountDownLatch(1));
-        blockServer.uploadFile(prefix, name, localfile, new UploadRequestCallback(new int[]{201, 204}) {
+        startOrDefer(transferClass, localfile.length(),
+                () -> upload(id, prefix, name, localfile, transferClass, boxTransferListener),
+                () -> failDeferred(id, boxTransferListener));
+        return id;
+    }
+
+    private void upload(final int id, String prefix, final String name, final File localfile,
+                        TransferClass transferClass,
+                        @Nullable final BoxTransferListener boxTransferListener) {
+        UploadRequestCallback callback = new UploadRequestCallback(new int[]{201, 204}) {
 
             @Override
             public void onProgress(long currentBytes, long totalBytes) {
@@ -96,9 +222,9 @@ public class BlockServerTransferManager implements TransferManager {
                 }
                 latches.get(id).countDown();
             }
-        });
-
-        return id;
+        };
+        callback.setThrottle(createThrottle(transferClass));
+        blockServer.uploadFile(prefix, name, localfile, callback);
     }
 
     @Override
@@ -117,12 +243,32 @@ public class BlockServerTransferManager implements TransferManager {
      */
     @Override
     public int download(String prefix, String name, final File file, @Nullable final BoxTransferListener boxTransferListener) {
+        return download(prefix, name, file, TransferClass.INTERACTIVE, 0, boxTransferListener);
+    }
+
+    /**
+     * download file from server, deferred until the {@link TransferPolicy} allows a transfer
+     * of the class and expected size on the current network.
+     */
+    @Override
+    public int download(final String prefix, final String name, final File file,
+                        final TransferClass transferClass, long size,
+                        @Nullable final BoxTransferListener boxTransferListener) {
 
         Log.d(TAG, "download " + prefix + " " + name + " " + file.toString());
 
         final int id = blockServer.getNextId();
         latches.put(id, new CountDownLatch(1));
-        blockServer.downloadFile(prefix, name, new DownloadRequestCallback(file) {
+        startOrDefer(transferClass, size,
+                () -> download(id, prefix, name, file, transferClass, boxTransferListener),
+                () -> failDeferred(id, boxTransferListener));
+        return id;
+    }
+
+    private void download(final int id, String prefix, String name, final File file,
+                          TransferClass transferClass,
+                          @Nullable final BoxTransferListener boxTransferListener) {
+        DownloadRequestCallback callback = new DownloadRequestCallback(file) {
             @Override
             public void onError(Exception e, @Nullable Response response) {
                 if (boxTransferListener != null) {
@@ -147,9 +293,9 @@ public class BlockServerTransferManager implements TransferManager {
                 }
                 latches.get(id).countDown();
             }
-        });
-
-        return id;
+        };
+        callback.setThrottle(createThrottle(transferClass));
+        blockServer.downloadFile(prefix, name, callback);
     }
 
     /**
@@ -65,6 +65,13 @@ public class FakeTransferManager implements TransferManager {
         return id;
     }
 
+    @Override
+    public int uploadAndDeleteLocalfileOnSuccess(String prefix, String name, File localfile,
+                                                 TransferClass transferClass,
+                                                 @Nullable BoxTransferListener boxTransferListener) {
+        return uploadAndDeleteLocalfileOnSuccess(prefix, name, localfile, boxTransferListener);
+    }
+
     private void copyWithProgress(File source, File target, BoxTransferListener transferListener) throws IOException {
         InputStream inputStream = new FileInputStream(source);
         OutputStream outputStream = new FileOutputStream(target);
@@ -107,6 +114,12 @@ public class FakeTransferManager implements TransferManager {
         return id;
     }
 
+    @Override
+    public int download(String prefix, String name, File file, TransferClass transferClass, long size,
+                        @Nullable BoxTransferListener boxTransferListener) {
+        return download(prefix, name, file, boxTransferListener);
+    }
+
     @Override
     public boolean waitFor(int id) {
         return !errors.containsKey(id);
@@ -0,0 +1,16 @@
+package de.qabel.qabelbox.storage.transfer;
+
+/**
+ * Priority class of a transfer, used by the {@link TransferPolicy} to decide
+ * whether and how fast a transfer may run on the current network.
+ */
+public enum TransferClass {
+    /**
+     * the user is waiting for the result (metadata, opened files)
+     */
+    INTERACTIVE,
+    /**
+     * file contents that can wait for a better network
+     */
+    BULK
+}
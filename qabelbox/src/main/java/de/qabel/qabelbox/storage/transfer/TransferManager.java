@@ -9,10 +9,16 @@ public interface TransferManager {
 
     int uploadAndDeleteLocalfileOnSuccess(String prefix, String name, File localfile, @Nullable BoxTransferListener boxTransferListener);
 
+    int uploadAndDeleteLocalfileOnSuccess(String prefix, String name, File localfile, TransferClass transferClass,
+                                          @Nullable BoxTransferListener boxTransferListener);
+
     Exception lookupError(int transferId);
 
     int download(String prefix, String name, File file, @Nullable BoxTransferListener boxTransferListener);
 
+    int download(String prefix, String name, File file, TransferClass transferClass, long size,
+                 @Nullable BoxTransferListener boxTransferListener);
+
     boolean waitFor(int id);
 
     int delete(String prefix, String name);
@@ -0,0 +1,93 @@
+package de.qabel.qabelbox.storage.transfer;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import de.qabel.qabelbox.communication.connection.ConnectivityManager;
+import de.qabel.qabelbox.config.AppPreference;
+
+/**
+ * Decides which transfers may run on the current network.
+ * <p>
+ * Interactive transfers always run. On metered networks bulk transfers above the size configured
+ * in the {@link AppPreference} are deferred and the running ones are capped to the configured bandwidth.
+ */
+public class TransferPolicy {
+
+    public interface NetworkChangeListener {
+        void onNetworkChanged();
+    }
+
+    private final AppPreference preferences;
+    private final ConnectivityManager connectivityManager;
+    private final List<NetworkChangeListener> listeners = new CopyOnWriteArrayList<>();
+    /**
+     * Asking the system is a binder call, but the limit is checked for every chunk of a transfer
+     */
+    private volatile boolean metered;
+
+    public TransferPolicy(AppPreference preferences, ConnectivityManager connectivityManager) {
+        this.preferences = preferences;
+        this.connectivityManager = connectivityManager;
+        metered = connectivityManager.isMetered();
+        connectivityManager.addListener(new ConnectivityManager.ConnectivityListener() {
+            @Override
+            public void handleConnectionLost() {
+                notifyNetworkChanged();
+            }
+
+            @Override
+            public void handleConnectionEstablished() {
+                notifyNetworkChanged();
+            }
+
+            @Override
+            public void onDestroy() {
+                //Nothing to do
+            }
+        });
+    }
+
+    public void addNetworkChangeListener(NetworkChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeNetworkChangeListener(NetworkChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyNetworkChanged() {
+        metered = connectivityManager.isMetered();
+        for (NetworkChangeListener listener : listeners) {
+            listener.onNetworkChanged();
+        }
+    }
+
+    public boolean isAllowed(TransferClass transferClass, long size) {
+        return isAllowed(transferClass, size, connectivityManager.isConnected(), metered);
+    }
+
+    boolean isAllowed(TransferClass transferClass, long size, boolean connected, boolean metered) {
+        if (!connected) {
+            return transferClass == TransferClass.INTERACTIVE;
+        }
+        if (!metered || transferClass == TransferClass.INTERACTIVE) {
+            return true;
+        }
+        return size <= preferences.getMeteredTransferMaxSize();
+    }
+
+    /**
+     * @return bandwidth limit in bytes per second, 0 if the transfer is not limited
+     */
+    public long getBandwidthLimit(TransferClass transferClass) {
+        return getBandwidthLimit(transferClass, metered);
+    }
+
+    long getBandwidthLimit(TransferClass transferClass, boolean metered) {
+        if (!metered || transferClass == TransferClass.INTERACTIVE) {
+            return 0;
+        }
+        return preferences.getMeteredBandwidthLimit();
+    }
+}
@@ -5,22 +5,27 @@ import android.content.Context;
 import java.io.File;
 
 import dagger.Module;
+import de.qabel.qabelbox.communication.connection.ConnectivityManager;
 import de.qabel.qabelbox.config.AppPreference;
 import de.qabel.qabelbox.storage.server.BlockServer;
 import de.qabel.qabelbox.storage.server.MockBlockServer;
 import de.qabel.qabelbox.storage.transfer.FakeTransferManager;
 import de.qabel.qabelbox.storage.transfer.TransferManager;
+import de.qabel.qabelbox.storage.transfer.TransferPolicy;
+import okhttp3.OkHttpClient;
 
 @Module
 public class MockStorageModule extends StorageModule {
 
     @Override
-    public TransferManager createTransferManager(Context context, BlockServer blockServer, File tmpDir) {
+    public TransferManager createTransferManager(Context context, BlockServer blockServer, File tmpDir,
+                                                 TransferPolicy transferPolicy) {
         return new FakeTransferManager(context.getExternalCacheDir());
     }
 
     @Override
-    protected BlockServer createBlockServer(AppPreference preference, Context context) {
+    protected BlockServer createBlockServer(AppPreference preference, Context context, OkHttpClient client,
+                                            ConnectivityManager connectivityManager) {
         return new MockBlockServer();
     }
 }
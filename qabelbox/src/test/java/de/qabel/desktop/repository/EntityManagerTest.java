@@ -0,0 +1,98 @@
+package de.qabel.desktop.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+
+public class EntityManagerTest {
+
+    private EntityManager em;
+
+    @Before
+    public void setUp() {
+        em = new EntityManager();
+    }
+
+    @Test
+    public void testReturnsKnownInstance() {
+        Entity entity = new Entity(1000);
+        em.put(Entity.class, entity);
+
+        assertThat(em.contains(Entity.class, 1000), is(true));
+        assertThat(em.get(Entity.class, 1000), sameInstance(entity));
+    }
+
+    @Test
+    public void testUnknownEntity() {
+        assertThat(em.contains(Entity.class, 1), is(false));
+        assertThat(em.get(Entity.class, 1), nullValue());
+        em.put(Entity.class, new Entity(2));
+        assertThat(em.get(Entity.class, 1), nullValue());
+    }
+
+    @Test
+    public void testStatistics() {
+        Entity entity = new Entity(1);
+        em.put(Entity.class, entity);
+
+        em.get(Entity.class, 1);
+        em.get(Entity.class, 1);
+        em.get(Entity.class, 2);
+
+        assertThat(em.getHits(), is(2L));
+        assertThat(em.getMisses(), is(1L));
+        assertThat(em.size(Entity.class), is(1));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            entities.add(new Entity(i));
+        }
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (Entity entity : entities) {
+                    em.put(Entity.class, entity);
+                    em.get(Entity.class, entity.getId());
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(em.size(Entity.class), is(1000));
+        for (Entity entity : entities) {
+            assertThat(em.get(Entity.class, entity.getId()), sameInstance(entity));
+        }
+    }
+
+    private static class Entity implements HasId {
+        private int id;
+
+        Entity(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public void setId(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package de.qabel.desktop.repository.sqlite;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class PreparedStatementCacheTest {
+
+    private PreparedStatementCache cache;
+    private List<PreparedStatement> prepared;
+    private PreparedStatementCache.StatementFactory factory;
+
+    @Before
+    public void setUp() {
+        cache = new PreparedStatementCache(2);
+        prepared = new ArrayList<>();
+        factory = sql -> {
+            PreparedStatement statement = mock(PreparedStatement.class);
+            prepared.add(statement);
+            return statement;
+        };
+    }
+
+    @Test
+    public void testStatementIsReused() throws SQLException {
+        cache.prepare("SELECT 1", factory).close();
+        cache.prepare("SELECT 1", factory).close();
+
+        assertThat(prepared.size(), is(1));
+        assertThat(cache.getHits(), is(1L));
+        assertThat(cache.getMisses(), is(1L));
+        verify(prepared.get(0), times(2)).clearParameters();
+        verify(prepared.get(0), never()).close();
+    }
+
+    @Test
+    public void testStatementInUseIsNotShared() throws SQLException {
+        PreparedStatement first = cache.prepare("SELECT 1", factory);
+        assertThat(cache.size(), is(0));
+
+        PreparedStatement second = cache.prepare("SELECT 1", factory);
+        second.execute();
+        first.execute();
+
+        assertThat(prepared.size(), is(2));
+        verify(prepared.get(0)).execute();
+        verify(prepared.get(1)).execute();
+    }
+
+    @Test
+    public void testSecondCloseIsIgnored() throws SQLException {
+        PreparedStatement statement = cache.prepare("SELECT 1", factory);
+        statement.close();
+        PreparedStatement reused = cache.prepare("SELECT 1", factory);
+
+        statement.close();
+
+        assertThat(statement.isClosed(), is(true));
+        assertThat(reused.isClosed(), is(false));
+        assertThat(cache.size(), is(0));
+        verify(prepared.get(0), times(1)).clearParameters();
+    }
+
+    @Test(expected = SQLException.class)
+    public void testClosedStatementCannotBeUsed() throws SQLException {
+        PreparedStatement statement = cache.prepare("SELECT 1", factory);
+        statement.close();
+
+        statement.execute();
+    }
+
+    @Test
+    public void testEvictedIdleStatementIsClosed() throws SQLException {
+        cache.prepare("SELECT 1", factory).close();
+        cache.prepare("SELECT 2", factory).close();
+        cache.prepare("SELECT 1", factory).close();
+
+        cache.prepare("SELECT 3", factory).close();
+
+        assertThat(cache.size(), is(2));
+        verify(prepared.get(1)).close();
+        verify(prepared.get(0), never()).close();
+        verify(prepared.get(2), never()).close();
+    }
+
+    @Test
+    public void testStatementReleasedAfterClearIsClosed() throws SQLException {
+        cache.prepare("SELECT 1", factory).close();
+        PreparedStatement inUse = cache.prepare("SELECT 2", factory);
+
+        cache.clear();
+        verify(prepared.get(0)).close();
+        verify(prepared.get(1), never()).close();
+
+        inUse.close();
+        verify(prepared.get(1)).close();
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void testBatchIsClearedOnRelease() throws SQLException {
+        PreparedStatement statement = cache.prepare("INSERT INTO contact (alias) VALUES (?)", factory);
+        statement.setString(1, "alice");
+        statement.addBatch();
+        statement.close();
+
+        verify(prepared.get(0)).clearBatch();
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    public void testStatementWithUnclearableBatchIsNotReused() throws SQLException {
+        PreparedStatement statement = cache.prepare("INSERT INTO contact (alias) VALUES (?)", factory);
+        doThrow(new SQLException("batch not supported")).when(prepared.get(0)).clearBatch();
+        statement.close();
+
+        cache.prepare("INSERT INTO contact (alias) VALUES (?)", factory).close();
+
+        verify(prepared.get(0)).close();
+        assertThat(prepared.size(), is(2));
+        assertThat(cache.size(), is(1));
+    }
+}
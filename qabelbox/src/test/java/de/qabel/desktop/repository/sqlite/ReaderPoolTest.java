@@ -0,0 +1,95 @@
+package de.qabel.desktop.repository.sqlite;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReaderPoolTest {
+
+    private static final String QUERY = "SELECT 1 FROM contact WHERE id = ?";
+
+    private Connection writer;
+    private Connection reader;
+    private PreparedStatement writerStatement;
+    private PreparedStatement readerStatement;
+    private AndroidClientDatabase database;
+
+    @Before
+    public void setUp() throws SQLException {
+        writer = mock(Connection.class);
+        reader = mock(Connection.class);
+        writerStatement = mock(PreparedStatement.class);
+        readerStatement = mock(PreparedStatement.class);
+        when(writer.prepareStatement(QUERY)).thenReturn(writerStatement);
+        when(reader.prepareStatement(QUERY)).thenReturn(readerStatement);
+        database = new AndroidClientDatabase(writer);
+        database.setReaders(new ReaderPool(1, () -> reader));
+    }
+
+    @Test
+    public void testReadUsesReaderConnection() throws SQLException {
+        try (PreparedStatement statement = database.prepareRead(QUERY)) {
+            statement.executeQuery();
+        }
+
+        verify(readerStatement).executeQuery();
+        verify(writer, never()).prepareStatement(QUERY);
+    }
+
+    @Test
+    public void testReadInTransactionUsesWriterConnection() throws Exception {
+        database.getTransactionManager().transactional(() -> {
+            try (PreparedStatement statement = database.prepareRead(QUERY)) {
+                statement.executeQuery();
+            }
+        });
+
+        verify(writerStatement).executeQuery();
+        verify(reader, never()).prepareStatement(QUERY);
+    }
+
+    @Test
+    public void testReadFallsBackToWriterIfReadersAreBusy() throws SQLException {
+        try (PreparedStatement first = database.prepareRead(QUERY);
+             PreparedStatement second = database.prepareRead(QUERY)) {
+            first.executeQuery();
+            second.executeQuery();
+        }
+
+        verify(readerStatement).executeQuery();
+        verify(writerStatement).executeQuery();
+    }
+
+    @Test
+    public void testConnectionIsReturnedOnClose() throws SQLException {
+        database.prepareRead(QUERY).close();
+        database.prepareRead(QUERY).close();
+
+        verify(writer, never()).prepareStatement(QUERY);
+        verify(readerStatement, times(2)).close();
+    }
+
+    @Test(expected = SQLException.class)
+    public void testReaderRejectsWrites() throws SQLException {
+        new ReaderPool(1, () -> reader).prepare("UPDATE contact SET alias = ?");
+    }
+
+    @Test
+    public void testQueryDetection() {
+        assertThat(ReaderPool.isQuery(QUERY), is(true));
+        assertThat(ReaderPool.isQuery("  select revision FROM entity_revision"), is(true));
+        assertThat(ReaderPool.isQuery("INSERT INTO contact (alias) VALUES (?)"), is(false));
+        assertThat(ReaderPool.isQuery("DELETE FROM contact"), is(false));
+    }
+}
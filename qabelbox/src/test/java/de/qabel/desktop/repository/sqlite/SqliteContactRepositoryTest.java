@@ -0,0 +1,166 @@
+package de.qabel.desktop.repository.sqlite;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.net.URISyntaxException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import de.qabel.core.config.Contact;
+import de.qabel.core.config.Identity;
+import de.qabel.desktop.config.factory.DropUrlGenerator;
+import de.qabel.desktop.config.factory.IdentityBuilder;
+import de.qabel.desktop.repository.IdentityRepository;
+import de.qabel.qabelbox.BuildConfig;
+import de.qabel.qabelbox.QabelBoxApplication;
+import de.qabel.qabelbox.SimpleApplication;
+import de.qabel.qabelbox.persistence.RepositoryFactory;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(application = SimpleApplication.class, constants = BuildConfig.class)
+public class SqliteContactRepositoryTest {
+
+    private RepositoryFactory factory;
+    private AndroidClientDatabase database;
+    private SqliteContactRepository repository;
+    private Identity identity;
+    private Identity otherIdentity;
+
+    private static Identity createIdentity(String alias) throws URISyntaxException {
+        return new IdentityBuilder(new DropUrlGenerator(QabelBoxApplication.DEFAULT_DROP_SERVER))
+                .withAlias(alias).build();
+    }
+
+    private static Contact createContact(String alias) throws URISyntaxException {
+        Identity identity = createIdentity(alias);
+        return new Contact(alias, identity.getDropUrls(), identity.getEcPublicKey());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new RepositoryFactory(RuntimeEnvironment.application);
+        database = factory.getAndroidClientDatabase();
+        identity = createIdentity("identity");
+        otherIdentity = createIdentity("other");
+        factory.getIdentityRepository(database).save(identity);
+        factory.getIdentityRepository(database).save(otherIdentity);
+        repository = factory.getContactRepository(database);
+    }
+
+    @After
+    public void tearDown() {
+        factory.close();
+    }
+
+    @Test
+    public void testSaveAllNewContacts() throws Exception {
+        Contact alice = createContact("alice");
+        Contact bob = createContact("bob");
+
+        assertThat(repository.saveAll(Arrays.asList(alice, bob), identity), is(2));
+
+        assertThat(repository.find(identity).getContacts(), hasSize(2));
+        assertThat(repository.findByKeyId(identity, alice.getKeyIdentifier()).getAlias(), is("alice"));
+        assertThat(repository.findByKeyId(identity, bob.getKeyIdentifier()).getDropUrls(), is(bob.getDropUrls()));
+    }
+
+    @Test
+    public void testSaveAllExistingContactsUpdatesThem() throws Exception {
+        Contact alice = createContact("alice");
+        repository.save(alice, identity);
+        alice.setAlias("alice renamed");
+        alice.setEmail("alice@example.com");
+
+        assertThat(repository.saveAll(Collections.singletonList(alice), identity), is(0));
+
+        assertThat(repository.find(identity).getContacts(), hasSize(1));
+        Contact loaded = repository.findByKeyId(identity, alice.getKeyIdentifier());
+        assertThat(loaded.getAlias(), is("alice renamed"));
+        assertThat(loaded.getEmail(), is("alice@example.com"));
+    }
+
+    @Test
+    public void testSaveAllMixedContacts() throws Exception {
+        Contact alice = createContact("alice");
+        Contact bob = createContact("bob");
+        Contact carol = createContact("carol");
+        repository.save(alice, identity);
+        repository.save(bob, otherIdentity);
+
+        // alice is known, bob only to another identity, carol is new and listed twice
+        int added = repository.saveAll(Arrays.asList(alice, bob, carol, carol), identity);
+
+        assertThat(added, is(2));
+        assertThat(repository.find(identity).getContacts(), hasSize(3));
+        assertThat(repository.find(otherIdentity).getContacts(), hasSize(1));
+    }
+
+    @Test
+    public void testAddAllKeepsKnownContacts() throws Exception {
+        Contact alice = createContact("alice");
+        repository.save(alice, identity);
+        Contact imported = new Contact("alice from import", alice.getDropUrls(), alice.getEcPublicKey());
+        Contact bob = createContact("bob");
+
+        assertThat(repository.addAll(Arrays.asList(imported, bob, bob), identity), is(1));
+
+        assertThat(repository.find(identity).getContacts(), hasSize(2));
+        assertThat(repository.findByKeyId(identity, alice.getKeyIdentifier()).getAlias(), is("alice"));
+    }
+
+    @Test
+    public void testCachedContactsAreReloadedAfterWriteOfAnotherInstance() throws Exception {
+        repository.save(createContact("alice"), identity);
+        assertThat(repository.find(identity).getContacts(), hasSize(1));
+
+        factory.getContactRepository(database).save(createContact("bob"), identity);
+
+        assertThat(repository.find(identity).getContacts(), hasSize(2));
+    }
+
+    @Test
+    public void testCachedIdentitiesAreReloadedAfterWriteOfAnotherInstance() throws Exception {
+        IdentityRepository identities = factory.getIdentityRepository(database);
+        assertThat(identities.findAll().getIdentities(), hasSize(2));
+
+        factory.getIdentityRepository(database).save(createIdentity("third"));
+
+        assertThat(identities.findAll().getIdentities(), hasSize(3));
+    }
+
+    @Test
+    public void testSaveAllIncreasesRevisionOnce() throws Exception {
+        long revision = readRevision();
+
+        repository.saveAll(Arrays.asList(createContact("alice"), createContact("bob"), createContact("carol")), identity);
+
+        assertThat(readRevision(), is(revision + 1));
+    }
+
+    private long readRevision() throws SQLException {
+        try (PreparedStatement statement = database.prepare("SELECT revision FROM entity_revision");
+             ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    @Test
+    public void testSaveAllWithoutContacts() throws Exception {
+        assertThat(repository.saveAll(Collections.<Contact>emptyList(), identity), is(0));
+        assertThat(repository.find(identity).getContacts(), hasSize(0));
+    }
+}
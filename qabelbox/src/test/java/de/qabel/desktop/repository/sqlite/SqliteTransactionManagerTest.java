@@ -0,0 +1,79 @@
+package de.qabel.desktop.repository.sqlite;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.qabel.desktop.repository.Transaction;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SqliteTransactionManagerTest {
+
+    private static final String UPDATE = "UPDATE outbox SET claimed = ? WHERE id = ?";
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private AndroidClientDatabase database;
+    private SqliteTransactionManager transactionManager;
+
+    @Before
+    public void setUp() throws SQLException {
+        Connection writer = mock(Connection.class);
+        when(writer.prepareStatement(UPDATE)).thenReturn(mock(PreparedStatement.class));
+        database = new AndroidClientDatabase(writer);
+        transactionManager = (SqliteTransactionManager) database.getTransactionManager();
+    }
+
+    @Test
+    public void testStatementWaitsForTransactionOfOtherThread() throws Exception {
+        Transaction transaction = transactionManager.beginTransaction();
+        CountDownLatch prepared = new CountDownLatch(1);
+        AtomicReference<Exception> error = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try (PreparedStatement statement = database.prepare(UPDATE)) {
+                prepared.countDown();
+                statement.executeUpdate();
+            } catch (SQLException e) {
+                error.set(e);
+            }
+        });
+        writer.start();
+
+        assertThat(prepared.await(200, TimeUnit.MILLISECONDS), is(false));
+        transaction.commit();
+        assertTrue(prepared.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        writer.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        assertThat(error.get(), nullValue());
+    }
+
+    @Test
+    public void testStatementHoldsLockUntilClosed() throws SQLException {
+        PreparedStatement statement = database.prepare(UPDATE);
+        assertThat(transactionManager.isInTransaction(), is(true));
+
+        statement.close();
+        statement.close();
+        assertThat(transactionManager.isInTransaction(), is(false));
+    }
+
+    @Test
+    public void testStatementInTransactionDoesNotTakeLockAgain() throws Exception {
+        transactionManager.transactional(() -> {
+            database.prepare(UPDATE).close();
+            assertThat(transactionManager.isInTransaction(), is(true));
+        });
+
+        assertThat(transactionManager.isInTransaction(), is(false));
+    }
+}
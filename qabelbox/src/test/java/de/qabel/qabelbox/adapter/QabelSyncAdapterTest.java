@@ -15,9 +15,10 @@ import de.qabel.core.config.Identity;
 import de.qabel.core.drop.DropMessage;
 import de.qabel.qabelbox.BuildConfig;
 import de.qabel.qabelbox.SimpleApplication;
-import de.qabel.qabelbox.chat.ChatMessagesDataBase;
+import de.qabel.qabelbox.chat.ChatMessageRepository;
 import de.qabel.qabelbox.chat.ChatServer;
 import de.qabel.qabelbox.exceptions.QblStorageEntityExistsException;
+import de.qabel.qabelbox.persistence.RepositoryFactory;
 import de.qabel.qabelbox.services.MockedDropConnector;
 import de.qabel.qabelbox.services.RoboLocalQabelService;
 import de.qabel.qabelbox.util.IdentityHelper;
@@ -37,8 +38,7 @@ public class QabelSyncAdapterTest {
     private Identity identity;
     private Identity identity2;
     private QabelSyncAdapter syncAdapter;
-    private ChatMessagesDataBase db1;
-    private ChatMessagesDataBase db2;
+    private ChatMessageRepository chatMessageRepository;
     private ChatServer chatServer;
     private Contact contact1;
     private Contact contact2;
@@ -57,9 +57,9 @@ public class QabelSyncAdapterTest {
         contact2 = new Contact("contact2", identity2.getDropUrls(), identity2.getEcPublicKey());
         service.addContact(contact1, identity2);
         service.addContact(contact2, identity);
-        db1 = new ChatMessagesDataBase(context, identity);
-        db2 = new ChatMessagesDataBase(context, identity2);
-        chatServer = new ChatServer(context);
+        RepositoryFactory factory = new RepositoryFactory(context);
+        chatMessageRepository = factory.getChatMessageRepository(factory.getAndroidClientDatabase());
+        chatServer = new ChatServer(context, chatMessageRepository);
         dropConnector = new MockedDropConnector();
         syncAdapter = new QabelSyncAdapter(context, true);
         syncAdapter.setDropConnector(dropConnector);
@@ -69,12 +69,12 @@ public class QabelSyncAdapterTest {
     @Test
     @SuppressWarnings("unchecked")
     public void testOnPerformSync() throws Exception {
-        assertThat(db1.getAll().length, is(0));
+        assertThat(chatMessageRepository.findAll(identity).length, is(0));
         DropMessage message = ChatServer.createTextDropMessage(identity, "foobar");
         dropConnector.sendDropMessage(message, contact2, identity, null);
         SyncResult syncResult = new SyncResult();
         syncAdapter.onPerformSync(null, null, null, null, syncResult);
-        assertThat(db1.getAll().length, is(1));
+        assertThat(chatMessageRepository.findAll(identity).length, is(1));
         verify(syncAdapter).notifyForNewMessages(anyList());
     }
 }
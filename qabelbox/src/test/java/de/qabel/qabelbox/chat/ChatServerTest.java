@@ -2,9 +2,11 @@ package de.qabel.qabelbox.chat;
 
 
 import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
 
 import net.bytebuddy.implementation.bytecode.Throw;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -13,22 +15,34 @@ import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
 import java.net.URISyntaxException;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import de.qabel.core.config.Contact;
 import de.qabel.core.config.Identity;
 import de.qabel.core.drop.DropMessage;
 import de.qabel.desktop.config.factory.DropUrlGenerator;
 import de.qabel.desktop.config.factory.IdentityBuilder;
+import de.qabel.desktop.repository.sqlite.AndroidClientDatabase;
+import de.qabel.desktop.repository.sqlite.SqliteDropStateRepository;
 import de.qabel.qabelbox.BuildConfig;
 import de.qabel.qabelbox.QabelBoxApplication;
 import de.qabel.qabelbox.SimpleApplication;
 import de.qabel.qabelbox.chat.ChatMessageItem;
-import de.qabel.qabelbox.chat.ChatMessagesDataBase;
 import de.qabel.qabelbox.chat.ChatServer;
+import de.qabel.qabelbox.persistence.RepositoryFactory;
 import de.qabel.qabelbox.services.DropConnector;
 import de.qabel.qabelbox.services.MockedDropConnector;
+import de.qabel.qabelbox.services.RetrievedDropMessages;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 
@@ -36,12 +50,17 @@ import static org.hamcrest.Matchers.is;
 @Config(application = SimpleApplication.class, constants = BuildConfig.class)
 public class ChatServerTest {
 
+    private static final String DROP = "http://localhost/drop";
+
     private Identity identity;
     private Contact contact1;
     private Contact contact2;
     private String publicKey1;
     private String publicKey2;
     private Context context;
+    private RepositoryFactory factory;
+    private ChatMessageRepository repository;
+    private AndroidClientDatabase database;
 
     public static Identity createIdentity(String identName, String prefix) {
         try {
@@ -65,20 +84,29 @@ public class ChatServerTest {
         publicKey1 = getKeyIdentitfier(contact1);
         publicKey2 = getKeyIdentitfier(contact2);
         context = RuntimeEnvironment.application;
+        factory = new RepositoryFactory(context);
+        database = factory.getAndroidClientDatabase();
+        factory.awaitBackfills();
+        factory.getIdentityRepository(database).save(identity);
+        repository = factory.getChatMessageRepository(database);
+    }
+
+    @After
+    public void tearDown() {
+        factory.close();
     }
 
     /**
      * test store and read values from sqldatabase
      */
     @Test
-    public void testStoreOneItemInDB() {
+    public void testStoreOneItemInDB() throws Exception {
 
-        ChatMessagesDataBase dataBase = new ChatMessagesDataBase(context, identity);
         ChatMessageItem[] messages;
 
         ChatMessageItem item = new ChatMessageItem(identity, getKeyIdentitfier(contact1), "payload", "payloadtype");
-        dataBase.put(item);
-        messages = dataBase.get(getKeyIdentitfier(contact1));
+        repository.save(identity, item);
+        messages = repository.findByContact(identity, getKeyIdentitfier(contact1));
         assertThat(messages.length, is(1));
         compareItems(messages[0], item);
 
@@ -89,18 +117,17 @@ public class ChatServerTest {
      * test store and read values from sqldatabase
      */
     @Test
-    public void testStoreManyItemsInDB() {
+    public void testStoreManyItemsInDB() throws Exception {
 
-        ChatMessagesDataBase dataBase = new ChatMessagesDataBase(context, identity);
         ChatMessageItem[] messages;
 
 
         //add 30 items
         for (int i = 0; i < 30; i++) {
             ChatMessageItem item = new ChatMessageItem(identity, publicKey1, "payload" + i, "payloadtype");
-            dataBase.put(item);
+            repository.save(identity, item);
         }
-        messages = dataBase.get(publicKey1);
+        messages = repository.findByContact(identity, publicKey1);
         assertThat(messages.length, is(30));
 
     }
@@ -109,22 +136,20 @@ public class ChatServerTest {
      * test get new message count
      */
     @Test
-    public void testGetNewMessageCountFromSenderDB() {
-
-        ChatMessagesDataBase dataBase = new ChatMessagesDataBase(context, identity);
+    public void testGetNewMessageCountFromSenderDB() throws Exception {
 
         //add 30 items
         for (int i = 0; i < 21; i++) {
             ChatMessageItem item = new ChatMessageItem(identity, publicKey1, "payload" + i, "payloadtype");
-            dataBase.put(item);
+            repository.save(identity, item);
         }
         for (int i = 0; i < 6; i++) {
             ChatMessageItem item = new ChatMessageItem(identity, publicKey1, "payload2" + i, "payloadtype");
             item.sender = publicKey1;
             item.isNew = 1;
-            dataBase.put(item);
+            repository.save(identity, item);
         }
-        int messageCount = dataBase.getNewMessageCount(contact1);
+        int messageCount = newMessageCount(publicKey1);
         assertThat(messageCount, is(6));
     }
 
@@ -132,37 +157,160 @@ public class ChatServerTest {
      * test get new message count
      */
     @Test
-    public void testSetMessagesAsRead() {
+    public void testSetMessagesAsRead() throws Exception {
 
-        ChatMessagesDataBase dataBase = new ChatMessagesDataBase(context, identity);
         int messageCount;
         for (int i = 0; i < 3; i++) {
             ChatMessageItem item = new ChatMessageItem(identity, publicKey1, "payload" + i, "payloadtype");
             item.sender = publicKey1;
             item.isNew = 0;
-            dataBase.put(item);
+            repository.save(identity, item);
         }
         for (int i = 0; i < 6; i++) {
             ChatMessageItem item = new ChatMessageItem(identity, publicKey1, "payload2" + i, "payloadtype");
             item.sender = getKeyIdentitfier(contact1);
             item.isNew = 1;
-            dataBase.put(item);
+            repository.save(identity, item);
         }
-        messageCount = dataBase.getNewMessageCount(contact1);
+        messageCount = newMessageCount(publicKey1);
         assertThat(messageCount, is(6));
 
         //set other as readed
-        dataBase.setAllMessagesRead(contact2);
-        messageCount = dataBase.getNewMessageCount(contact1);
+        repository.markAsRead(identity, publicKey2);
+        messageCount = newMessageCount(publicKey1);
         assertThat(messageCount, is(6));
 
         //set contact1 as readed
-        dataBase.setAllMessagesRead(contact1);
-        messageCount = dataBase.getNewMessageCount(contact1);
+        repository.markAsRead(identity, publicKey1);
+        messageCount = newMessageCount(publicKey1);
         assertThat(messageCount, is(0));
 
     }
 
+    /**
+     * test counting new messages of all senders at once
+     */
+    @Test
+    public void testNewMessageCounts() throws Exception {
+        ChatServer chatServer = new ChatServer(context, repository);
+        for (int i = 0; i < 4; i++) {
+            ChatMessageItem item = new ChatMessageItem(identity, publicKey1, "payload" + i, "payloadtype");
+            item.sender = i < 3 ? publicKey1 : publicKey2;
+            item.isNew = 1;
+            chatServer.storeIntoDB(identity, item);
+        }
+        Map<String, Integer> counts = chatServer.getNewMessageCounts(identity);
+        assertThat(counts.get(publicKey1), is(3));
+        assertThat(counts.get(publicKey2), is(1));
+
+        ChatMessageItem item = new ChatMessageItem(identity, publicKey1, "payload4", "payloadtype");
+        item.sender = publicKey2;
+        item.isNew = 1;
+        chatServer.storeIntoDB(identity, item);
+        chatServer.setAllMessagesRead(identity, contact1);
+
+        counts = chatServer.getNewMessageCounts(identity);
+        assertThat(counts.containsKey(publicKey1), is(false));
+        assertThat(counts.get(publicKey2), is(2));
+        assertThat(repository.countNewBySender(identity), is(counts));
+    }
+
+    /**
+     * test moving the history out of the database file of the identity
+     */
+    @Test
+    public void testImportLegacyMessages() throws Exception {
+        String identityKey = identity.getEcPublicKey().getReadableKeyIdentifier();
+        SQLiteDatabase legacy = context.openOrCreateDatabase("ChatMessages.db" + identityKey,
+                Context.MODE_PRIVATE, null);
+        legacy.execSQL("CREATE TABLE messages (id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                + "sender TEXT, receiver TEXT, ackid TEXT, timestamp LONG NOT NULL, "
+                + "payload_type TEXT NOT NULL, isnew INTEGER, payload TEXT)");
+        legacy.execSQL("INSERT INTO messages (sender, receiver, timestamp, payload_type, isnew, payload) "
+                + "VALUES (?, ?, 1000, 'box_message', 1, 'received')", new String[]{publicKey1, identityKey});
+        legacy.execSQL("INSERT INTO messages (sender, receiver, timestamp, payload_type, isnew, payload) "
+                + "VALUES (?, ?, 2000, 'box_message', 0, 'sent')", new String[]{identityKey, publicKey1});
+        legacy.close();
+        repository.save(identity, new ChatMessageItem(0, (short) 1, 1000, publicKey1, identityKey, null,
+                "box_message", "received"));
+
+        LegacyChatMessagesBackfill backfill = new LegacyChatMessagesBackfill(
+                context, factory.getIdentityRepository(database), repository);
+        assertThat(backfill.backfill(1), is(1));
+        assertThat(backfill.backfill(1), is(1));
+        assertThat(context.getDatabasePath("ChatMessages.db" + identityKey).exists(), is(true));
+        assertThat(backfill.backfill(1), is(0));
+        assertThat(context.getDatabasePath("ChatMessages.db" + identityKey).exists(), is(false));
+
+        assertThat(repository.findByContact(identity, publicKey1).length, is(2));
+        assertThat(newMessageCount(publicKey1), is(1));
+        assertThat(repository.findLastReceivedTime(identity), is(1000L));
+    }
+
+    /**
+     * test searching text messages and shared file names
+     */
+    @Test
+    public void testSearch() throws Exception {
+        ChatServer chatServer = new ChatServer(context, repository);
+        chatServer.storeIntoDB(identity, new ChatMessageItem(identity, publicKey1,
+                ChatServer.createTextDropMessagePayload("Holiday plans for the next summer"),
+                ChatMessageItem.BOX_MESSAGE));
+        chatServer.storeIntoDB(identity, new ChatMessageItem(identity, publicKey2,
+                ChatServer.createTextDropMessagePayload("holiday, holiday!"), ChatMessageItem.BOX_MESSAGE));
+        chatServer.storeIntoDB(identity, new ChatMessageItem(identity, publicKey2,
+                ChatServer.createTextDropMessagePayload("something else"), ChatMessageItem.BOX_MESSAGE));
+        chatServer.storeIntoDB(identity, new ChatMessageItem(identity, publicKey1,
+                chatServer.createShareDropMessage(identity, "beach.jpg", "url", "key").getDropPayload(),
+                ChatMessageItem.SHARE_NOTIFICATION));
+        Identity other = createIdentity("user2", "pre2");
+        factory.getIdentityRepository(factory.getAndroidClientDatabase()).save(other);
+        chatServer.storeIntoDB(other, new ChatMessageItem(other, publicKey1,
+                ChatServer.createTextDropMessagePayload("holiday"), ChatMessageItem.BOX_MESSAGE));
+
+        List<ChatMessageRepository.SearchResult> results = chatServer.search(identity, "holi", 10);
+        assertThat(results, hasSize(2));
+        assertThat(results.get(0).getMessage().getReceiverKey(), is(publicKey2));
+        assertThat(results.get(0).getSnippet(), containsString("<b>holiday</b>"));
+
+        results = chatServer.search(identity, "beach", 10);
+        assertThat(results, hasSize(1));
+        assertThat(results.get(0).getMessage().drop_payload_type, is(ChatMessageItem.SHARE_NOTIFICATION));
+
+        results = chatServer.search(identity, "summer \"holi", 10);
+        assertThat(results, hasSize(1));
+        assertThat(results.get(0).getMessage().getReceiverKey(), is(publicKey1));
+
+        assertThat(chatServer.search(identity, "holi", 1), hasSize(1));
+        assertThat(chatServer.search(identity, "  ", 10), hasSize(0));
+        assertThat(repository.updateSearchIndex(10), is(0));
+    }
+
+    @Test
+    public void testSearchIndexBackfill() throws Exception {
+        ChatServer chatServer = new ChatServer(context, repository);
+        for (int i = 0; i < 3; i++) {
+            chatServer.storeIntoDB(identity, new ChatMessageItem(identity, publicKey1,
+                    ChatServer.createTextDropMessagePayload("holiday " + i), ChatMessageItem.BOX_MESSAGE));
+        }
+        try (PreparedStatement statement = database.prepare("DELETE FROM drop_message_search")) {
+            statement.execute();
+        }
+        assertThat(chatServer.search(identity, "holiday", 10), empty());
+
+        ChatMessageSearchBackfill backfill = new ChatMessageSearchBackfill(repository);
+        assertThat(backfill.backfill(2), is(2));
+        assertThat(backfill.backfill(2), is(1));
+        assertThat(backfill.backfill(2), is(0));
+
+        assertThat(chatServer.search(identity, "holiday", 10), hasSize(3));
+    }
+
+    private int newMessageCount(String senderKey) throws Exception {
+        Integer count = repository.countNewBySender(identity).get(senderKey);
+        return count == null ? 0 : count;
+    }
+
     private String getKeyIdentitfier(Contact contact) {
         return contact.getEcPublicKey().getReadableKeyIdentifier();
     }
@@ -171,33 +319,32 @@ public class ChatServerTest {
      * test store and read values from sqldatabase
      */
     @Test
-    public void testStoreConflictItemsInDB() {
+    public void testStoreConflictItemsInDB() throws Exception {
 
-        ChatMessagesDataBase dataBase = new ChatMessagesDataBase(context, identity);
         ChatMessageItem[] messages;
         String publicKey = getKeyIdentitfier(contact1);
         //create own item1
         ChatMessageItem item = new ChatMessageItem(identity, publicKey, "payload", "payloadtype");
         ChatMessageItem item2 = new ChatMessageItem(identity, publicKey, "payload1", "payloadtype1");
-        dataBase.put(item);
-        messages = dataBase.get(publicKey);
+        repository.save(identity, item);
+        messages = repository.findByContact(identity, publicKey);
         assertThat(messages.length, is(1));
         compareItems(messages[0], item);
 
         //put same item1 (except one item after add)
-        dataBase.put(item);
-        messages = dataBase.get(publicKey);
+        repository.save(identity, item);
+        messages = repository.findByContact(identity, publicKey);
         assertThat(messages.length, is(1));
         compareItems(messages[0], item);
 
         //put item 2
-        dataBase.put(item2);
-        messages = dataBase.get(publicKey);
+        repository.save(identity, item2);
+        messages = repository.findByContact(identity, publicKey);
         assertThat(messages.length, is(2));
 
         //put same item1
-        dataBase.put(item);
-        messages = dataBase.get(publicKey);
+        repository.save(identity, item);
+        messages = repository.findByContact(identity, publicKey);
         assertThat(messages.length, is(2));
     }
 
@@ -205,35 +352,94 @@ public class ChatServerTest {
      * test store and read values from sqldatabase
      */
     @Test
-    public void testStoreInDBWithDifferentContacts() {
-        ChatMessagesDataBase dataBase = new ChatMessagesDataBase(context, identity);
+    public void testStoreInDBWithDifferentContacts() throws Exception {
         ChatMessageItem[] messages;
 
         ChatMessageItem item1 = new ChatMessageItem(identity, publicKey1, "payload", "payloadtype");
         ChatMessageItem item2 = new ChatMessageItem(identity, publicKey2, "payload", "payloadtype");
-        dataBase.put(item1);
-        messages = dataBase.get(publicKey2);
+        repository.save(identity, item1);
+        messages = repository.findByContact(identity, publicKey2);
         assertThat(messages.length, is(0));
 
         //put to other contact
-        dataBase.put(item2);
-        messages = dataBase.get(publicKey2);
+        repository.save(identity, item2);
+        messages = repository.findByContact(identity, publicKey2);
         assertThat(messages.length, is(1));
-        messages = dataBase.get(publicKey1);
+        messages = repository.findByContact(identity, publicKey1);
         assertThat(messages.length, is(1));
 
-        messages = dataBase.getAll();
+        messages = repository.findAll(identity);
         assertThat(messages.length, is(2));
 
 
     }
 
+    /**
+     * test storing a batch which contains known and repeated messages
+     */
+    @Test
+    public void testSaveAllSkipsDuplicates() throws Exception {
+        ChatMessageItem item1 = new ChatMessageItem(identity, publicKey1, "payload1", "payloadtype");
+        ChatMessageItem item2 = new ChatMessageItem(identity, publicKey1, "payload2", "payloadtype");
+        repository.save(identity, item1);
+
+        List<ChatMessageItem> inserted = repository.saveAll(identity, Arrays.asList(item1, item2, item2));
+
+        assertThat(inserted, hasSize(1));
+        compareItems(inserted.get(0), item2);
+        assertThat(repository.findByContact(identity, publicKey1).length, is(2));
+    }
+
+    /**
+     * test that duplicates are only detected within the history of one identity
+     */
+    @Test
+    public void testDuplicatesAreSkippedPerIdentity() throws Exception {
+        Identity other = createIdentity("user2", "pre2");
+        factory.getIdentityRepository(database).save(other);
+        ChatMessageItem item = new ChatMessageItem(identity, publicKey1, "payload", "payloadtype");
+        repository.save(identity, item);
+
+        assertThat(repository.saveAll(other, Arrays.asList(item, item)), hasSize(1));
+        assertThat(repository.saveAll(identity, Collections.singletonList(item)), hasSize(0));
+        assertThat(repository.findAll(other).length, is(1));
+    }
+
+    /**
+     * test reading a conversation page by page
+     */
+    @Test
+    public void testGetPages() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            ChatMessageItem item = new ChatMessageItem(identity, publicKey1, "payload" + i, "payloadtype");
+            item.time_stamp = 1000 + i / 2;
+            if (i % 3 == 0) {
+                item.sender = publicKey1;
+                item.receiver = identity.getEcPublicKey().getReadableKeyIdentifier();
+            }
+            repository.save(identity, item);
+        }
+        repository.save(identity, new ChatMessageItem(identity, publicKey2, "other", "payloadtype"));
+
+        ChatMessageItem[] newest = repository.findPage(identity, publicKey1, null, 10);
+        assertThat(newest.length, is(10));
+        assertThat(newest[9].drop_payload, is("payload24"));
+        assertThat(newest[0].drop_payload, is("payload15"));
+
+        ChatMessageItem[] older = repository.findPage(identity, publicKey1, newest[0], 10);
+        assertThat(older[9].drop_payload, is("payload14"));
+        ChatMessageItem[] oldest = repository.findPage(identity, publicKey1, older[0], 10);
+        assertThat(oldest.length, is(5));
+        assertThat(oldest[0].drop_payload, is("payload0"));
+        assertThat(repository.findPage(identity, publicKey1, oldest[0], 10).length, is(0));
+    }
+
     /**
      * test store and read values via chatserver
      */
     @Test
-    public void testStoreInChatServer() {
-        ChatServer chatServer = new ChatServer(context);
+    public void testStoreInChatServer() throws Exception {
+        ChatServer chatServer = new ChatServer(context, repository);
         ChatMessageItem[] messages;
         ChatMessageItem item = new ChatMessageItem(identity, publicKey1, "payload", "payloadtype");
         chatServer.storeIntoDB(identity, item);
@@ -247,6 +453,7 @@ public class ChatServerTest {
 
         //store new item
         ChatMessageItem item2 = new ChatMessageItem(identity, publicKey1, "payload", "payloadtype");
+        item2.time_stamp = item.time_stamp + 1;
         chatServer.storeIntoDB(identity, item2);
         messages = chatServer.getAllMessages(identity, contact1);
         assertThat(messages.length, is(2));
@@ -262,7 +469,7 @@ public class ChatServerTest {
 
     @Test
     public void testPreventDuplicates() throws Throwable {
-        ChatServer chatServer = new ChatServer(context);
+        ChatServer chatServer = new ChatServer(context, repository);
         DropMessage message = ChatServer.createTextDropMessage(identity, "foobar");
         DropConnector connector = new MockedDropConnector();
         connector.sendDropMessage(message, contact2, identity, null);
@@ -271,4 +478,38 @@ public class ChatServerTest {
         assertThat(chatServer.refreshList(connector, identity), hasSize(0));
     }
 
+    private static RetrievedDropMessages retrieved(DropMessage message, String drop, String state) {
+        Map<String, String> states = new HashMap<>();
+        states.put(drop, state);
+        return new RetrievedDropMessages(new ArrayList<>(Collections.singletonList(message)), states);
+    }
+
+    @Test
+    public void testDropStateIsStoredWithMessages() throws Exception {
+        ChatServer chatServer = new ChatServer(context, repository);
+        DropMessage message = ChatServer.createTextDropMessage(identity, "foobar");
+
+        assertThat(chatServer.storeMessages(identity, retrieved(message, DROP, "state2")), hasSize(1));
+
+        assertThat(new SqliteDropStateRepository(database).getDropState(DROP), is("state2"));
+    }
+
+    @Test
+    public void testFailedStoreDoesNotAdvanceDropState() throws Exception {
+        SqliteDropStateRepository dropStates = new SqliteDropStateRepository(database);
+        dropStates.setDropState(DROP, "state1");
+        ChatServer chatServer = new ChatServer(context, repository);
+        // indexing the message fails after it was inserted
+        try (PreparedStatement statement = database.prepare(
+                "DROP TABLE " + SqliteChatMessageRepository.SEARCH_TABLE_NAME)) {
+            statement.execute();
+        }
+        DropMessage message = ChatServer.createTextDropMessage(identity, "foobar");
+
+        assertThat(chatServer.storeMessages(identity, retrieved(message, DROP, "state2")), is(empty()));
+
+        assertThat(dropStates.getDropState(DROP), is("state1"));
+        assertThat(repository.findAll(identity).length, is(0));
+    }
+
 }
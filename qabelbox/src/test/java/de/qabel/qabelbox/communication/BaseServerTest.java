@@ -0,0 +1,271 @@
+package de.qabel.qabelbox.communication;
+
+import android.support.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.qabel.qabelbox.BuildConfig;
+import de.qabel.qabelbox.SimpleApplication;
+import de.qabel.qabelbox.communication.callbacks.RequestCallback;
+import de.qabel.qabelbox.communication.connection.ConnectivityManager;
+import de.qabel.qabelbox.config.AppPreference;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(application = SimpleApplication.class, constants = BuildConfig.class)
+public class BaseServerTest {
+
+    private static final String URL = "http://localhost/test";
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private ConnectivityManager connectivityManager;
+    private ConnectivityManager.ConnectivityListener connectivityListener;
+    private AtomicInteger calls = new AtomicInteger();
+    private Interceptor interceptor;
+    private TestServer server;
+
+    private class TestServer extends BaseServer {
+
+        TestServer(OkHttpClient client) {
+            super(new AppPreference(RuntimeEnvironment.application), RuntimeEnvironment.application,
+                    client, connectivityManager);
+        }
+
+        void send(Request request, RequestCallback callback) {
+            doRequest(request, callback);
+        }
+    }
+
+    private static class ResultCallback extends RequestCallback {
+
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Integer status;
+        volatile Exception error;
+
+        @Override
+        protected void onSuccess(int statusCode, Response response) {
+            status = statusCode;
+            done.countDown();
+        }
+
+        @Override
+        protected void onError(Exception e, @Nullable Response response) {
+            error = e;
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("request not finished", done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+    }
+
+    @Before
+    public void setUp() {
+        connectivityManager = mock(ConnectivityManager.class);
+        when(connectivityManager.isConnected()).thenReturn(true);
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(chain -> {
+                    calls.incrementAndGet();
+                    return interceptor.intercept(chain);
+                }).build();
+        server = new TestServer(client);
+        ArgumentCaptor<ConnectivityManager.ConnectivityListener> captor =
+                ArgumentCaptor.forClass(ConnectivityManager.ConnectivityListener.class);
+        verify(connectivityManager).addListener(captor.capture());
+        connectivityListener = captor.getValue();
+    }
+
+    private static Response ok(Interceptor.Chain chain) {
+        return new Response.Builder()
+                .request(chain.request())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(null, ""))
+                .build();
+    }
+
+    private static Request get() {
+        return new Request.Builder().url(URL).build();
+    }
+
+    private static Request post() {
+        return new Request.Builder().url(URL)
+                .post(RequestBody.create(MediaType.parse("application/json"), "{}")).build();
+    }
+
+    private void failFirstCallWith(IOException e) {
+        interceptor = chain -> {
+            if (calls.get() == 1) {
+                throw e;
+            }
+            return ok(chain);
+        };
+    }
+
+    @Test
+    public void testRetriesIdempotentRequestAfterFailure() throws Exception {
+        failFirstCallWith(new IOException("connection reset"));
+        ResultCallback callback = new ResultCallback();
+
+        server.send(get(), callback);
+        callback.await();
+
+        assertThat(callback.status, is(200));
+        assertThat(calls.get(), is(2));
+    }
+
+    @Test
+    public void testDoesNotResendPostThatMayHaveReachedTheServer() throws Exception {
+        failFirstCallWith(new IOException("connection reset"));
+        ResultCallback callback = new ResultCallback();
+
+        server.send(post(), callback);
+        callback.await();
+
+        assertThat(callback.error, instanceOf(IOException.class));
+        assertThat(calls.get(), is(1));
+    }
+
+    @Test
+    public void testRetriesPostThatNeverConnected() throws Exception {
+        failFirstCallWith(new ConnectException("connection refused"));
+        ResultCallback callback = new ResultCallback();
+
+        server.send(post(), callback);
+        callback.await();
+
+        assertThat(callback.status, is(200));
+        assertThat(calls.get(), is(2));
+    }
+
+    @Test
+    public void testConnectionLossDoesNotCancelPost() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        interceptor = chain -> {
+            started.countDown();
+            try {
+                release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return ok(chain);
+        };
+        ResultCallback callback = new ResultCallback();
+
+        server.send(post(), callback);
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        when(connectivityManager.isConnected()).thenReturn(false);
+        connectivityListener.handleConnectionLost();
+        release.countDown();
+        callback.await();
+
+        assertThat(callback.status, is(200));
+        assertThat(callback.error, nullValue());
+        assertThat(calls.get(), is(1));
+    }
+
+    @Test
+    public void testConnectionLossResendsGetOnReconnect() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        interceptor = chain -> {
+            if (calls.get() == 1) {
+                started.countDown();
+                try {
+                    release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return ok(chain);
+        };
+        ResultCallback callback = new ResultCallback();
+
+        server.send(get(), callback);
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        when(connectivityManager.isConnected()).thenReturn(false);
+        connectivityListener.handleConnectionLost();
+        release.countDown();
+        when(connectivityManager.isConnected()).thenReturn(true);
+        connectivityListener.handleConnectionEstablished();
+        callback.await();
+
+        assertThat(callback.status, is(200));
+        assertThat(calls.get(), is(2));
+    }
+
+    @Test
+    public void testQueuedRequestsRespectParallelLimitUntilResponseIsHandled() throws Exception {
+        int requests = 8;
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(requests);
+        interceptor = chain -> {
+            int now = active.incrementAndGet();
+            synchronized (maxActive) {
+                maxActive.set(Math.max(maxActive.get(), now));
+            }
+            return ok(chain);
+        };
+        when(connectivityManager.isConnected()).thenReturn(false);
+        for (int i = 0; i < requests; i++) {
+            server.send(get(), new RequestCallback() {
+                @Override
+                protected void onSuccess(int statusCode, Response response) {
+                    // like a download streaming its body
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    active.decrementAndGet();
+                    done.countDown();
+                }
+
+                @Override
+                protected void onError(Exception e, @Nullable Response response) {
+                    done.countDown();
+                }
+            });
+        }
+        assertThat(calls.get(), is(0));
+
+        when(connectivityManager.isConnected()).thenReturn(true);
+        connectivityListener.handleConnectionEstablished();
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertThat(calls.get(), is(requests));
+        assertThat(maxActive.get(), lessThanOrEqualTo(4));
+    }
+}
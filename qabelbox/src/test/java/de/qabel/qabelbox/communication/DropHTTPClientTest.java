@@ -0,0 +1,80 @@
+package de.qabel.qabelbox.communication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.OkHttpClient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+public class DropHTTPClientTest {
+
+    private LongPollDropServer server;
+    private DropHTTPClient client;
+    private URI drop;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new LongPollDropServer();
+        client = new DropHTTPClient(new OkHttpClient());
+        drop = server.getUri("abcdefghijklmnopqrstuvwxyzabcdefghijklmnopq");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testReceivesOnlyMessagesAfterState() throws Exception {
+        server.post(new byte[]{1});
+        server.post(new byte[]{2});
+
+        DropHTTPClient.DropResult result = client.receiveMessages(drop, null);
+        assertThat(result.getResponseCode(), is(200));
+        assertThat(result.getMessages().size(), is(2));
+
+        server.post(new byte[]{3});
+        result = client.receiveMessages(drop, result.getState());
+        List<byte[]> messages = new ArrayList<>(result.getMessages());
+        assertThat(messages.size(), is(1));
+        assertThat(messages.get(0), is(new byte[]{3}));
+
+        result = client.receiveMessages(drop, result.getState());
+        assertThat(result.getResponseCode(), is(304));
+        assertThat(result.getMessages().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testLongPollReturnsWhenMessageArrives() throws Exception {
+        String state = client.receiveMessages(drop, null).getState();
+        new Thread(() -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException ignored) {
+            }
+            server.post(new byte[]{42});
+        }).start();
+
+        long started = System.currentTimeMillis();
+        DropHTTPClient.DropResult result = client.waitForMessages(drop, state, 30);
+        assertThat(System.currentTimeMillis() - started, lessThan(10000L));
+        assertThat(result.getResponseCode(), is(200));
+        assertThat(result.getMessages().iterator().next(), is(new byte[]{42}));
+    }
+
+    @Test
+    public void testLongPollTimesOut() throws Exception {
+        String state = client.receiveMessages(drop, null).getState();
+        DropHTTPClient.DropResult result = client.waitForMessages(drop, state, 1);
+        assertThat(result.getResponseCode(), is(304));
+        assertThat(result.getMessages().isEmpty(), is(true));
+    }
+}
@@ -0,0 +1,105 @@
+package de.qabel.qabelbox.communication;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+/**
+ * Local stand-in for a drop server that implements the long-poll contract of
+ * {@link DropHTTPClient}. The drop state is the number of the latest message.
+ */
+public class LongPollDropServer {
+
+    private static final String BOUNDARY = "qabel-drop-boundary";
+
+    private final HttpServer server;
+    private final List<byte[]> messages = new ArrayList<>();
+
+    public LongPollDropServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public URI getUri(String drop) {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/" + drop);
+    }
+
+    public synchronized void post(byte[] message) {
+        messages.add(message);
+        notifyAll();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int since = parseState(exchange.getRequestHeaders().getFirst("If-Modified-Since"));
+        String timeout = exchange.getRequestHeaders().getFirst(DropHTTPClient.HEADER_POLL_TIMEOUT);
+        long deadline = System.currentTimeMillis() + (timeout == null ? 0 : Integer.parseInt(timeout) * 1000L);
+
+        List<byte[]> newMessages;
+        int latest;
+        synchronized (this) {
+            long remaining = deadline - System.currentTimeMillis();
+            while (messages.size() <= since && remaining > 0) {
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+            latest = messages.size();
+            newMessages = new ArrayList<>(messages.subList(Math.min(since, latest), latest));
+        }
+
+        exchange.getResponseHeaders().set(DropHTTPClient.HEADER_LATEST, String.valueOf(latest));
+        if (newMessages.isEmpty()) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        byte[] body = multipart(newMessages);
+        exchange.getResponseHeaders().set("Content-Type", "multipart/mixed; boundary=" + BOUNDARY);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    private static int parseState(String state) {
+        if (state == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(state);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static byte[] multipart(List<byte[]> parts) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            body.write(("--" + BOUNDARY + "\r\nContent-Type: application/octet-stream\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            body.write(part);
+            body.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        body.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        return body.toByteArray();
+    }
+}
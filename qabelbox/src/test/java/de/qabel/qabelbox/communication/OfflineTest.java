@@ -111,7 +111,7 @@ public class OfflineTest {
     @Test
     public void testDeviceIsOffline() {
         Context context = RuntimeEnvironment.application;
-        PrefixServer testServer = new PrefixServer(context);
+        PrefixServer testServer = QabelBoxApplication.getApplicationComponent(context).prefixServer();
 
         successIsOffline = false;
 
@@ -159,7 +159,7 @@ public class OfflineTest {
     @Test
     public void testDeviceGoOffline() {
         Context context = RuntimeEnvironment.application;
-        PrefixServer testServer = new PrefixServer(context);
+        PrefixServer testServer = QabelBoxApplication.getApplicationComponent(context).prefixServer();
 
         successGoOffline = false;
 
@@ -0,0 +1,52 @@
+package de.qabel.qabelbox.communication;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.mockito.Mockito.mock;
+
+public class RequestActionTest {
+
+    private static final String URL = "http://localhost/test";
+
+    @Test
+    public void testIdempotencyFromMethod() {
+        Request get = new Request.Builder().url(URL).build();
+        Request delete = new Request.Builder().url(URL).delete().build();
+        Request post = new Request.Builder().url(URL)
+                .post(RequestBody.create(MediaType.parse("application/json"), "{}")).build();
+
+        assertThat(new RequestAction(get, null).isIdempotent(), is(true));
+        assertThat(new RequestAction(delete, null).isIdempotent(), is(true));
+        assertThat(new RequestAction(post, null).isIdempotent(), is(false));
+        assertThat(new RequestAction(post, null, true).isIdempotent(), is(true));
+    }
+
+    @Test
+    public void testBackoffGrowsWithJitter() {
+        RequestAction action = new RequestAction(new Request.Builder().url(URL).build(), null);
+        Random random = new Random(42);
+
+        action.setCall(mock(Call.class));
+        assertThat(action.getBackoffDelay(random), allOf(greaterThanOrEqualTo(500L), lessThanOrEqualTo(1000L)));
+
+        action.setCall(mock(Call.class));
+        assertThat(action.getBackoffDelay(random), allOf(greaterThanOrEqualTo(1000L), lessThanOrEqualTo(2000L)));
+
+        for (int i = 0; i < 20; i++) {
+            action.setCall(mock(Call.class));
+        }
+        assertThat(action.getBackoffDelay(random), lessThanOrEqualTo(60000L));
+    }
+}
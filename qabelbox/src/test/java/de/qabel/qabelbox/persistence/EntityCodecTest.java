@@ -0,0 +1,105 @@
+package de.qabel.qabelbox.persistence;
+
+import android.util.Log;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import de.qabel.core.config.Contact;
+import de.qabel.core.config.Contacts;
+import de.qabel.core.config.Identity;
+import de.qabel.desktop.config.factory.DropUrlGenerator;
+import de.qabel.desktop.config.factory.IdentityBuilder;
+import de.qabel.qabelbox.BuildConfig;
+import de.qabel.qabelbox.QabelBoxApplication;
+import de.qabel.qabelbox.SimpleApplication;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(application = SimpleApplication.class, constants = BuildConfig.class)
+public class EntityCodecTest {
+    private static final String TAG = "EntityCodecTest";
+    private static final int CONTACTS = 200;
+    private static final int ROUNDS = 50;
+
+    private BinaryEntityCodec binaryCodec = new BinaryEntityCodec();
+    private SerializableEntityCodec serializableCodec = new SerializableEntityCodec();
+    private Identity identity;
+    private Contacts contacts;
+
+    @Before
+    public void setUp() throws Exception {
+        DropUrlGenerator generator = new DropUrlGenerator(QabelBoxApplication.DEFAULT_DROP_SERVER);
+        identity = new IdentityBuilder(generator).withAlias("identity").build();
+        identity.setEmail("identity@example.com");
+        identity.getPrefixes().add("prefix");
+        contacts = new Contacts(identity);
+        for (int i = 0; i < CONTACTS; i++) {
+            Identity contactIdentity = new IdentityBuilder(generator).withAlias("contact" + i).build();
+            Contact contact = new Contact(contactIdentity.getAlias(), contactIdentity.getDropUrls(),
+                    contactIdentity.getEcPublicKey());
+            contact.setPhone("+49 " + i);
+            contacts.put(contact);
+        }
+    }
+
+    @Test
+    public void testIdentityRoundTrip() {
+        Identity decoded = (Identity) decode(binaryCodec.encode(identity));
+
+        assertThat(decoded, equalTo(identity));
+        assertThat(decoded.getPersistenceID(), equalTo(identity.getPersistenceID()));
+        assertThat(decoded.getEmail(), equalTo(identity.getEmail()));
+        assertThat(decoded.getPrefixes(), equalTo(identity.getPrefixes()));
+        assertThat(decoded.getPrimaryKeyPair(), equalTo(identity.getPrimaryKeyPair()));
+    }
+
+    @Test
+    public void testContactsRoundTrip() {
+        Contacts decoded = (Contacts) decode(binaryCodec.encode(contacts));
+
+        assertThat(decoded.getPersistenceID(), equalTo(contacts.getPersistenceID()));
+        assertThat(decoded.getIdentity(), equalTo(identity));
+        assertThat(decoded.getContacts(), equalTo(contacts.getContacts()));
+    }
+
+    @Test
+    public void testReadsSerializedBlobs() {
+        Contacts decoded = (Contacts) decode(serializableCodec.encode(contacts));
+
+        assertThat(decoded.getContacts(), equalTo(contacts.getContacts()));
+    }
+
+    @Test
+    public void testBenchmark() {
+        byte[] binary = binaryCodec.encode(contacts);
+        byte[] serialized = serializableCodec.encode(contacts);
+        long binaryNanos = measure(binaryCodec);
+        long serializedNanos = measure(serializableCodec);
+
+        Log.i(TAG, "binary: " + binary.length + " bytes, " + binaryNanos / ROUNDS / 1000 + "us per round trip");
+        Log.i(TAG, "serialized: " + serialized.length + " bytes, " + serializedNanos / ROUNDS / 1000 + "us per round trip");
+        assertThat(binary.length, lessThan(serialized.length));
+    }
+
+    private long measure(EntityCodec codec) {
+        for (int i = 0; i < ROUNDS; i++) {
+            codec.decode(contacts.getPersistenceID(), codec.encode(contacts));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            codec.decode(contacts.getPersistenceID(), codec.encode(contacts));
+        }
+        return System.nanoTime() - start;
+    }
+
+    private Object decode(byte[] blob) {
+        return binaryCodec.decode("id", blob);
+    }
+}
@@ -0,0 +1,58 @@
+package de.qabel.qabelbox.providers;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import de.qabel.qabelbox.BuildConfig;
+import de.qabel.qabelbox.SimpleApplication;
+import de.qabel.qabelbox.storage.model.BoxFile;
+import de.qabel.qabelbox.storage.navigation.BoxNavigation;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(application = SimpleApplication.class, constants = BuildConfig.class)
+public class BoxProviderUploadTest {
+
+    private static final String NAME = "testfile";
+
+    private BoxNavigation navigation;
+    private InputStream content;
+    private BoxFile existing;
+
+    @Before
+    public void setUp() throws Exception {
+        navigation = mock(BoxNavigation.class);
+        content = new ByteArrayInputStream(new byte[]{1, 2, 3});
+        existing = new BoxFile("prefix", "block", NAME, 3L, 0L, new byte[]{1, 2});
+        when(navigation.getFile(NAME, false)).thenReturn(existing);
+    }
+
+    @Test
+    public void testUnchangedFileIsNotCommitted() throws Exception {
+        when(navigation.upload(NAME, content)).thenReturn(existing);
+
+        assertThat(BoxProvider.uploadChanges(navigation, NAME, content), is(false));
+        verify(navigation, never()).commit();
+    }
+
+    @Test
+    public void testChangedFileIsCommitted() throws Exception {
+        when(navigation.upload(NAME, content))
+                .thenReturn(new BoxFile("prefix", "newBlock", NAME, 4L, 1L, new byte[]{3, 4}));
+
+        assertThat(BoxProvider.uploadChanges(navigation, NAME, content), is(true));
+        verify(navigation).commit();
+    }
+}
@@ -0,0 +1,160 @@
+package de.qabel.qabelbox.services;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.qabel.core.config.Contact;
+import de.qabel.core.config.Contacts;
+import de.qabel.core.config.Identities;
+import de.qabel.core.config.Identity;
+import de.qabel.core.crypto.AbstractBinaryDropMessage;
+import de.qabel.core.crypto.BinaryDropMessageV0;
+import de.qabel.core.drop.DropMessage;
+import de.qabel.core.exceptions.QblDropInvalidMessageSizeException;
+import de.qabel.core.exceptions.QblSpoofedSenderException;
+import de.qabel.desktop.config.factory.DropUrlGenerator;
+import de.qabel.desktop.config.factory.IdentityBuilder;
+import de.qabel.qabelbox.BuildConfig;
+import de.qabel.qabelbox.QabelBoxApplication;
+import de.qabel.qabelbox.SimpleApplication;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(application = SimpleApplication.class, constants = BuildConfig.class)
+public class DropMessageDecryptorTest {
+
+    private Identity alice;
+    private Identity bob;
+    private Identity carol;
+    private Identity dave;
+    private Identity mallory;
+    private Identities identities;
+    private Map<Identity, Contacts> contacts;
+    private List<Contact> allContacts;
+
+    private static Identity createIdentity(String alias) throws URISyntaxException {
+        return new IdentityBuilder(new DropUrlGenerator(QabelBoxApplication.DEFAULT_DROP_SERVER))
+                .withAlias(alias).build();
+    }
+
+    private static Contact asContact(Identity identity) {
+        return new Contact(identity.getAlias(), identity.getDropUrls(), identity.getEcPublicKey());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        alice = createIdentity("alice");
+        bob = createIdentity("bob");
+        carol = createIdentity("carol");
+        dave = createIdentity("dave");
+        mallory = createIdentity("mallory");
+
+        identities = new Identities();
+        identities.put(alice);
+        identities.put(bob);
+
+        // carol is known to both identities, dave only to bob, mallory to nobody
+        Contacts aliceContacts = new Contacts(alice);
+        aliceContacts.put(asContact(carol));
+        Contacts bobContacts = new Contacts(bob);
+        bobContacts.put(asContact(carol));
+        bobContacts.put(asContact(dave));
+        contacts = new HashMap<>();
+        contacts.put(alice, aliceContacts);
+        contacts.put(bob, bobContacts);
+
+        allContacts = new ArrayList<>();
+        allContacts.addAll(aliceContacts.getContacts());
+        allContacts.addAll(bobContacts.getContacts());
+    }
+
+    private static byte[] message(Identity from, Identity to, String payload) throws Exception {
+        return new BinaryDropMessageV0(new DropMessage(from, payload, "test"))
+                .assembleMessageFor(asContact(to), from);
+    }
+
+    /**
+     * The sender lookup before the key id index: a scan over all contacts per message
+     */
+    private List<DropMessage> decryptLinear(List<byte[]> cipherMessages) throws Exception {
+        List<DropMessage> result = new ArrayList<>();
+        for (byte[] cipherMessage : cipherMessages) {
+            if (cipherMessage[0] != 0) {
+                continue;
+            }
+            AbstractBinaryDropMessage binMessage;
+            try {
+                binMessage = new BinaryDropMessageV0(cipherMessage);
+            } catch (QblDropInvalidMessageSizeException e) {
+                continue;
+            }
+            for (Identity identity : identities.getIdentities()) {
+                DropMessage dropMessage;
+                try {
+                    dropMessage = binMessage.disassembleMessage(identity);
+                } catch (QblSpoofedSenderException e) {
+                    break;
+                }
+                if (dropMessage != null) {
+                    for (Contact c : allContacts) {
+                        if (c.getKeyIdentifier().equals(dropMessage.getSenderKeyId())) {
+                            if (dropMessage.registerSender(c)) {
+                                result.add(dropMessage);
+                                break;
+                            }
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static List<String> describe(Iterable<DropMessage> messages) {
+        List<String> result = new ArrayList<>();
+        for (DropMessage message : messages) {
+            result.add(message.getSender().getKeyIdentifier() + ":" + message.getDropPayload());
+        }
+        return result;
+    }
+
+    @Test
+    public void testIndexFindsSameSendersAsLinearSearch() throws Exception {
+        byte[] tooShort = new byte[]{0, 1, 2, 3};
+        byte[] unknownVersion = new byte[]{42, 1, 2, 3};
+        List<byte[]> cipherMessages = Arrays.asList(
+                message(carol, alice, "carol to alice"),
+                message(mallory, alice, "mallory to alice"),
+                message(dave, bob, "dave to bob"),
+                tooShort,
+                message(carol, bob, "carol to bob"),
+                message(dave, alice, "dave to alice"),
+                unknownVersion,
+                message(alice, carol, "not for us"),
+                message(mallory, bob, "mallory to bob"));
+
+        List<String> indexed = describe(new DropMessageDecryptor(identities, contacts).decrypt(cipherMessages));
+
+        assertThat(indexed, equalTo(describe(decryptLinear(cipherMessages))));
+        // dave is only a contact of bob, but the sender lookup spans all identities
+        assertThat(indexed, contains(
+                carol.getKeyIdentifier() + ":carol to alice",
+                dave.getKeyIdentifier() + ":dave to bob",
+                carol.getKeyIdentifier() + ":carol to bob",
+                dave.getKeyIdentifier() + ":dave to alice"));
+    }
+}
@@ -0,0 +1,196 @@
+package de.qabel.qabelbox.services;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.qabel.core.drop.DropURL;
+import de.qabel.desktop.repository.DropOutboxRepository;
+import de.qabel.qabelbox.BuildConfig;
+import de.qabel.qabelbox.SimpleApplication;
+import de.qabel.qabelbox.communication.connection.ConnectivityManager;
+import okhttp3.OkHttpClient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(application = SimpleApplication.class, constants = BuildConfig.class)
+public class DropSenderTest {
+
+    private static final String WORKING = "http://localhost/abcdefghijklmnopqrstuvwxyzabcdefgworkingUrl";
+    private static final String OFFLINE = "http://localhost/abcdefghijklmnopqrstuvwxyzabcdefgofflineUrl";
+    private static final String INVALID = "http://localhost/abcdefghijklmnopqrstuvwxyzabcdefgInvalidUrl";
+
+    private InMemoryOutbox outbox;
+    private DropSender sender;
+    private ConnectivityManager connectivityManager;
+    private final AtomicInteger posts = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        outbox = new InMemoryOutbox();
+        connectivityManager = mock(ConnectivityManager.class);
+        when(connectivityManager.isConnected()).thenReturn(true);
+        sender = new DropSender(outbox, new OkHttpClient(), connectivityManager) {
+            @Override
+            protected int post(URI drop, byte[] message) throws IOException {
+                posts.incrementAndGet();
+                if (!connectivityManager.isConnected()) {
+                    throw new UnknownHostException(drop.getHost());
+                }
+                switch (drop.toString()) {
+                    case WORKING:
+                        return 200;
+                    case INVALID:
+                        return 404;
+                    default:
+                        return 503;
+                }
+            }
+        };
+    }
+
+    @Test
+    public void testReportsStatusOfAllDrops() throws Exception {
+        Map<DropURL, Boolean> status = send(WORKING, OFFLINE, INVALID);
+
+        assertThat(status.size(), is(3));
+        assertThat(status.get(new DropURL(WORKING)), is(true));
+        assertThat(status.get(new DropURL(OFFLINE)), is(false));
+        assertThat(status.get(new DropURL(INVALID)), is(false));
+    }
+
+    @Test
+    public void testKeepsFailedDropsQueued() throws Exception {
+        send(WORKING, OFFLINE, INVALID);
+
+        assertThat(outbox.entries.size(), is(1));
+        DropOutboxRepository.Entry entry = outbox.entries.values().iterator().next();
+        assertThat(entry.getDrop(), is(OFFLINE));
+        assertThat(entry.getAttempts(), is(1));
+    }
+
+    @Test
+    public void testOfflineFailuresDoNotCountAsAttempts() throws Exception {
+        when(connectivityManager.isConnected()).thenReturn(false);
+
+        Map<DropURL, Boolean> status = send(WORKING);
+
+        assertThat(status.get(new DropURL(WORKING)), is(false));
+        DropOutboxRepository.Entry entry = outbox.entries.values().iterator().next();
+        assertThat(entry.getAttempts(), is(0));
+    }
+
+    @Test
+    public void testClaimedEntryIsNotSentAgain() throws Exception {
+        long now = System.currentTimeMillis();
+        DropOutboxRepository.Entry entry = outbox.add(OFFLINE, new byte[]{1}, now);
+        assertThat(outbox.claim(entry, now, now + DropSender.CLAIM_MILLIS), is(true));
+
+        sender.sendDue();
+        Thread.sleep(200);
+
+        assertThat(posts.get(), is(0));
+        assertThat(outbox.claim(entry, now, now + DropSender.CLAIM_MILLIS), is(false));
+    }
+
+    @Test
+    public void testSendsDueEntries() throws Exception {
+        outbox.add(WORKING, new byte[]{1}, System.currentTimeMillis() - 1);
+
+        sender.sendDue();
+        for (int i = 0; i < 50 && !outbox.entries.isEmpty(); i++) {
+            Thread.sleep(20);
+        }
+
+        assertThat(posts.get(), is(1));
+        assertThat(outbox.entries.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testPermanentErrors() {
+        assertThat(DropSender.isPermanentError(404), is(true));
+        assertThat(DropSender.isPermanentError(413), is(true));
+        assertThat(DropSender.isPermanentError(408), is(false));
+        assertThat(DropSender.isPermanentError(429), is(false));
+        assertThat(DropSender.isPermanentError(503), is(false));
+    }
+
+    private Map<DropURL, Boolean> send(String... drops) throws Exception {
+        Collection<DropURL> dropURLs = new ArrayList<>();
+        for (String drop : drops) {
+            dropURLs.add(new DropURL(drop));
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        Map<DropURL, Boolean> result = new ConcurrentHashMap<>();
+        sender.send(dropURLs, new byte[]{1, 2, 3}, deliveryStatus -> {
+            result.putAll(deliveryStatus);
+            latch.countDown();
+        });
+        assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+        return result;
+    }
+
+    private static class InMemoryOutbox implements DropOutboxRepository {
+        final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+        final Map<Long, Long> nextAttempts = new ConcurrentHashMap<>();
+        private long nextId = 1;
+
+        @Override
+        public synchronized Entry add(String drop, byte[] message, long claimedUntil) {
+            Entry entry = new Entry(nextId++, drop, message, 0);
+            entries.put(entry.getId(), entry);
+            nextAttempts.put(entry.getId(), claimedUntil);
+            return entry;
+        }
+
+        @Override
+        public synchronized Collection<Entry> findDue(long time) {
+            Collection<Entry> due = new ArrayList<>();
+            for (Entry entry : entries.values()) {
+                if (nextAttempts.get(entry.getId()) <= time) {
+                    due.add(entry);
+                }
+            }
+            return due;
+        }
+
+        @Override
+        public synchronized boolean claim(Entry entry, long now, long claimedUntil) {
+            Long nextAttempt = nextAttempts.get(entry.getId());
+            if (nextAttempt == null || nextAttempt > now) {
+                return false;
+            }
+            nextAttempts.put(entry.getId(), claimedUntil);
+            return true;
+        }
+
+        @Override
+        public synchronized void reschedule(Entry entry, long nextAttempt) {
+            entries.put(entry.getId(), entry);
+            nextAttempts.put(entry.getId(), nextAttempt);
+        }
+
+        @Override
+        public synchronized void delete(Entry entry) {
+            entries.remove(entry.getId());
+            nextAttempts.remove(entry.getId());
+        }
+    }
+}
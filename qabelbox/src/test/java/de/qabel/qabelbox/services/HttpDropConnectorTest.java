@@ -0,0 +1,181 @@
+package de.qabel.qabelbox.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.qabel.core.config.Contact;
+import de.qabel.core.config.Contacts;
+import de.qabel.core.config.Identities;
+import de.qabel.core.config.Identity;
+import de.qabel.core.crypto.BinaryDropMessageV0;
+import de.qabel.core.drop.DropMessage;
+import de.qabel.desktop.config.factory.DropUrlGenerator;
+import de.qabel.desktop.config.factory.IdentityBuilder;
+import de.qabel.desktop.repository.ContactRepository;
+import de.qabel.desktop.repository.DropStateRepository;
+import de.qabel.desktop.repository.IdentityRepository;
+import de.qabel.qabelbox.BuildConfig;
+import de.qabel.qabelbox.QabelBoxApplication;
+import de.qabel.qabelbox.SimpleApplication;
+import de.qabel.qabelbox.communication.DropHTTPClient;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(application = SimpleApplication.class, constants = BuildConfig.class)
+public class HttpDropConnectorTest {
+
+    private static final String BOUNDARY = "message-boundary";
+    private static final String OLD_STATE = "state1";
+    private static final String NEW_STATE = "state2";
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private URI drop;
+    private byte[] message;
+    private volatile boolean blockDecryption;
+    private final CountDownLatch decrypting = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private DropStateRepository dropStateRepository;
+    private HttpDropConnector connector;
+
+    private static Identity createIdentity(String alias) throws URISyntaxException {
+        return new IdentityBuilder(new DropUrlGenerator(QabelBoxApplication.DEFAULT_DROP_SERVER))
+                .withAlias(alias).build();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Identity identity = createIdentity("identity");
+        Identity sender = createIdentity("sender");
+        Contacts contacts = new Contacts(identity);
+        contacts.put(new Contact(sender.getAlias(), sender.getDropUrls(), sender.getEcPublicKey()));
+        Identities identities = new Identities();
+        identities.put(identity);
+        drop = identity.getDropUrls().iterator().next().getUri();
+        message = new BinaryDropMessageV0(new DropMessage(sender, "payload", "test")).assembleMessageFor(
+                new Contact(identity.getAlias(), identity.getDropUrls(), identity.getEcPublicKey()), sender);
+
+        IdentityRepository identityRepository = mock(IdentityRepository.class);
+        when(identityRepository.findAll()).thenReturn(identities);
+        ContactRepository contactRepository = mock(ContactRepository.class);
+        when(contactRepository.find(identity)).thenReturn(contacts);
+        dropStateRepository = mock(DropStateRepository.class);
+        when(dropStateRepository.getDropState(drop.toString())).thenReturn(OLD_STATE);
+
+        Map<Identity, Contacts> allContacts = new HashMap<>();
+        allContacts.put(identity, contacts);
+        DropMessageDecryptor decryptor = new DropMessageDecryptor(identities, allContacts) {
+            @Override
+            DropMessage decrypt(byte[] cipherMessage) {
+                if (blockDecryption) {
+                    decrypting.countDown();
+                    try {
+                        release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.decrypt(cipherMessage);
+            }
+        };
+
+        OkHttpClient client = new OkHttpClient.Builder().addInterceptor(chain ->
+                new Response.Builder()
+                    .request(chain.request())
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .message("OK")
+                    .header(DropHTTPClient.HEADER_LATEST, NEW_STATE)
+                    .body(multipart(message))
+                    .build()).build();
+        connector = new HttpDropConnector(identityRepository, contactRepository, dropStateRepository,
+                mock(DropSender.class), client) {
+            @Override
+            public DropMessageDecryptor createDecryptor() {
+                return decryptor;
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+    }
+
+    private static ResponseBody multipart(byte[] message) {
+        Buffer body = new Buffer()
+                .writeUtf8("--" + BOUNDARY + "\r\n")
+                .writeUtf8("Content-Type: application/octet-stream\r\n\r\n")
+                .write(message)
+                .writeUtf8("\r\n--" + BOUNDARY + "--\r\n");
+        return ResponseBody.create(MediaType.parse("multipart/mixed; boundary=" + BOUNDARY),
+                body.size(), body);
+    }
+
+    @Test
+    public void testNewStateIsReturnedWithTheMessages() throws Exception {
+        RetrievedDropMessages retrieved = connector.newLongPoll(drop, 0, 10).execute();
+
+        assertThat(retrieved.getMessages(), hasSize(1));
+        assertThat(retrieved.getDropStates().get(drop.toString()), is(NEW_STATE));
+    }
+
+    /**
+     * Like ChatLongPoller.stop() while a response is decrypted
+     */
+    @Test
+    public void testInterruptDuringDecryptionKeepsTheState() throws Exception {
+        blockDecryption = true;
+        AtomicReference<RetrievedDropMessages> retrieved = new AtomicReference<>();
+        AtomicReference<Exception> error = new AtomicReference<>();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread poller = new Thread(() -> {
+            try {
+                retrieved.set(connector.newLongPoll(drop, 0, 10).execute());
+            } catch (Exception e) {
+                error.set(e);
+            }
+            interrupted.set(Thread.currentThread().isInterrupted());
+        });
+        poller.start();
+        assertTrue(decrypting.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        poller.interrupt();
+        poller.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+
+        assertThat(retrieved.get(), nullValue());
+        assertThat(error.get(), instanceOf(InterruptedIOException.class));
+        assertThat(interrupted.get(), is(true));
+        verify(dropStateRepository, never()).setDropState(anyString(), anyString());
+    }
+}
@@ -3,7 +3,6 @@ package de.qabel.qabelbox.services;
 import android.support.annotation.Nullable;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -32,14 +31,26 @@ public class MockedDropConnector implements DropConnector {
     }
 
     @Override
-    public Collection<DropMessage> retrieveDropMessages(Identity identity, long sinceDate) {
+    public RetrievedDropMessages retrieveDropMessages(Identity identity, long sinceDate) {
         ArrayList<DropMessage> filtered = new ArrayList<>();
         for (DropMessage m: messages.get(identity.getKeyIdentifier())) {
             if (m.getCreationDate().after(new Date(sinceDate))) {
                 filtered.add(m);
             }
         }
-        return filtered;
+        return new RetrievedDropMessages(filtered);
+    }
+
+    @Override
+    public RetrievedDropMessages retrieveDropMessages(Identity identity, long sinceDate,
+                                                      DropMessageDecryptor decryptor) {
+        return retrieveDropMessages(identity, sinceDate);
+    }
+
+    @Override
+    public DropMessageDecryptor createDecryptor() {
+        // messages are stored in plain text
+        return null;
     }
 
 
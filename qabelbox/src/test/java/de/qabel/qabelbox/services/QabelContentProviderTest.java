@@ -0,0 +1,59 @@
+package de.qabel.qabelbox.services;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import de.qabel.QabelContentProviderConstants;
+import de.qabel.qabelbox.BuildConfig;
+import de.qabel.qabelbox.SimpleApplication;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(application = SimpleApplication.class, constants = BuildConfig.class)
+public class QabelContentProviderTest {
+
+    private static final String[] COLUMNS = QabelContentProviderConstants.CONTACT_COLUMN_NAMES;
+
+    @Test
+    public void testColumnComparisonsAreAccepted() {
+        assertThat(QabelContentProvider.getSelection(null, null, COLUMNS), nullValue());
+        assertThat(QabelContentProvider.getSelection("owner_id=? and  name = ?", new String[]{"key", "alice"}, COLUMNS),
+                is("owner_id = ? AND name = ?"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSubqueryInSelectionIsRejected() {
+        QabelContentProvider.getSelection("id IN (SELECT privateKey FROM identity)", null, COLUMNS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownColumnInSelectionIsRejected() {
+        QabelContentProvider.getSelection("privateKey = ?", new String[]{"key"}, COLUMNS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLiteralInSelectionIsRejected() {
+        QabelContentProvider.getSelection("name = 'alice' OR 1 = 1", null, COLUMNS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingSelectionArgumentsAreRejected() {
+        QabelContentProvider.getSelection("name = ? AND id = ?", new String[]{"alice"}, COLUMNS);
+    }
+
+    @Test
+    public void testColumnSortOrderIsAccepted() {
+        assertThat(QabelContentProvider.getSortOrder("name desc, id", COLUMNS), is("name DESC, id"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testExpressionInSortOrderIsRejected() {
+        QabelContentProvider.getSortOrder(
+                "CASE WHEN (SELECT substr(payload, 1, 1) FROM drop_message) = 'a' THEN name ELSE id END", COLUMNS);
+    }
+}
@@ -388,6 +388,18 @@ public class BoxTest {
         assertThat(nav.listFiles().size(), is(2));
     }
 
+    @Test
+    public void testUploadUnchangedContentKeepsFile() throws QblStorageException, IOException {
+        BoxNavigation nav = volume.navigate();
+        BoxFile boxFile = uploadFile(nav, "unchanged");
+
+        BoxFile uploaded = nav.upload("unchanged", new FileInputStream(new File(testFilePath)));
+
+        assertThat(uploaded, is(boxFile));
+        assertThat(uploaded.hash, is(boxFile.hash));
+        assertThat(nav.listFiles().size(), is(2));
+    }
+
     @Test
     public void testConflictFileUpdate() throws QblStorageException, IOException {
         BoxNavigation nav = volume.navigate();
@@ -0,0 +1,75 @@
+package de.qabel.qabelbox.storage.transfer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import de.qabel.qabelbox.BuildConfig;
+import de.qabel.qabelbox.SimpleApplication;
+import de.qabel.qabelbox.communication.callbacks.DownloadRequestCallback;
+import de.qabel.qabelbox.communication.callbacks.UploadRequestCallback;
+import de.qabel.qabelbox.storage.server.BlockServer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(application = SimpleApplication.class, constants = BuildConfig.class)
+public class DeferredTransferTest {
+
+    private BlockServer blockServer;
+    private TransferPolicy policy;
+    private BlockServerTransferManager transferManager;
+
+    @Before
+    public void setUp() {
+        blockServer = mock(BlockServer.class);
+        policy = mock(TransferPolicy.class);
+        when(policy.isAllowed(any(TransferClass.class), anyLong())).thenReturn(false);
+        transferManager = new BlockServerTransferManager(RuntimeEnvironment.application, blockServer,
+                RuntimeEnvironment.application.getCacheDir(), policy);
+        transferManager.setMaxDeferMillis(10);
+    }
+
+    @After
+    public void tearDown() {
+        transferManager.close();
+    }
+
+    @Test
+    public void testDeferredUploadFailsAfterExpiry() throws Exception {
+        File file = transferManager.createTempFile();
+
+        int id = transferManager.uploadAndDeleteLocalfileOnSuccess("prefix", "name", file,
+                TransferClass.BULK, null);
+
+        assertThat(transferManager.waitFor(id), is(false));
+        assertThat(transferManager.lookupError(id), notNullValue());
+        verify(blockServer, never()).uploadFile(anyString(), anyString(), any(File.class),
+                any(UploadRequestCallback.class));
+    }
+
+    @Test
+    public void testLargeDownloadIsDeferred() throws Exception {
+        int id = transferManager.download("prefix", "name", transferManager.createTempFile(),
+                TransferClass.BULK, 1024 * 1024, null);
+
+        assertThat(transferManager.waitFor(id), is(false));
+        verify(blockServer, never()).downloadFile(anyString(), anyString(),
+                any(DownloadRequestCallback.class));
+    }
+}
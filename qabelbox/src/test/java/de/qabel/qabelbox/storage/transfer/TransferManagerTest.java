@@ -17,8 +17,10 @@ import de.qabel.qabelbox.BuildConfig;
 import de.qabel.qabelbox.SimpleApplication;
 import de.qabel.qabelbox.TestConstants;
 import de.qabel.qabelbox.communication.URLs;
+import de.qabel.qabelbox.communication.connection.ConnectivityManager;
 import de.qabel.qabelbox.config.AppPreference;
 import de.qabel.qabelbox.exceptions.QblStorageException;
+import okhttp3.OkHttpClient;
 import de.qabel.qabelbox.storage.transfer.AbstractTransferManagerTest;
 import de.qabel.qabelbox.storage.transfer.BlockServerTransferManager;
 import de.qabel.qabelbox.storage.server.AndroidBlockServer;
@@ -33,10 +35,12 @@ public class TransferManagerTest extends AbstractTransferManagerTest {
         configureTestServer();
         tempDir = new File(System.getProperty("java.io.tmpdir"), "testtmp");
         tempDir.mkdir();
+        AppPreference preference = new AppPreference(RuntimeEnvironment.application);
+        ConnectivityManager connectivityManager = new ConnectivityManager(RuntimeEnvironment.application);
         transferManager = new BlockServerTransferManager(RuntimeEnvironment.application,
-                new AndroidBlockServer(
-                        new AppPreference(RuntimeEnvironment.application), RuntimeEnvironment.application),
-                tempDir);
+                new AndroidBlockServer(preference, RuntimeEnvironment.application, new OkHttpClient(),
+                        connectivityManager),
+                tempDir, new TransferPolicy(preference, connectivityManager));
         testFileNameOnServer = "testfile_" + UUID.randomUUID().toString();
 
     }
@@ -44,6 +48,7 @@ public class TransferManagerTest extends AbstractTransferManagerTest {
     @After
     public void tearDown() throws IOException {
         syncDelete(testFileNameOnServer);
+        ((BlockServerTransferManager) transferManager).close();
         FileUtils.deleteDirectory(tempDir);
     }
 
@@ -0,0 +1,56 @@
+package de.qabel.qabelbox.storage.transfer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.qabel.qabelbox.communication.connection.ConnectivityManager;
+import de.qabel.qabelbox.config.AppPreference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TransferPolicyTest {
+
+    private static final long MAX_SIZE = 1024;
+    private static final long LIMIT = 512;
+
+    private AppPreference preferences;
+    private TransferPolicy policy;
+
+    @Before
+    public void setUp() {
+        preferences = mock(AppPreference.class);
+        when(preferences.getMeteredTransferMaxSize()).thenReturn(MAX_SIZE);
+        when(preferences.getMeteredBandwidthLimit()).thenReturn(LIMIT);
+        policy = new TransferPolicy(preferences, mock(ConnectivityManager.class));
+    }
+
+    @Test
+    public void testEverythingAllowedOnUnmeteredNetwork() {
+        for (TransferClass transferClass : TransferClass.values()) {
+            assertThat(policy.isAllowed(transferClass, MAX_SIZE * 10, true, false), is(true));
+            assertThat(policy.getBandwidthLimit(transferClass, false), is(0L));
+        }
+    }
+
+    @Test
+    public void testLargeBulkTransfersDeferredOnMeteredNetwork() {
+        assertThat(policy.isAllowed(TransferClass.BULK, MAX_SIZE, true, true), is(true));
+        assertThat(policy.isAllowed(TransferClass.BULK, MAX_SIZE + 1, true, true), is(false));
+        assertThat(policy.isAllowed(TransferClass.INTERACTIVE, MAX_SIZE + 1, true, true), is(true));
+    }
+
+    @Test
+    public void testBackgroundTransfersThrottledOnMeteredNetwork() {
+        assertThat(policy.getBandwidthLimit(TransferClass.INTERACTIVE, true), is(0L));
+        assertThat(policy.getBandwidthLimit(TransferClass.BULK, true), is(LIMIT));
+    }
+
+    @Test
+    public void testOnlyInteractiveTransfersWaitInQueueWhenOffline() {
+        assertThat(policy.isAllowed(TransferClass.INTERACTIVE, 0, false, false), is(true));
+        assertThat(policy.isAllowed(TransferClass.BULK, 0, false, false), is(false));
+    }
+}